@@ -1,87 +1,104 @@
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Asset Manager
+ * Loads the sprite PNGs and packs them into a single texture atlas.
+ * The atlas is created in the screen's native (compatible) format so Java2D
+ * can keep it as a managed image and blit sprites from it with acceleration.
+ * Sprites are read through an AssetSource (normally PNG.zip directly); the ones
+ * needed for gameplay are decoded in parallel at startup, the rest on first use.
+ * Cells below the packed shelves are reserved for those later ones, so they
+ * are blitted from the atlas too.
+ */
 public class AssetManager {
-    private String assetPath;
-    private Map<String, BufferedImage> assets;
+    private static final int ATLAS_WIDTH = 1024;
+    private static final int ATLAS_PADDING = 2; // Transparent gutter so bilinear scaling doesn't bleed neighbours
+    private static final int DECODE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
     
-    public AssetManager() {
-        assets = new HashMap<>();
-        findAssetPath();
-        loadAssets();
+    private AssetSource source;
+    private Map<String, Color> eagerFiles;       // Files decoded at startup -> fallback colour
+    private Map<String, LazyAsset> lazyAssets;   // Keys decoded on first access
+    private Map<String, BufferedImage> decoded;  // Decoded source images by filename (freed after packing)
+    private Map<String, String> keyToSource;     // Asset key -> source filename or placeholder id
+    private Map<String, Rectangle> regions;      // Source -> region inside the atlas
+    private Map<String, BufferedImage> assets;   // Asset key -> sub-image view of the atlas (or standalone image)
+    private BufferedImage atlas;
+    
+    // Reserved atlas cells for sprites decoded on first use
+    private int lazyTop;    // First row of cells
+    private int lazyCell;   // Largest sprite a cell holds (width and height)
+    private int lazyCells;  // Number of cells
+    private int nextLazyCell;
+    
+    private static class LazyAsset {
+        final String filename;
+        final Color fallbackColor;
+        
+        LazyAsset(String filename, Color fallbackColor) {
+            this.filename = filename;
+            this.fallbackColor = fallbackColor;
+        }
     }
     
-    private void findAssetPath() {
-        // Get the current working directory
-        String userDir = System.getProperty("user.dir");
-        File currentDir = new File(userDir);
-        
-        // Try to find the asset folder by searching up the directory tree
-        File searchDir = currentDir;
-        int maxDepth = 5; // Prevent infinite loops
-        int depth = 0;
-        
-        while (searchDir != null && depth < maxDepth) {
-            File assetDir = new File(searchDir, "kenney_tower-defense-top-downn" + File.separator + "PNG" + File.separator + "Default size");
-            File testFile = new File(assetDir, "towerDefense_tile179.png");
-            
-            if (testFile.exists()) {
-                assetPath = assetDir.getAbsolutePath() + File.separator;
-                System.out.println("Found assets at: " + testFile.getAbsolutePath());
-                return;
-            }
-            
-            // Move up one directory
-            searchDir = searchDir.getParentFile();
-            depth++;
-        }
-        
-        // If not found, try relative paths from current directory
-        String[] relativePaths = {
-            "kenney_tower-defense-top-downn" + File.separator + "PNG" + File.separator + "Default size" + File.separator,
-            ".." + File.separator + "kenney_tower-defense-top-downn" + File.separator + "PNG" + File.separator + "Default size" + File.separator,
-            ".." + File.separator + ".." + File.separator + "kenney_tower-defense-top-downn" + File.separator + "PNG" + File.separator + "Default size" + File.separator
-        };
-        
-        for (String path : relativePaths) {
-            File testFile = new File(path + "towerDefense_tile179.png");
-            if (testFile.exists()) {
-                assetPath = path;
-                System.out.println("Found assets at: " + testFile.getAbsolutePath());
-                return;
-            }
+    public AssetManager() {
+        eagerFiles = new LinkedHashMap<>();
+        lazyAssets = new HashMap<>();
+        decoded = new LinkedHashMap<>();
+        // Read by drawAsset on layer painting threads while getAsset adds lazily decoded sprites
+        keyToSource = new ConcurrentHashMap<>();
+        regions = new ConcurrentHashMap<>();
+        assets = new HashMap<>();
+        
+        long start = System.nanoTime();
+        source = AssetSource.locate();
+        if (source != null) {
+            System.out.println("Loading assets from " + source.describe());
+        } else {
+            System.err.println("Warning: No asset source found (PNG.zip, classpath or extracted folder). Using placeholders.");
+            System.err.println("Current working directory: " + System.getProperty("user.dir"));
         }
         
-        // Final fallback
-        assetPath = ".." + File.separator + "kenney_tower-defense-top-downn" + File.separator + "PNG" + File.separator + "Default size" + File.separator;
-        System.err.println("Warning: Could not find asset directory. Using fallback: " + assetPath);
-        System.err.println("Current working directory: " + userDir);
+        loadAssets();
+        decodeEagerAssets();
+        buildAtlas();
+        System.out.println("Assets ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
     }
     
     private void loadAssets() {
+        // loadAsset = needed for gameplay, decoded at startup; lazyAsset = decoded on first use
         // Tiles
         // RGB added because I understood wrong way then I couldn't change.
-        loadAsset("grass", "towerDefense_tile179.png", new Color(100, 200, 100));
-        loadAsset("grass_alt", "towerDefense_tile180.png", new Color(90, 180, 90));
-        loadAsset("path", "towerDefense_tile049.png", new Color(150, 120, 80));
-        loadAsset("water", "towerDefense_tile109.png", new Color(100, 150, 200));
-        loadAsset("sand", "towerDefense_tile128.png", new Color(210, 190, 140));
+        lazyAsset("grass", "towerDefense_tile179.png", new Color(100, 200, 100));
+        lazyAsset("grass_alt", "towerDefense_tile180.png", new Color(90, 180, 90));
+        lazyAsset("path", "towerDefense_tile049.png", new Color(150, 120, 80));
+        lazyAsset("water", "towerDefense_tile109.png", new Color(100, 150, 200));
+        lazyAsset("sand", "towerDefense_tile128.png", new Color(210, 190, 140));
         loadAsset("level1_bg", "towerDefense_tile129.png", new Color(90, 200, 90)); // Level 1 background 
         loadAsset("level2_bg", "towerDefense_tile129.png", new Color(90, 200, 90)); // Level 2 background 
         loadAsset("level3_bg", "towerDefense_tile129.png", new Color(90, 200, 90)); // Level 3 background 
-        loadAsset("obstacle", "towerDefense_tile160.png", new Color(100, 100, 100)); // Obstacle/blocker 
+        lazyAsset("obstacle", "towerDefense_tile160.png", new Color(100, 100, 100)); // Obstacle/blocker 
         loadAsset("obstacle136", "towerDefense_tile136.png", new Color(120, 160, 120)); // Additional obstacle 
         
         // Decorations 
-        loadAsset("dec1", "towerDefense_tile130.png", new Color(100, 200, 100));
-        loadAsset("dec2", "towerDefense_tile131.png", new Color(100, 200, 100));
-        loadAsset("dec3", "towerDefense_tile132.png", new Color(100, 200, 100));
-        loadAsset("dec4", "towerDefense_tile133.png", new Color(100, 200, 100));
-        loadAsset("dec5", "towerDefense_tile134.png", new Color(100, 200, 100));
+        lazyAsset("dec1", "towerDefense_tile130.png", new Color(100, 200, 100));
+        lazyAsset("dec2", "towerDefense_tile131.png", new Color(100, 200, 100));
+        lazyAsset("dec3", "towerDefense_tile132.png", new Color(100, 200, 100));
+        lazyAsset("dec4", "towerDefense_tile133.png", new Color(100, 200, 100));
+        lazyAsset("dec5", "towerDefense_tile134.png", new Color(100, 200, 100));
         
         // Towers 
         loadAsset("tower1", "towerDefense_tile249.png", new Color(100, 200, 100)); // Yellow Soldier / New Tower 1
@@ -102,12 +119,12 @@ public class AssetManager {
         
         // Projectiles - fire effects
         loadAsset("bullet", "towerDefense_tile296.png", new Color(255, 150, 0));
-        loadAsset("fire1", "towerDefense_tile295.png", new Color(255, 150, 0));
-        loadAsset("fire2", "towerDefense_tile296.png", new Color(255, 150, 0));
-        loadAsset("fire3", "towerDefense_tile297.png", new Color(255, 150, 0));
+        lazyAsset("fire1", "towerDefense_tile295.png", new Color(255, 150, 0));
+        lazyAsset("fire2", "towerDefense_tile296.png", new Color(255, 150, 0));
+        lazyAsset("fire3", "towerDefense_tile297.png", new Color(255, 150, 0));
         
         // Plane
-        loadAsset("plane", "towerDefense_tile248.png", new Color(100, 100, 100)); // Updated to tile248
+        lazyAsset("plane", "towerDefense_tile248.png", new Color(100, 100, 100)); // Updated to tile248
         
         // Decorative animated elements (visual only, no gameplay impact)
         loadAsset("deco_anim1", "towerDefense_tile270.png", new Color(100, 150, 200));
@@ -115,19 +132,181 @@ public class AssetManager {
     }
     
     private void loadAsset(String key, String filename, Color fallbackColor) {
-        try {
-            File file = new File(assetPath + filename);
-            if (file.exists()) {
-                BufferedImage img = ImageIO.read(file);
-                assets.put(key, img);
+        // Several keys share the same PNG; decode each file only once
+        eagerFiles.putIfAbsent(filename, fallbackColor);
+        keyToSource.put(key, filename);
+    }
+    
+    private void lazyAsset(String key, String filename, Color fallbackColor) {
+        lazyAssets.put(key, new LazyAsset(filename, fallbackColor));
+    }
+    
+    private void decodeEagerAssets() {
+        long start = System.nanoTime();
+        // Fingerprints are cheap (zip CRC / CRC of the PNG bytes) and decide which cached pixels are still valid
+        Map<String, Long> fingerprints = new LinkedHashMap<>();
+        for (String filename : eagerFiles.keySet()) {
+            fingerprints.put(filename, fingerprint(filename));
+        }
+        
+        SpriteCache cache = new SpriteCache();
+        List<String> misses = new ArrayList<>();
+        for (String filename : eagerFiles.keySet()) {
+            BufferedImage cached = cache.get(filename, fingerprints.get(filename));
+            if (cached != null) {
+                decoded.put(filename, cached);
             } else {
-                System.err.println("Warning: Asset not found: " + file.getAbsolutePath());
-                assets.put(key, createPlaceholder(fallbackColor));
+                misses.add(filename);
+            }
+        }
+        int cacheHits = decoded.size();
+        
+        if (!misses.isEmpty()) {
+            decodeInParallel(misses);
+        }
+        System.out.println("Sprites: " + cacheHits + " from cache, " + misses.size() + " decoded from PNG in "
+            + (System.nanoTime() - start) / 1_000_000 + " ms");
+        
+        // Rewrite the cache in the background when something had to be decoded.
+        // Placeholders (missing files) are never cached.
+        if (!misses.isEmpty() && !fingerprints.containsValue(-1L)) {
+            Map<String, BufferedImage> snapshot = new LinkedHashMap<>(decoded);
+            Thread writer = new Thread(() -> {
+                try {
+                    SpriteCache.write(cache.getFile(), snapshot, fingerprints);
+                } catch (Exception e) {
+                    System.err.println("Could not write sprite cache (will retry next start): " + e.getMessage());
+                }
+            }, "sprite-cache-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+    
+    private long fingerprint(String filename) {
+        if (source == null) return -1;
+        try {
+            return source.fingerprint(filename);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+    
+    private void decodeInParallel(List<String> filenames) {
+        ExecutorService pool = Executors.newFixedThreadPool(DECODE_THREADS, r -> {
+            Thread t = new Thread(r, "asset-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Map<String, Future<BufferedImage>> pending = new LinkedHashMap<>();
+            for (String filename : filenames) {
+                pending.put(filename, pool.submit(() -> decode(filename)));
+            }
+            for (Map.Entry<String, Future<BufferedImage>> entry : pending.entrySet()) {
+                BufferedImage img = null;
+                try {
+                    img = entry.getValue().get();
+                } catch (Exception e) {
+                    System.err.println("Error loading asset " + entry.getKey() + ": " + e.getMessage());
+                }
+                decoded.put(entry.getKey(), img != null ? img : createPlaceholder(eagerFiles.get(entry.getKey())));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private BufferedImage decode(String filename) {
+        if (source == null) return null;
+        try {
+            byte[] data = source.read(filename);
+            if (data == null) {
+                System.err.println("Warning: Asset not found: " + filename + " in " + source.describe());
+                return null;
             }
+            return ImageIO.read(new ByteArrayInputStream(data));
         } catch (Exception e) {
             System.err.println("Error loading asset " + filename + ": " + e.getMessage());
-            assets.put(key, createPlaceholder(fallbackColor));
+            return null;
+        }
+    }
+    
+    private void buildAtlas() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        
+        // Shelf packing: tallest images first, filling rows left to right
+        List<String> sources = new ArrayList<>(decoded.keySet());
+        sources.sort((a, b) -> Integer.compare(decoded.get(b).getHeight(), decoded.get(a).getHeight()));
+        
+        int x = 0, y = 0, shelfHeight = 0;
+        for (String source : sources) {
+            BufferedImage img = decoded.get(source);
+            int w = img.getWidth() + ATLAS_PADDING * 2;
+            int h = img.getHeight() + ATLAS_PADDING * 2;
+            if (x + w > ATLAS_WIDTH) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            regions.put(source, new Rectangle(x + ATLAS_PADDING, y + ATLAS_PADDING, img.getWidth(), img.getHeight()));
+            x += w;
+            shelfHeight = Math.max(shelfHeight, h);
+        }
+        
+        // One cell per PNG that is only decoded on first use, sized for the largest sprite packed above
+        Set<String> lazyFiles = new LinkedHashSet<>();
+        for (LazyAsset lazy : lazyAssets.values()) {
+            if (!decoded.containsKey(lazy.filename)) lazyFiles.add(lazy.filename);
+        }
+        lazyCell = 64;
+        for (BufferedImage img : decoded.values()) {
+            lazyCell = Math.max(lazyCell, Math.max(img.getWidth(), img.getHeight()));
+        }
+        int cellsPerRow = Math.max(1, ATLAS_WIDTH / (lazyCell + ATLAS_PADDING * 2));
+        lazyTop = y + shelfHeight;
+        lazyCells = lazyFiles.size();
+        int lazyRows = (lazyCells + cellsPerRow - 1) / cellsPerRow;
+        int atlasHeight = Math.max(1, lazyTop + lazyRows * (lazyCell + ATLAS_PADDING * 2));
+        
+        atlas = createCompatibleImage(gc, ATLAS_WIDTH, atlasHeight);
+        int alreadyCompatible = 0;
+        Graphics2D g = atlas.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        for (String source : sources) {
+            BufferedImage img = decoded.get(source);
+            if (gc != null && img.getColorModel().equals(gc.getColorModel(Transparency.TRANSLUCENT))) {
+                alreadyCompatible++;
+            }
+            Rectangle r = regions.get(source);
+            g.drawImage(img, r.x, r.y, null);
+        }
+        g.dispose();
+        
+        for (Map.Entry<String, String> entry : keyToSource.entrySet()) {
+            Rectangle r = regions.get(entry.getValue());
+            assets.put(entry.getKey(), atlas.getSubimage(r.x, r.y, r.width, r.height));
+        }
+        
+        boolean accelerated = gc != null && atlas.getCapabilities(gc).isAccelerated();
+        System.out.println("Sprite atlas: " + assets.size() + " keys, " + sources.size() + " images packed into "
+            + ATLAS_WIDTH + "x" + atlasHeight + " (" + alreadyCompatible + " of " + sources.size()
+            + " decoded in a compatible format, " + lazyCells + " cells reserved for lazy sprites), atlas accelerated: "
+            + accelerated + ", managed images accelerated: " + getAcceleratedAssetCount() + " of " + assets.size());
+        
+        decoded = new LinkedHashMap<>(); // Source images are no longer needed (the cache writer keeps its own map)
+    }
+    
+    private GraphicsConfiguration getGraphicsConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) return null;
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+    }
+    
+    private BufferedImage createCompatibleImage(GraphicsConfiguration gc, int width, int height) {
+        if (gc == null) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         }
+        return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
     }
     
     private BufferedImage createPlaceholder(Color color) {
@@ -141,8 +320,78 @@ public class AssetManager {
         return img;
     }
     
-    public BufferedImage getAsset(String key) {
-        return assets.getOrDefault(key, createPlaceholder(Color.GRAY));
+    public synchronized BufferedImage getAsset(String key) {
+        BufferedImage img = assets.get(key);
+        if (img == null) {
+            LazyAsset lazy = lazyAssets.remove(key);
+            if (lazy == null) {
+                return createPlaceholder(Color.GRAY);
+            }
+            img = loadLazyAsset(key, lazy);
+            assets.put(key, img);
+        }
+        return img;
+    }
+    
+    // Decodes a lazy sprite into its reserved atlas cell (or reuses the region of a PNG already there)
+    private BufferedImage loadLazyAsset(String key, LazyAsset lazy) {
+        Rectangle r = regions.get(lazy.filename);
+        if (r == null) {
+            BufferedImage raw = decode(lazy.filename);
+            if (raw == null) raw = createPlaceholder(lazy.fallbackColor);
+            if (raw.getWidth() > lazyCell || raw.getHeight() > lazyCell || nextLazyCell >= lazyCells) {
+                // Doesn't fit a cell: outside the atlas, but still converted to the compatible format
+                System.err.println("Sprite " + lazy.filename + " does not fit the atlas, drawn on its own");
+                BufferedImage img = createCompatibleImage(getGraphicsConfiguration(), raw.getWidth(), raw.getHeight());
+                Graphics2D g = img.createGraphics();
+                g.setComposite(AlphaComposite.Src);
+                g.drawImage(raw, 0, 0, null);
+                g.dispose();
+                return img;
+            }
+            int stride = lazyCell + ATLAS_PADDING * 2;
+            int cellsPerRow = Math.max(1, ATLAS_WIDTH / stride);
+            int cell = nextLazyCell++;
+            r = new Rectangle((cell % cellsPerRow) * stride + ATLAS_PADDING, lazyTop + (cell / cellsPerRow) * stride + ATLAS_PADDING,
+                              raw.getWidth(), raw.getHeight());
+            Graphics2D g = atlas.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(raw, r.x, r.y, null);
+            g.dispose();
+            regions.put(lazy.filename, r);
+        }
+        keyToSource.put(key, lazy.filename);
+        return atlas.getSubimage(r.x, r.y, r.width, r.height);
+    }
+    
+    /** How many of the images handed out so far Java2D currently holds in accelerated memory. */
+    public synchronized int getAcceleratedAssetCount() {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc == null) return 0;
+        int accelerated = 0;
+        for (BufferedImage img : assets.values()) {
+            if (img.getCapabilities(gc).isAccelerated()) accelerated++;
+        }
+        return accelerated;
+    }
+    
+    /**
+     * Draws a sprite straight from the atlas, scaled to the given size.
+     * This is a sub-image blit of the shared managed image, so no per-frame
+     * scaled copies are created.
+     */
+    public void drawAsset(Graphics2D g, String key, int x, int y, int width, int height) {
+        String source = keyToSource.get(key);
+        if (source == null) {
+            getAsset(key); // A lazy sprite: decoded into the atlas now
+            source = keyToSource.get(key);
+        }
+        Rectangle r = source != null ? regions.get(source) : null;
+        if (r == null) {
+            g.drawImage(getAsset(key), x, y, width, height, null);
+            return;
+        }
+        g.drawImage(atlas, x, y, x + width, y + height, r.x, r.y, r.x + r.width, r.y + r.height, null);
     }
     
     public BufferedImage getScaledAsset(String key, int width, int height) {
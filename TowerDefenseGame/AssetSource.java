@@ -0,0 +1,184 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+/**
+ * Asset Source
+ * Where the sprite PNGs are read from: the shipped PNG.zip, the classpath
+ * or an extracted folder. Implementations must allow concurrent reads
+ * because AssetManager decodes on several threads.
+ */
+public interface AssetSource {
+    String ENTRY_DIR = "PNG/Default size/";
+    String PROBE_FILE = "towerDefense_tile179.png";
+
+    /** Returns the raw bytes of a sprite file, or null if the source doesn't have it. */
+    byte[] read(String filename) throws IOException;
+
+    /**
+     * Returns a cheap value that changes whenever the file content changes
+     * (the stored CRC for zip entries, a CRC of the bytes otherwise), or -1
+     * if missing.
+     * Used to invalidate the decoded sprite cache.
+     */
+    long fingerprint(String filename) throws IOException;
+
+    String describe();
+
+    /** CRC and length of the compressed bytes, in the same form as a zip entry's fingerprint. */
+    static long contentFingerprint(byte[] data) {
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(data, 0, data.length);
+        return (crc.getValue() << 32) ^ data.length;
+    }
+
+    /**
+     * Picks the first available source:
+     * -Dtd.assets (zip or folder), the classpath, then PNG.zip or the
+     * extracted Kenney folder in the working directory or its parent.
+     */
+    static AssetSource locate() {
+        String override = System.getProperty("td.assets");
+        if (override != null) {
+            File file = new File(override);
+            AssetSource source = file.isDirectory() ? new DirectorySource(file) : ZipSource.open(file);
+            if (source != null) return source;
+            System.err.println("Warning: td.assets does not point to a usable zip or folder: " + override);
+        }
+
+        if (AssetSource.class.getClassLoader().getResource(ENTRY_DIR + PROBE_FILE) != null) {
+            return new ClasspathSource();
+        }
+
+        File workDir = new File(System.getProperty("user.dir")).getAbsoluteFile();
+        File[] searchDirs = {workDir, workDir.getParentFile()};
+        for (File dir : searchDirs) {
+            if (dir == null) continue;
+            AssetSource zip = ZipSource.open(new File(dir, "PNG.zip"));
+            if (zip != null) return zip;
+        }
+        for (File dir : searchDirs) {
+            if (dir == null) continue;
+            File extracted = new File(dir, "kenney_tower-defense-top-downn" + File.separator + "PNG" + File.separator + "Default size");
+            if (new File(extracted, PROBE_FILE).exists()) return new DirectorySource(extracted);
+        }
+        return null;
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /** Reads entries straight out of a zip archive through the NIO zip file system. */
+    class ZipSource implements AssetSource {
+        private final File zipFile;
+        private final FileSystem fs;
+
+        private ZipSource(File zipFile, FileSystem fs) {
+            this.zipFile = zipFile;
+            this.fs = fs;
+        }
+
+        static ZipSource open(File zipFile) {
+            if (!zipFile.isFile()) return null;
+            try {
+                URI uri = URI.create("jar:" + zipFile.toURI());
+                FileSystem fs;
+                try {
+                    fs = FileSystems.newFileSystem(uri, new HashMap<String, Object>());
+                } catch (java.nio.file.FileSystemAlreadyExistsException e) {
+                    fs = FileSystems.getFileSystem(uri);
+                }
+                if (!Files.exists(fs.getPath(ENTRY_DIR + PROBE_FILE))) {
+                    return null;
+                }
+                return new ZipSource(zipFile, fs);
+            } catch (Exception e) {
+                System.err.println("Error opening asset archive " + zipFile + ": " + e.getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        public byte[] read(String filename) throws IOException {
+            Path entry = fs.getPath(ENTRY_DIR + filename);
+            if (!Files.exists(entry)) return null;
+            return Files.readAllBytes(entry);
+        }
+
+        @Override
+        public long fingerprint(String filename) throws IOException {
+            Path entry = fs.getPath(ENTRY_DIR + filename);
+            if (!Files.exists(entry)) return -1;
+            long crc = (Long) Files.getAttribute(entry, "zip:crc");
+            return (crc << 32) ^ Files.size(entry);
+        }
+
+        @Override
+        public String describe() {
+            return "zip " + zipFile.getAbsolutePath();
+        }
+    }
+
+    /** Reads sprites bundled on the classpath, e.g. with PNG.zip added to -cp. */
+    class ClasspathSource implements AssetSource {
+        @Override
+        public byte[] read(String filename) throws IOException {
+            try (InputStream in = AssetSource.class.getClassLoader().getResourceAsStream(ENTRY_DIR + filename)) {
+                return in == null ? null : readFully(in);
+            }
+        }
+
+        @Override
+        public long fingerprint(String filename) throws IOException {
+            // Classpath resources have no cheap metadata, so hash the (small) compressed bytes
+            byte[] data = read(filename);
+            return data == null ? -1 : contentFingerprint(data);
+        }
+
+        @Override
+        public String describe() {
+            return "classpath " + ENTRY_DIR;
+        }
+    }
+
+    /** Reads sprites from an already extracted folder. */
+    class DirectorySource implements AssetSource {
+        private final File dir;
+
+        DirectorySource(File dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public byte[] read(String filename) throws IOException {
+            File file = new File(dir, filename);
+            return file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+        }
+
+        @Override
+        public long fingerprint(String filename) throws IOException {
+            // Hash the content: timestamps survive copies and checkouts that change the file
+            byte[] data = read(filename);
+            return data == null ? -1 : contentFingerprint(data);
+        }
+
+        @Override
+        public String describe() {
+            return "folder " + dir.getAbsolutePath();
+        }
+    }
+}
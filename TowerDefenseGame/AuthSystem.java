@@ -11,70 +11,63 @@ import java.util.*;
  */
 public class AuthSystem {
     private static final String USERS_FILE = "users_data.txt"; // Changed to TXT format (CSV)
-    private static final String SCORES_FILE = "game_scores.json";
     
-    private Map<String, UserData> users; // Changed from JSONObject to Map
+    private UserStore userStore; // Append-only users_data.txt with a persistent hash index
     private String currentUser;
-    
-    private static class UserData {
-        String password;
-        String created;
-        
-        UserData(String password, String created) {
-            this.password = password;
-            this.created = created;
-        }
-    }
+    private ScoreBackend scores; // Local score files, or a shared leaderboard server (-Dtd.leaderboard=URL)
+    private PersistenceWriter writer; // Background thread doing the file writes
+    private PersistenceWriter.Sink<UserStore.User> usersSink;
+    // Registered users the writer hasn't appended yet, so they can log in straight away
+    private final Map<String, UserStore.User> pendingUsers = new java.util.concurrent.ConcurrentHashMap<>();
     
     public AuthSystem() {
         loadUsers();
+        writer = new PersistenceWriter();
+        String leaderboard = System.getProperty("td.leaderboard");
+        if (leaderboard != null && !leaderboard.isEmpty()) {
+            scores = new RemoteScoreBackend(leaderboard);
+        } else {
+            scores = new LocalScoreBackend(new ScoreStore(), writer); // Imports old game_scores.json once
+        }
+        usersSink = batch -> {
+            if (userStore == null) throw new IOException("User store is not available");
+            userStore.addAll(batch);
+            for (UserStore.User user : batch) pendingUsers.remove(user.username);
+        };
         currentUser = null;
         // Migrate old JSON file if exists
         migrateFromJSON();
     }
     
     private void loadUsers() {
-        users = new HashMap<>();
+        // Opens the index only; the data file is read one line per lookup
         try {
-            File file = new File(USERS_FILE);
-            if (file.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        line = line.trim();
-                        if (line.isEmpty() || line.startsWith("#")) continue; // Skip empty lines and comments
-                        
-                        // CSV format: username,password,created_timestamp
-                        String[] parts = line.split(",");
-                        if (parts.length >= 2) {
-                            String username = parts[0].trim();
-                            String password = parts[1].trim();
-                            String created = parts.length >= 3 ? parts[2].trim() : getCurrentDateTime();
-                            users.put(username, new UserData(password, created));
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
+            userStore = new UserStore(new File(USERS_FILE));
+        } catch (IOException e) {
             e.printStackTrace();
-            users = new HashMap<>();
+            userStore = null;
         }
     }
     
-    private void saveUsers() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(USERS_FILE))) {
-            writer.println("# User data file - Format: username,password,created_timestamp");
-            for (Map.Entry<String, UserData> entry : users.entrySet()) {
-                writer.println(entry.getKey() + "," + entry.getValue().password + "," + entry.getValue().created);
-            }
+    private UserStore.User findUser(String username) {
+        UserStore.User pending = pendingUsers.get(username);
+        if (pending != null || userStore == null) return pending;
+        try {
+            return userStore.get(username);
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
     }
     
+    private void saveUser(UserStore.User user) {
+        pendingUsers.put(user.username, user);
+        writer.submit(usersSink, user);
+    }
+    
     private void migrateFromJSON() {
         File jsonFile = new File("users_data.json");
-        if (jsonFile.exists() && users.isEmpty()) {
+        if (jsonFile.exists() && userStore != null && userStore.size() == 0) {
             try {
                 String content = new String(java.nio.file.Files.readAllBytes(jsonFile.toPath()));
                 JSONObject jsonUsers = new JSONObject(content);
@@ -88,10 +81,9 @@ public class AuthSystem {
                     } catch (Exception e) {
                         created = getCurrentDateTime();
                     }
-                    users.put(username, new UserData(password, created));
+                    saveUser(new UserStore.User(username, password, created));
                 }
                 
-                saveUsers(); // Save to new TXT format
                 System.out.println("Migrated users from JSON to TXT format");
             } catch (Exception e) {
                 e.printStackTrace();
@@ -114,13 +106,12 @@ public class AuthSystem {
             return "Username and password cannot contain commas";
         }
         
-        if (users.containsKey(username)) {
+        if (findUser(username) != null) {
             return "Username already exists";
         }
         
         try {
-            users.put(username, new UserData(password, getCurrentDateTime()));
-            saveUsers();
+            saveUser(new UserStore.User(username, password, getCurrentDateTime()));
             
             return "SUCCESS";
         } catch (Exception e) {
@@ -129,12 +120,12 @@ public class AuthSystem {
     }
     
     public String login(String username, String password) {
-        if (!users.containsKey(username)) {
+        UserStore.User userData = findUser(username);
+        if (userData == null) {
             return "Username not found";
         }
         
         try {
-            UserData userData = users.get(username);
             if (!userData.password.equals(password)) {
                 return "Incorrect password";
             }
@@ -158,81 +149,36 @@ public class AuthSystem {
         currentUser = null;
     }
     
-    public void saveScore(int level, int score, int enemiesKilled, int health, int moneySpent) {
-        if (currentUser == null) return;
+    /** Records a finished game for the logged-in user; returns the saved entry, or null if nobody is logged in. */
+    public ScoreEntry saveScore(int level, int score, int enemiesKilled, int health, int moneySpent) {
+        if (currentUser == null) return null;
         
-        try {
-            JSONObject scores;
-            File file = new File(SCORES_FILE);
-            
-            if (file.exists()) {
-                String content = new String(java.nio.file.Files.readAllBytes(file.toPath()));
-                scores = new JSONObject(content);
-            } else {
-                scores = new JSONObject();
-            }
-            
-            if (!scores.has(currentUser)) {
-                scores.put(currentUser, new JSONArray());
-            }
-            
-            JSONArray userScores = scores.getJSONArray(currentUser);
-            JSONObject scoreData = new JSONObject();
-            scoreData.put("date", getCurrentDate());
-            scoreData.put("time", getCurrentTime());
-            scoreData.put("level", level);
-            scoreData.put("score", score);
-            scoreData.put("enemies_killed", enemiesKilled);
-            scoreData.put("health", health);
-            scoreData.put("money_spent", moneySpent);
-            
-            userScores.put(scoreData);
-            
-            try (FileWriter writer = new FileWriter(SCORES_FILE)) {
-                writer.write(scores.toString(2));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        // One appended line instead of rewriting the whole score history
+        ScoreEntry entry = new ScoreEntry(currentUser, getCurrentDate(), getCurrentTime(),
+                                          level, score, enemiesKilled, health, moneySpent);
+        scores.submit(entry); // Never blocks the EDT on disk or network
+        return entry;
     }
     
     public List<ScoreEntry> getHighScores(int limit) {
-        List<ScoreEntry> scoresList = new ArrayList<>();
-        
-        try {
-            File file = new File(SCORES_FILE);
-            if (!file.exists()) return scoresList;
-            
-            String content = new String(java.nio.file.Files.readAllBytes(file.toPath()));
-            JSONObject allScores = new JSONObject(content);
-            
-            for (String username : allScores.keySet()) {
-                JSONArray userScores = allScores.getJSONArray(username);
-                for (int i = 0; i < userScores.length(); i++) {
-                    JSONObject scoreData = userScores.getJSONObject(i);
-                    scoresList.add(new ScoreEntry(
-                        username,
-                        scoreData.getString("date"),
-                        scoreData.getString("time"),
-                        scoreData.getInt("level"),
-                        scoreData.getInt("score"),
-                        scoreData.getInt("enemies_killed"),
-                        scoreData.getInt("health"),
-                        scoreData.getInt("money_spent")
-                    ));
-                }
-            }
-            
-            scoresList.sort((a, b) -> Integer.compare(b.score, a.score));
-            
-            if (scoresList.size() > limit) {
-                return scoresList.subList(0, limit);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        
-        return scoresList;
+        return scores.top(null, limit);
+    }
+    
+    public List<ScoreEntry> getHighScores(int level, int limit) {
+        return scores.top(level, limit);
+    }
+    
+    /**
+     * Filtered, paged score query (by user, level and/or date range).
+     * Pass page.nextCursor back through query.next(page) for the following page.
+     */
+    public ScoreQuery.Page queryScores(ScoreQuery query) {
+        return scores.query(query);
+    }
+    
+    /** Queue depth and flush latency of the background writer. */
+    public PersistenceWriter getPersistenceWriter() {
+        return writer;
     }
     
     private String getCurrentDateTime() {
@@ -256,6 +202,7 @@ public class AuthSystem {
         public int enemiesKilled;
         public int health;
         public int moneySpent;
+        public long id; // Assigned by ScoreIndex, breaks ties between equal scores
         
         public ScoreEntry(String username, String date, String time, int level, 
                          int score, int enemiesKilled, int health, int moneySpent) {
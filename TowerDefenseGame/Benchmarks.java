@@ -0,0 +1,962 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Benchmarks
+ * Small stand-alone timing harness for the performance work (no JMH in this project).
+ * Usage: java -cp bin Benchmarks <name>
+ *   render       - Java2D atlas blits vs SoftwareRenderer at 1k, 10k and 50k sprites
+ *   leaderboard  - ScoreIndex top-N reads vs sorting the full list, one million scores
+ *   json         - JSONTokener vs the old substring parser on a ~50 MB game_scores.json,
+ *                  plus direct ScoreEntry binding (ScoreJsonReader) and a top-10 read
+ *   lockstore    - 8 writer processes appending to one ScoreStore folder while this process reads
+ *   http         - LeaderboardServer under 32 client threads (90% top-10 reads, 10% submits)
+ *   replay       - records a scripted game, then replays it headless from the file
+ *   verify       - ReplayVerifier on 3,000 submitted scores, some with tampered values
+ *   snapshot     - GameSnapshot encode/restore times through a game, and exact resumes
+ *   rewind       - RewindBuffer cost per live tick, memory, restore times and exactness
+ *   mazing       - incremental FlowField block/unblock vs a full search on a 256x256 grid,
+ *                  and a replayed mazing game
+ *   levels       - LevelCatalog scans of 500 community levels (files and a pack), and
+ *                  text vs binary vs the old split-based parse of levels up to 1024x1024
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        String name = args.length > 0 ? args[0] : "";
+        switch (name) {
+            case "render":
+                benchmarkRender();
+                break;
+            case "leaderboard":
+                benchmarkLeaderboard();
+                break;
+            case "json":
+                benchmarkJson();
+                break;
+            case "lockstore":
+                benchmarkLockStore();
+                break;
+            case "http":
+                benchmarkHttp();
+                break;
+            case "replay":
+                benchmarkReplay();
+                break;
+            case "verify":
+                benchmarkVerify();
+                break;
+            case "snapshot":
+                benchmarkSnapshot();
+                break;
+            case "rewind":
+                benchmarkRewind();
+                break;
+            case "mazing":
+                benchmarkMazing();
+                break;
+            case "levels":
+                benchmarkLevels();
+                break;
+            case "lockstore-writer":
+                lockStoreWriter(new File(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+                break;
+            default:
+                System.out.println("Usage: java -cp bin Benchmarks <render|leaderboard|json|lockstore|http|replay|verify|snapshot|rewind|mazing|levels>");
+        }
+    }
+
+    // ----- Rendering -----
+
+    private static void benchmarkRender() {
+        System.setProperty("java.awt.headless", System.getProperty("java.awt.headless", "true"));
+        AssetManager assets = new AssetManager();
+        int width = TowerDefenseGame.SCREEN_WIDTH;
+        int height = TowerDefenseGame.SCREEN_HEIGHT;
+        String[] keys = {"enemy1", "enemy2", "enemy3", "tower1", "bullet"};
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        SoftwareRenderer software = new SoftwareRenderer(assets);
+
+        for (int count : new int[]{1_000, 10_000, 50_000}) {
+            int[] xs = new int[count], ys = new int[count];
+            Random rand = new Random(42);
+            for (int i = 0; i < count; i++) {
+                xs[i] = rand.nextInt(width) - 20;
+                ys[i] = rand.nextInt(height) - 20;
+            }
+            int frames = count >= 50_000 ? 20 : 60;
+
+            // Warm-up and measure Java2D
+            double java2d = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                for (int f = 0; f < frames; f++) {
+                    Graphics2D g = target.createGraphics();
+                    g.setColor(Color.GREEN);
+                    g.fillRect(0, 0, width, height);
+                    for (int i = 0; i < count; i++) {
+                        assets.drawAsset(g, keys[i % keys.length], xs[i], ys[i], 40, 40);
+                    }
+                    g.dispose();
+                }
+                java2d = (System.nanoTime() - start) / 1e6 / frames;
+            }
+
+            double soft = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                for (int f = 0; f < frames; f++) {
+                    software.begin(width, height);
+                    software.clear(0xFF00FF00);
+                    for (int i = 0; i < count; i++) {
+                        software.drawSprite(keys[i % keys.length], xs[i], ys[i], 40, 40);
+                    }
+                    Graphics2D g = target.createGraphics();
+                    software.present(g);
+                    g.dispose();
+                }
+                soft = (System.nanoTime() - start) / 1e6 / frames;
+            }
+
+            System.out.printf("%,7d sprites: Java2D %8.2f ms/frame, software %8.2f ms/frame%n", count, java2d, soft);
+        }
+    }
+
+    // ----- Leaderboard -----
+
+    private static List<AuthSystem.ScoreEntry> randomScores(int count, long seed) {
+        Random rand = new Random(seed);
+        List<AuthSystem.ScoreEntry> scores = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            scores.add(new AuthSystem.ScoreEntry("user" + rand.nextInt(5000), "2026-01-01", "12:00:00",
+                1 + rand.nextInt(3), rand.nextInt(5000), rand.nextInt(200), rand.nextInt(101), rand.nextInt(2000)));
+        }
+        return scores;
+    }
+
+    private static void benchmarkLeaderboard() {
+        int count = 1_000_000;
+        List<AuthSystem.ScoreEntry> scores = randomScores(count, 7);
+
+        long start = System.nanoTime();
+        ScoreIndex index = new ScoreIndex(scores);
+        System.out.printf("Index build, %,d scores: %.1f ms (one-time, at first leaderboard read)%n",
+                          count, (System.nanoTime() - start) / 1e6);
+
+        int reads = 100_000;
+        long checksum = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                checksum += index.top(10).size() + index.top(1 + i % 3, 10).size();
+            }
+        }
+        double perRead = (System.nanoTime() - start) / 1e3 / (reads * 2);
+        System.out.printf("Index top-10 read: %.2f us%n", perRead);
+
+        start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            AuthSystem.ScoreEntry e = new AuthSystem.ScoreEntry("live", "2026-01-02", "12:00:00", 1, 2500 + i, 1, 1, 1);
+            index.add(e);
+        }
+        System.out.printf("Index insert: %.2f us%n", (System.nanoTime() - start) / 1e3 / 1000);
+
+        // Previous approach: build and sort the full list for every read
+        start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            List<AuthSystem.ScoreEntry> copy = new ArrayList<>(scores);
+            copy.sort(ScoreStore.BY_SCORE);
+            checksum += copy.get(0).score;
+        }
+        System.out.printf("Full sort per read (old getHighScores without I/O): %.1f ms%n",
+                          (System.nanoTime() - start) / 1e6 / 5);
+        if (checksum == 42) System.out.println();
+    }
+
+    // ----- JSON parsing -----
+
+    private static void benchmarkJson() throws Exception {
+        File file = new File(System.getProperty("java.io.tmpdir"), "td_bench_scores.json");
+        if (!file.exists() || file.length() < 45_000_000L) {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                BinaryScoreFile.writeJson(randomScores(300_000, 11), writer, 2);
+            }
+        }
+        double megabytes = file.length() / 1e6;
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        System.out.printf("Input: %s (%.1f MB)%n", file, megabytes);
+
+        for (int pass = 0; pass < 3; pass++) {
+            long start = System.nanoTime();
+            int tokenized = BinaryScoreFile.fromJson(new JSONObject(content)).size();
+            double tokenizer = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            int streamed;
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                streamed = BinaryScoreFile.fromJson(new JSONObject(new JSONTokener(reader))).size();
+            }
+            double streaming = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            int legacy = BinaryScoreFile.fromJson(LegacyJson.parseObject(content)).size();
+            double old = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            int bound;
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                bound = ScoreJsonReader.readAll(reader).size();
+            }
+            double binding = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                ScoreJsonReader.readTop(reader, 10, null);
+            }
+            double top = (System.nanoTime() - start) / 1e6;
+
+            if (tokenized != legacy || streamed != legacy || bound != legacy) throw new IllegalStateException("Parsers disagree");
+            System.out.printf("pass %d: JSONTokener(String) %7.0f ms (%5.0f MB/s), JSONTokener(Reader from file) %7.0f ms, old parser %7.0f ms (%5.0f MB/s)%n",
+                              pass + 1, tokenizer, megabytes / tokenizer * 1000, streaming, old, megabytes / old * 1000);
+            System.out.printf("        ScoreJsonReader.readAll %7.0f ms, ScoreJsonReader.readTop(10) %7.0f ms%n", binding, top);
+        }
+    }
+
+    /** The previous org.json parsing algorithm (substring tokenizing, re-parsing nested values), kept as a baseline. */
+    private static class LegacyJson {
+        static JSONObject parseObject(String source) {
+            JSONObject object = new JSONObject();
+            source = source.trim();
+            for (String token : tokenize(source.substring(1, source.length() - 1))) {
+                if (token.contains(":")) {
+                    String[] parts = token.split(":", 2);
+                    String key = parts[0].trim().replaceAll("^\"|\"$", "");
+                    object.put(key, parseValue(parts[1].trim()));
+                }
+            }
+            return object;
+        }
+
+        static JSONArray parseArray(String source) {
+            JSONArray array = new JSONArray();
+            source = source.trim();
+            String content = source.substring(1, source.length() - 1);
+            if (content.trim().isEmpty()) return array;
+            for (String token : tokenize(content)) {
+                array.put(parseValue(token.trim()));
+            }
+            return array;
+        }
+
+        private static List<String> tokenize(String content) {
+            List<String> tokens = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            int depth = 0;
+            boolean inString = false;
+            for (char c : content.toCharArray()) {
+                if (c == '"' && (current.length() == 0 || current.charAt(current.length() - 1) != '\\')) {
+                    inString = !inString;
+                }
+                if (!inString) {
+                    if (c == '{' || c == '[') depth++;
+                    if (c == '}' || c == ']') depth--;
+                    if (c == ',' && depth == 0) {
+                        tokens.add(current.toString());
+                        current = new StringBuilder();
+                        continue;
+                    }
+                }
+                current.append(c);
+            }
+            if (current.length() > 0) tokens.add(current.toString());
+            return tokens;
+        }
+
+        private static Object parseValue(String value) {
+            value = value.trim();
+            if (value.startsWith("\"") && value.endsWith("\"")) return value.substring(1, value.length() - 1);
+            if (value.equals("true") || value.equals("false")) return Boolean.parseBoolean(value);
+            if (value.equals("null")) return null;
+            if (value.startsWith("{")) return parseObject(value);
+            if (value.startsWith("[")) return parseArray(value);
+            try {
+                return value.contains(".") ? (Object) Double.parseDouble(value) : (Object) Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+    }
+
+    // ----- Cross-process score store -----
+
+    private static void benchmarkLockStore() throws Exception {
+        int processes = 8;
+        int perProcess = 2000;
+        File dir = Files.createTempDirectory("td_lockstore").toFile();
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        String classpath = System.getProperty("java.class.path");
+        System.out.printf("%d writer processes x %,d scores into %s%n", processes, perProcess, dir);
+
+        ScoreStore reader = new ScoreStore(dir);
+        List<Process> writers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int p = 0; p < processes; p++) {
+            writers.add(new ProcessBuilder(java, "-cp", classpath, "Benchmarks", "lockstore-writer",
+                                           dir.getPath(), Integer.toString(p), Integer.toString(perProcess))
+                            .inheritIO().start());
+        }
+
+        // Read continuously while they write: counts may only grow and records must never repeat
+        int reads = 0;
+        int last = 0;
+        while (writers.stream().anyMatch(Process::isAlive)) {
+            int seen = checkScores(reader.readAll());
+            if (seen < last) throw new IllegalStateException("Reader lost scores: " + seen + " after " + last);
+            last = seen;
+            reads++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (Process writer : writers) {
+            if (writer.waitFor() != 0) throw new IllegalStateException("Writer failed");
+        }
+
+        int total = checkScores(reader.readAll());
+        System.out.printf("All %,d scores present, no duplicates; %,d consistent reads during the run%n", total, reads);
+        System.out.printf("Throughput: %,.0f appends/s across %d processes (%.2f s)%n", total / seconds, processes, seconds);
+        if (total != processes * perProcess) throw new IllegalStateException("Expected " + processes * perProcess + " scores");
+    }
+
+    private static void lockStoreWriter(File dir, int id, int count) {
+        ScoreStore store = new ScoreStore(dir);
+        for (int i = 0; i < count; i++) {
+            store.append(new AuthSystem.ScoreEntry("writer" + id, "2026-01-01", "12:00:00", 1, i, 1, 1, 1));
+        }
+    }
+
+    /** Number of scores, failing on a duplicate (writer, sequence) pair. */
+    private static int checkScores(List<AuthSystem.ScoreEntry> scores) {
+        Set<String> seen = new HashSet<>();
+        for (AuthSystem.ScoreEntry entry : scores) {
+            if (!seen.add(entry.username + "/" + entry.score)) {
+                throw new IllegalStateException("Duplicate score " + entry.username + "/" + entry.score);
+            }
+        }
+        return seen.size();
+    }
+
+    // ----- Leaderboard server -----
+
+    private static void benchmarkHttp() throws Exception {
+        int clients = 32;
+        long durationNanos = 10_000_000_000L;
+        File dir = Files.createTempDirectory("td_http").toFile();
+        PersistenceWriter writer = new PersistenceWriter();
+        ScoreStore store = new ScoreStore(dir);
+        List<AuthSystem.ScoreEntry> seed = new ArrayList<>();
+        Random rand = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            seed.add(new AuthSystem.ScoreEntry("player" + rand.nextInt(1000), "2026-01-01", "12:00:00",
+                                               1 + rand.nextInt(3), rand.nextInt(100_000), 10, 10, 100));
+        }
+        store.appendAll(seed);
+        LeaderboardServer server = new LeaderboardServer(new LocalScoreBackend(store, writer), 0);
+        server.start();
+        String base = "http://localhost:" + server.getPort();
+        System.out.printf("%d clients against %s, %,d seeded scores, %d s%n", clients, base, seed.size(), durationNanos / 1_000_000_000L);
+
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest top = HttpRequest.newBuilder(URI.create(base + "/top?limit=10")).GET().build();
+        http.send(top, HttpResponse.BodyHandlers.ofString()); // Builds the server's index outside the timed run
+        AtomicInteger submitted = new AtomicInteger();
+        long[][] latencies = new long[clients][];
+        int[] counts = new int[clients];
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int id = c;
+            Thread t = new Thread(() -> {
+                Random r = new Random(id);
+                long[] own = new long[1 << 16];
+                int n = 0;
+                try {
+                    while (System.nanoTime() - start < durationNanos) {
+                        HttpRequest request = top;
+                        if (r.nextInt(10) == 0) {
+                            AuthSystem.ScoreEntry entry = new AuthSystem.ScoreEntry("client" + id, "2026-01-02", "12:00:00",
+                                                                                    1, r.nextInt(100_000), 1, 1, 1);
+                            request = HttpRequest.newBuilder(URI.create(base + "/scores"))
+                                .POST(HttpRequest.BodyPublishers.ofString(LeaderboardServer.toLines(Arrays.asList(entry))))
+                                .build();
+                        }
+                        long t0 = System.nanoTime();
+                        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                        long elapsed = System.nanoTime() - t0;
+                        if (response.statusCode() >= 300) throw new IllegalStateException("HTTP " + response.statusCode());
+                        if (request != top) submitted.incrementAndGet();
+                        if (n == own.length) own = Arrays.copyOf(own, n * 2);
+                        own[n++] = elapsed;
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                latencies[id] = own;
+                counts[id] = n;
+            });
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (int n : counts) total += n;
+        long[] all = new long[total];
+        int at = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies[c], 0, all, at, counts[c]);
+            at += counts[c];
+        }
+        Arrays.sort(all);
+        System.out.printf("%,d requests: %,.0f req/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                          total, total / seconds, all[total / 2] / 1e6, all[(int) (total * 0.99)] / 1e6, all[total - 1] / 1e6);
+
+        server.stop();
+        writer.shutdown();
+        int stored = store.readAll().size();
+        System.out.printf("%,d submits accepted, %,d scores on disk%n", submitted.get(), stored);
+        if (stored != seed.size() + submitted.get()) throw new IllegalStateException("Submitted scores missing");
+    }
+
+    // ----- Replays -----
+
+    private static void benchmarkReplay() throws Exception {
+        // A scripted game on level 3
+        GameSimulation live = new GameSimulation(3, 42);
+        Replay recorded = playScriptedGame(live, "bot", 0);
+        File file = File.createTempFile("td_replay", ".tdr");
+        recorded.write(file);
+        double minutes = live.getTick() / (GameSimulation.TICKS_PER_SECOND * 60.0);
+        System.out.printf("Recorded %,d ticks (%.1f min of play), %d commands, score %d: %,d bytes%n",
+                          live.getTick(), minutes, recorded.getCommands().size(), recorded.score, file.length());
+
+        Replay replay = Replay.read(file);
+        long warmUntil = System.nanoTime() + 5_000_000_000L;
+        while (System.nanoTime() < warmUntil) {
+            replay.runHeadless(); // Warm-up: give the JIT a few seconds on the tick loop
+        }
+        int runs = 50;
+        long start = System.nanoTime();
+        GameSimulation sim = null;
+        for (int i = 0; i < runs; i++) {
+            sim = replay.runHeadless();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / runs;
+        System.out.printf("Headless replay: %.1f ms (%.0fx real time, ~%.0f ms per 20 min of play)%n",
+                          millis, minutes * 60_000 / millis, millis / minutes * 20);
+        if (!replay.matches(sim)) throw new IllegalStateException("Replay diverged: score " + sim.calculateScore());
+        System.out.println("Replay matches the recorded game");
+        file.delete();
+    }
+
+    // A scripted player: every second, build towers on free cells next to the path.
+    // The variant shifts which tower goes on which cell, so different variants play different games.
+    private static Replay playScriptedGame(GameSimulation live, String username, int variant) {
+        Replay.Recorder recorder = new Replay.Recorder(username, live.getLevelNumber(), live.getSeed(), live.isMazing());
+        LevelData level = live.getLevelData();
+        List<int[]> cells = new ArrayList<>();
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 18; x++) {
+                if (!level.isPath(x, y) && (level.isPath(x - 1, y) || level.isPath(x + 1, y)
+                                            || level.isPath(x, y - 1) || level.isPath(x, y + 1))) {
+                    cells.add(new int[]{x, y});
+                }
+            }
+        }
+        Tower.TowerType[] types = Tower.TowerType.values();
+        while (!live.isOver()) {
+            if (live.getTick() % GameSimulation.TICKS_PER_SECOND == 0) {
+                for (int[] cell : cells) {
+                    Tower.TowerType type = types[(cell[0] + cell[1] + variant) % types.length];
+                    if (live.placeTower(type, cell[0], cell[1])) {
+                        recorder.record(live.getTick(), Replay.PLACE, type.ordinal(), cell[0], cell[1]);
+                    }
+                }
+            }
+            live.tick();
+        }
+        return recorder.finish(live, live.isGameOver() ? Replay.GAME_OVER : Replay.LEVEL_COMPLETE);
+    }
+
+    private static void benchmarkVerify() throws Exception {
+        // 60 scripted games (3 levels x 4 variants x 5 players), each submitted 50 times
+        // under a different date; every 100th submission has its score inflated
+        File dir = Files.createTempDirectory("td_verify").toFile();
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+        int tampered = 0;
+        for (int level = 1; level <= 3; level++) {
+            for (int variant = 0; variant < 4; variant++) {
+                for (int player = 0; player < 5; player++) {
+                    GameSimulation sim = new GameSimulation(level, variant);
+                    Replay replay = playScriptedGame(sim, "player" + player, variant);
+                    for (int copy = 0; copy < 50; copy++) {
+                        AuthSystem.ScoreEntry entry = new AuthSystem.ScoreEntry(
+                            replay.username, String.format("2026-%02d-%02d", 1 + variant, 1 + copy % 28),
+                            String.format("%02d:%02d:00", copy / 28, level), level,
+                            sim.calculateScore(), sim.getEnemiesKilled(), sim.getHealth(), sim.getMoneySpent());
+                        if (entries.size() % 100 == 99) {
+                            entry.score += 1000;
+                            tampered++;
+                        }
+                        replay.writeFor(dir, entry);
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        System.out.printf("%,d submitted scores with replays, %d tampered%n", entries.size(), tampered);
+
+        ReplayVerifier verifier = new ReplayVerifier(dir);
+        verifier.verifyAll(entries.subList(0, 300)); // Warm-up
+        long start = System.nanoTime();
+        List<ReplayVerifier.Result> results = verifier.verifyAll(entries);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int flagged = 0;
+        for (ReplayVerifier.Result result : results) {
+            if (!result.isOk()) flagged++;
+        }
+        System.out.printf("Verified in %.2f s on %d cores: %,.0f replays per minute, %d flagged%n",
+                          seconds, Runtime.getRuntime().availableProcessors(),
+                          results.size() / seconds * 60, flagged);
+        if (flagged != tampered) throw new IllegalStateException("Expected " + tampered + " flagged scores");
+
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    // ----- Snapshots -----
+
+    private static void benchmarkSnapshot() throws Exception {
+        // Replays a scripted level 3 game, snapshotting every 10 seconds of play
+        Replay replay = playScriptedGame(new GameSimulation(3, 7), "bot", 1);
+        Replay.Recorder recorder = new Replay.Recorder("bot", 3, 7);
+        GameSimulation sim = replay.newSimulation();
+        List<Replay.Command> commands = replay.getCommands();
+        int next = 0;
+        int snapshots = 0;
+        int maxBytes = 0;
+        double maxWriteMicros = 0;
+        double maxReadMicros = 0;
+        while (!sim.isOver()) {
+            while (next < commands.size() && commands.get(next).tick <= sim.getTick()) {
+                Replay.apply(sim, commands.get(next++));
+            }
+            sim.tick();
+            if (sim.getTick() % 600 != 0 || sim.isOver()) continue;
+
+            GameSnapshot snapshot = new GameSnapshot(sim, recorder);
+            byte[] data = snapshot.toBytes();
+            int reps = 2000;
+            long start = System.nanoTime();
+            for (int i = 0; i < reps; i++) {
+                data = snapshot.toBytes();
+            }
+            double writeMicros = (System.nanoTime() - start) / 1e3 / reps;
+            start = System.nanoTime();
+            GameSnapshot restored = null;
+            for (int i = 0; i < reps; i++) {
+                restored = GameSnapshot.fromBytes(data);
+            }
+            double readMicros = (System.nanoTime() - start) / 1e3 / reps;
+
+            // The restored game must be the same game: identical state now and at the end
+            if (!Arrays.equals(data, restored.toBytes())) {
+                throw new IllegalStateException("Restored state differs at tick " + sim.getTick());
+            }
+            GameSimulation resumed = replay.runHeadless(GameSnapshot.fromBytes(data).sim);
+            if (!replay.matches(resumed)) {
+                throw new IllegalStateException("Game resumed at tick " + sim.getTick() + " ended differently");
+            }
+
+            snapshots++;
+            maxBytes = Math.max(maxBytes, data.length);
+            maxWriteMicros = Math.max(maxWriteMicros, writeMicros);
+            maxReadMicros = Math.max(maxReadMicros, readMicros);
+        }
+        System.out.printf("%d snapshots over %,d ticks, largest %,d bytes%n", snapshots, sim.getTick(), maxBytes);
+        System.out.printf("Slowest encode %.1f us, slowest restore %.1f us (averaged over 2,000 runs each)%n",
+                          maxWriteMicros, maxReadMicros);
+        System.out.println("Every restored game continues to the recorded result");
+    }
+
+    // ----- Rewind -----
+
+    private static void benchmarkRewind() throws Exception {
+        Replay replay = playScriptedGame(new GameSimulation(3, 7), "bot", 1);
+        int ticks = replay.ticks;
+
+        // Live overhead: the whole game with and without the buffer
+        long plain = 0;
+        long buffered = 0;
+        RewindBuffer buffer = null;
+        long maxBytes = 0;
+        for (int round = 0; round < 30; round++) {
+            long start = System.nanoTime();
+            replay.runHeadless();
+            long middle = System.nanoTime();
+            GameSimulation sim = replay.newSimulation();
+            buffer = new RewindBuffer(sim);
+            playWithRewind(replay, sim, buffer, -1);
+            long end = System.nanoTime();
+            if (round >= 10) { // The first rounds warm up the JIT
+                plain += middle - start;
+                buffered += end - middle;
+            }
+            maxBytes = Math.max(maxBytes, buffer.getBytesUsed());
+        }
+        double plainMicros = plain / 1e3 / 20 / ticks;
+        double bufferedMicros = buffered / 1e3 / 20 / ticks;
+        System.out.printf("Tick: %.2f us plain, %.2f us with the rewind buffer (+%.2f us; buffer's own count %.2f us)%n",
+                          plainMicros, bufferedMicros, bufferedMicros - plainMicros, buffer.getAverageOverheadMicros());
+        System.out.printf("Buffer: %d keyframes, up to %,d bytes for the last %d s%n", buffer.getKeyframeCount(),
+                          maxBytes, RewindBuffer.DEFAULT_WINDOW_TICKS / GameSimulation.TICKS_PER_SECOND);
+
+        // Restore time, going back 30 and 60 seconds from the middle of the game
+        int now = ticks / 2 / RewindBuffer.KEYFRAME_TICKS * RewindBuffer.KEYFRAME_TICKS + 37;
+        for (int back : new int[]{30, 59}) {
+            long total = 0;
+            int reps = 20;
+            for (int i = 0; i < reps; i++) {
+                GameSimulation sim = replay.newSimulation();
+                RewindBuffer rewind = new RewindBuffer(sim);
+                sim = playWithRewind(replay, sim, rewind, now);
+                long start = System.nanoTime();
+                rewind.rewindTo(now - back * GameSimulation.TICKS_PER_SECOND);
+                total += System.nanoTime() - start;
+            }
+            System.out.printf("Rewind %d s: %.0f us%n", back, total / 1e3 / reps);
+        }
+
+        // Exactness: rewind a minute, play the same commands again, and the game must end as recorded
+        GameSimulation sim = replay.newSimulation();
+        RewindBuffer rewind = new RewindBuffer(sim);
+        for (int check = 2400; check < ticks; check += 2400) {
+            sim = playWithRewind(replay, sim, rewind, check);
+            sim = rewind.rewindTo(check - 59 * GameSimulation.TICKS_PER_SECOND - 13);
+        }
+        sim = playWithRewind(replay, sim, rewind, -1);
+        if (!replay.matches(sim)) throw new IllegalStateException("Rewound game ended differently");
+        System.out.println("Rewound games replay to the recorded result");
+    }
+
+    // Plays the replay's commands from the simulation's current tick up to the given tick (-1 = the end)
+    private static GameSimulation playWithRewind(Replay replay, GameSimulation sim, RewindBuffer rewind, int until) {
+        List<Replay.Command> commands = replay.getCommands();
+        int next = 0;
+        while (next < commands.size() && commands.get(next).tick < sim.getTick()) {
+            next++;
+        }
+        while (!sim.isOver() && sim.getTick() < replay.ticks && (until < 0 || sim.getTick() < until)) {
+            while (next < commands.size() && commands.get(next).tick <= sim.getTick()) {
+                Replay.Command command = commands.get(next++);
+                Replay.apply(sim, command);
+                rewind.record(command);
+            }
+            sim.tick();
+            rewind.afterTick(sim);
+        }
+        return sim;
+    }
+
+    private static void benchmarkMazing() throws Exception {
+        int size = 256;
+        for (int round = 0; round < 6; round++) { // The first rounds warm up the JIT
+            boolean report = round == 5;
+
+            // Open ground, exits down the right edge, spawns down the left
+            FlowField field = new FlowField(size, size);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size - 1; x++) field.setWalkable(x, y, true);
+                field.addExit(size - 1, y);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) field.compute();
+            long fullNanos = (System.nanoTime() - start) / 10;
+            int[] spawns = new int[8];
+            for (int i = 0; i < spawns.length; i++) spawns[i] = (i * size / spawns.length + 7) * size;
+
+            // Random placements until half the cells are blocked, then random sales and re-placements
+            Random random = new Random(42);
+            long[] placed = new long[size * size * 2];
+            long[] refused = new long[size * size * 2];
+            long[] sold = new long[size * size];
+            int placedCount = 0, refusedCount = 0, soldCount = 0;
+            List<Integer> towers = new ArrayList<>();
+            int attempts = size * size * 3 / 4;
+            for (int i = 0; i < attempts; i++) {
+                int cell = random.nextInt(size * size);
+                int x = cell % size, y = cell / size;
+                if (field.getDistance(x, y) == FlowField.UNREACHABLE || field.isExit(x, y)) continue;
+                start = System.nanoTime();
+                boolean ok = field.block(x, y, spawns, spawns.length);
+                long nanos = System.nanoTime() - start;
+                if (ok) {
+                    placed[placedCount++] = nanos;
+                    towers.add(cell);
+                } else {
+                    refused[refusedCount++] = nanos;
+                }
+                if (towers.size() > size * size / 4 && random.nextInt(4) == 0) {
+                    int sell = towers.remove(random.nextInt(towers.size()));
+                    start = System.nanoTime();
+                    field.unblock(sell % size, sell / size);
+                    sold[soldCount++] = System.nanoTime() - start;
+                }
+            }
+
+            // Check against a full search over the final grid
+            FlowField check = new FlowField(size, size);
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size - 1; x++) check.setWalkable(x, y, true);
+                check.addExit(size - 1, y);
+            }
+            for (int cell : towers) check.setWalkable(cell % size, cell / size, false);
+            check.compute();
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    if (check.getDistance(x, y) != field.getDistance(x, y)) {
+                        throw new IllegalStateException("Incremental distances differ at " + x + "," + y);
+                    }
+                }
+            }
+
+            if (report) {
+                System.out.printf("%dx%d grid, full search: %.0f us; %,d towers standing at the end%n",
+                                  size, size, fullNanos / 1e3, towers.size());
+                printLatencies("Placed", placed, placedCount);
+                printLatencies("Refused (would cut a spawn off)", refused, refusedCount);
+                printLatencies("Sold", sold, soldCount);
+                System.out.println("Incremental distances match a full search");
+            }
+        }
+
+        // A mazing game on level 3, recorded, written and replayed
+        Replay replay = playScriptedGame(new GameSimulation(3, 7, true), "bot", 1);
+        File file = File.createTempFile("td_mazing", ".tdr");
+        file.deleteOnExit();
+        replay.write(file);
+        Replay read = Replay.read(file);
+        GameSimulation sim = read.runHeadless();
+        System.out.printf("Mazing game: %,d ticks, %d towers placed, score %d (%d kills, health %d)%n",
+                          replay.ticks, replay.getCommands().size(), replay.score, replay.enemiesKilled, replay.health);
+        if (!read.mazing || !read.matches(sim)) throw new IllegalStateException("Mazing replay ended differently");
+        System.out.println("Mazing replay matches the recorded game");
+    }
+
+    // ----- Community levels -----
+
+    private static void benchmarkLevels() throws Exception {
+        File root = Files.createTempDirectory("td_levels").toFile();
+        File filesDir = new File(root, "files");
+        File packDir = new File(root, "pack");
+        filesDir.mkdirs();
+        packDir.mkdirs();
+
+        // 500 serpentine levels, every 25th 512x512 and two in 100 1024x1024; half text, half binary
+        int count = 500;
+        Random random = new Random(42);
+        List<File> files = new ArrayList<>();
+        long textBytes = 0, binaryBytes = 0;
+        File largeText = null, largeBinary = null;
+        for (int i = 0; i < count; i++) {
+            int number = 10 + i;
+            int size = i % 100 >= 98 ? 1024 : i % 25 == 24 ? 512 : 24 + random.nextInt(40);
+            String text = serpentineLevelText(number, size, size, random);
+            File file;
+            if (i % 2 == 0) {
+                file = new File(filesDir, String.format("level%03d%s", i, LevelFile.TEXT_EXTENSION));
+                Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+                textBytes += file.length();
+                if (size == 1024 && largeText == null) largeText = file;
+            } else {
+                byte[] binary = LevelFile.toBinary(number, LevelFile.parseText(text.getBytes(StandardCharsets.UTF_8), "generated"));
+                file = new File(filesDir, String.format("level%03d%s", i, LevelFile.BINARY_EXTENSION));
+                Files.write(file.toPath(), binary);
+                binaryBytes += file.length();
+                if (size == 1024 && largeBinary == null) largeBinary = file;
+            }
+            files.add(file);
+        }
+        File pack = new File(packDir, "community" + LevelFile.PACK_EXTENSION);
+        LevelFile.writePack(pack, files);
+        System.out.printf("%d levels: %.1f MB as text (%d files), %.1f MB as binary (%d files), %.1f MB as one pack%n",
+                          count, textBytes / 1e6, (count + 1) / 2, binaryBytes / 1e6, count / 2, pack.length() / 1e6);
+
+        byte[] textData = Files.readAllBytes(largeText.toPath());
+        byte[] binaryData = Files.readAllBytes(largeBinary.toPath());
+        for (int round = 0; round < 5; round++) { // The first rounds warm up the JIT
+            boolean report = round == 4;
+
+            // Scanning: metadata only, from the loose files and from the pack
+            long start = System.nanoTime();
+            LevelCatalog catalog = new LevelCatalog(filesDir, 4);
+            int listed = catalog.getInfos().size();
+            long scanFiles = System.nanoTime() - start;
+            start = System.nanoTime();
+            LevelCatalog packCatalog = new LevelCatalog(packDir, 4);
+            int listedPacked = packCatalog.getInfos().size();
+            long scanPack = System.nanoTime() - start;
+            if (listed != count || listedPacked != count) {
+                throw new IllegalStateException("Listed " + listed + " and " + listedPacked + " of " + count + " levels");
+            }
+
+            // Scanning the old way: every file read and every grid parsed up front
+            start = System.nanoTime();
+            for (File file : files) {
+                if (file.getName().endsWith(LevelFile.TEXT_EXTENSION)) {
+                    parseGridSplit(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+                }
+            }
+            long scanSplit = System.nanoTime() - start;
+
+            // One 1024x1024 level: the parsers, then compiling
+            start = System.nanoTime();
+            LevelCompiler fromText = LevelFile.parseText(textData, largeText.getName());
+            long parseText = System.nanoTime() - start;
+            start = System.nanoTime();
+            LevelCompiler fromBinary = LevelFile.parseBinary(binaryData, largeBinary.getName());
+            long parseBinary = System.nanoTime() - start;
+            start = System.nanoTime();
+            int[][] split = parseGridSplit(new String(textData, StandardCharsets.UTF_8));
+            long parseSplit = System.nanoTime() - start;
+            start = System.nanoTime();
+            LevelData compiled = fromText.compile();
+            long compile = System.nanoTime() - start;
+            if (!Arrays.deepEquals(fromText.getGrid(), split) || fromBinary.getGrid().length != 1024) {
+                throw new IllegalStateException("Parsers disagree");
+            }
+
+            // Playing a level from the pack: cold, then from the loaded levels
+            int number = 10 + 99;
+            start = System.nanoTime();
+            LevelData packed = packCatalog.load(number);
+            long loadCold = System.nanoTime() - start;
+            start = System.nanoTime();
+            packCatalog.load(number);
+            long loadCached = System.nanoTime() - start;
+            if (packed.getGridWidth() != compiled.getGridWidth()
+                || packed.getFlowField().getDistance(1, 1) != compiled.getFlowField().getDistance(1, 1)) {
+                throw new IllegalStateException("Packed level differs from its text file");
+            }
+
+            if (report) {
+                System.out.printf("Catalog scan: %.1f ms for %d files, %.1f ms for the pack; old full parse %.1f ms%n",
+                                  scanFiles / 1e6, count, scanPack / 1e6, scanSplit / 1e6);
+                System.out.printf("1024x1024 level (%.1f MB text, %.2f MB binary): text %.1f ms, binary %.1f ms,"
+                                  + " old split parse %.1f ms; compile %.1f ms%n",
+                                  textData.length / 1e6, binaryData.length / 1e6, parseText / 1e6,
+                                  parseBinary / 1e6, parseSplit / 1e6, compile / 1e6);
+                System.out.printf("Level %d from the pack: %.1f ms to load and compile, %.1f us once loaded%n",
+                                  number, loadCold / 1e6, loadCached / 1e3);
+            }
+        }
+    }
+
+    // A road snaking down the grid from a spawn at the top left, with a few obstacles and decorations
+    private static String serpentineLevelText(int number, int width, int height, Random random) {
+        int[][] grid = new int[height][width];
+        int lastX = 1, lastY = 1;
+        boolean right = true;
+        for (int y = 1; y < height - 1; y += 3) {
+            for (int x = 1; x < width - 1; x++) grid[y][x] = LevelData.PATH;
+            lastX = right ? width - 2 : 1;
+            lastY = y;
+            if (y + 3 < height - 1) {
+                grid[y + 1][lastX] = LevelData.PATH;
+                grid[y + 2][lastX] = LevelData.PATH;
+            }
+            right = !right;
+        }
+        grid[1][1] = LevelData.SPAWN;
+        grid[lastY][lastX] = LevelData.EXIT;
+
+        StringBuilder text = new StringBuilder(width * height * 2 + 256);
+        text.append("# Generated level\n");
+        text.append("number ").append(number).append('\n');
+        text.append("name Serpentine ").append(number).append('\n');
+        text.append("waves ").append(5 + random.nextInt(10)).append('\n');
+        text.append("interval ").append(30 + random.nextInt(40)).append('\n');
+        text.append("background-color ").append(String.format("%06x", random.nextInt(0x1000000))).append('\n');
+        text.append("grid ").append(width).append(' ').append(height).append('\n');
+        for (int[] row : grid) {
+            for (int x = 0; x < width; x++) {
+                if (x > 0) text.append(' ');
+                text.append((char) ('0' + row[x]));
+            }
+            text.append('\n');
+        }
+        for (int i = 0; i < 20; i++) {
+            int x = random.nextInt(width), y = random.nextInt(height);
+            if (grid[y][x] != LevelData.EMPTY) continue;
+            text.append(i % 2 == 0 ? "obstacle " : "decoration ").append(x).append(' ').append(y)
+                .append(i % 2 == 0 ? " obstacle136" : " dec1").append('\n');
+        }
+        return text.toString();
+    }
+
+    // The grid parse levels used before LevelFile: split into lines, then cells (header lines skipped)
+    private static int[][] parseGridSplit(String text) {
+        String[] lines = text.trim().split("\n");
+        int first = 0;
+        while (!lines[first].startsWith("grid")) first++;
+        int height = Integer.parseInt(lines[first].trim().split("\\s+")[2]);
+        int[][] grid = new int[height][];
+        for (int y = 0; y < height; y++) {
+            String[] cells = lines[first + 1 + y].trim().split("\\s+");
+            grid[y] = new int[cells.length];
+            for (int x = 0; x < cells.length; x++) {
+                grid[y][x] = Integer.parseInt(cells[x]);
+            }
+        }
+        return grid;
+    }
+
+    private static void printLatencies(String label, long[] nanos, int count) {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long n : sorted) total += n;
+        System.out.printf("%s: %,d, average %.1f us, median %.1f us, 99.9%% %.1f us, max %.1f us%n", label, count,
+                          total / 1e3 / count, sorted[count / 2] / 1e3,
+                          sorted[(int) (count * 0.999)] / 1e3, sorted[count - 1] / 1e3);
+    }
+}
@@ -0,0 +1,302 @@
+import org.json.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Binary Score File
+ * Compact, fixed-width score records, read into memory in one go.
+ *
+ * Layout (big-endian):
+ *   header   magic "TDSC", version, record count, user count, user table offset,
+ *            log generation merged through (32 bytes)
+ *   records  32 bytes each: user id, epoch seconds (local time), level, score, kills, health, money spent
+ *   users    user id -> name table (short length + UTF-8 bytes per name)
+ *
+ * Field getters read the buffer in place; a ScoreEntry is only built when
+ * one is asked for. The file is not mapped: Windows refuses to replace a
+ * mapped file, and compaction swaps in a new one while this is open. toJson/fromJson convert to and from the
+ * game_scores.json layout for export.
+ */
+public class BinaryScoreFile {
+    private static final int MAGIC = 0x54445343; // "TDSC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_BYTES = 32;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final String[] users;
+
+    private BinaryScoreFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a score file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported score file version " + buffer.getInt(4));
+        }
+        count = buffer.getInt(8);
+        users = new String[buffer.getInt(12)];
+        ByteBuffer names = buffer.duplicate();
+        int position = (int) buffer.getLong(16);
+        for (int i = 0; i < users.length; i++) {
+            int length = buffer.getShort(position) & 0xffff;
+            byte[] name = new byte[length];
+            names.position(position + 2);
+            names.get(name);
+            users[i] = new String(name, StandardCharsets.UTF_8);
+            position += 2 + length;
+        }
+    }
+
+    /** Reads an existing file; returns null if there is none. */
+    public static BinaryScoreFile open(File file) throws IOException {
+        if (!file.exists()) return null;
+        return new BinaryScoreFile(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Score-log generations below this are already part of the file. */
+    public long mergedThrough() {
+        return buffer.getLong(24);
+    }
+
+    // ----- In-place field reads -----
+
+    private int base(int i) {
+        return HEADER_BYTES + i * RECORD_BYTES;
+    }
+
+    public int userId(int i) {
+        return buffer.getInt(base(i));
+    }
+
+    public String user(int i) {
+        return users[userId(i)];
+    }
+
+    public long epochSecond(int i) {
+        return buffer.getLong(base(i) + 4);
+    }
+
+    public int level(int i) {
+        return buffer.getInt(base(i) + 12);
+    }
+
+    public int score(int i) {
+        return buffer.getInt(base(i) + 16);
+    }
+
+    public int enemiesKilled(int i) {
+        return buffer.getInt(base(i) + 20);
+    }
+
+    public int health(int i) {
+        return buffer.getInt(base(i) + 24);
+    }
+
+    public int moneySpent(int i) {
+        return buffer.getInt(base(i) + 28);
+    }
+
+    public AuthSystem.ScoreEntry entry(int i) {
+        long seconds = epochSecond(i);
+        return new AuthSystem.ScoreEntry(user(i), formatDate(seconds), formatTime(seconds),
+            level(i), score(i), enemiesKilled(i), health(i), moneySpent(i));
+    }
+
+    /** Adds the first limit records (file order) to out. */
+    public void readInto(int limit, List<AuthSystem.ScoreEntry> out) {
+        int n = Math.min(limit, count);
+        for (int i = 0; i < n; i++) {
+            out.add(entry(i));
+        }
+    }
+
+    // ----- Writing -----
+
+    /** Writes the entries in the given order. */
+    public static void write(File file, List<AuthSystem.ScoreEntry> entries) throws IOException {
+        write(file, entries, 0);
+    }
+
+    /**
+     * Writes the entries in the given order. mergedThrough records which
+     * score-log generations the entries already include (see ScoreStore).
+     * Entries whose date or time can't be parsed are left out and logged.
+     */
+    public static void write(File file, List<AuthSystem.ScoreEntry> entries, long mergedThrough) throws IOException {
+        Map<String, Integer> userIds = new LinkedHashMap<>();
+        long[] seconds = new long[entries.size()];
+        boolean[] skip = new boolean[entries.size()];
+        int valid = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            AuthSystem.ScoreEntry entry = entries.get(i);
+            try {
+                seconds[i] = toEpochSecond(entry.date, entry.time);
+                valid++;
+            } catch (IllegalArgumentException e) {
+                skip[i] = true;
+                System.err.println("Skipping score with a bad date: " + entry.username + " " + entry.date + " " + entry.time);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            long usersOffset = HEADER_BYTES + (long) valid * RECORD_BYTES;
+            for (int i = 0; i < entries.size(); i++) {
+                if (!skip[i]) userIds.putIfAbsent(entries.get(i).username, userIds.size());
+            }
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(valid);
+            out.writeInt(userIds.size());
+            out.writeLong(usersOffset);
+            out.writeLong(mergedThrough);
+
+            for (int i = 0; i < entries.size(); i++) {
+                if (skip[i]) continue;
+                AuthSystem.ScoreEntry entry = entries.get(i);
+                out.writeInt(userIds.get(entry.username));
+                out.writeLong(seconds[i]);
+                out.writeInt(entry.level);
+                out.writeInt(entry.score);
+                out.writeInt(entry.enemiesKilled);
+                out.writeInt(entry.health);
+                out.writeInt(entry.moneySpent);
+            }
+            for (String user : userIds.keySet()) {
+                byte[] name = user.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+            }
+        }
+    }
+
+    // ----- JSON conversion (game_scores.json layout: user -> list of scores) -----
+
+    public JSONObject toJson() {
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>(count);
+        readInto(count, entries);
+        return toJson(entries);
+    }
+
+    public static JSONObject toJson(List<AuthSystem.ScoreEntry> entries) {
+        Map<String, JSONArray> byUser = new LinkedHashMap<>();
+        for (AuthSystem.ScoreEntry entry : entries) {
+            JSONObject score = new JSONObject();
+            score.put("date", entry.date);
+            score.put("time", entry.time);
+            score.put("level", entry.level);
+            score.put("score", entry.score);
+            score.put("enemies_killed", entry.enemiesKilled);
+            score.put("health", entry.health);
+            score.put("money_spent", entry.moneySpent);
+            byUser.computeIfAbsent(entry.username, u -> new JSONArray()).put(score);
+        }
+        JSONObject all = new JSONObject();
+        for (Map.Entry<String, JSONArray> entry : byUser.entrySet()) {
+            all.put(entry.getKey(), entry.getValue());
+        }
+        return all;
+    }
+
+    /**
+     * Streams the entries to out in the game_scores.json layout, byte for byte
+     * what toJson(entries).toString(indent) gives, without building the tree.
+     */
+    public static void writeJson(List<AuthSystem.ScoreEntry> entries, Writer out, int indent) {
+        Map<String, List<AuthSystem.ScoreEntry>> byUser = new LinkedHashMap<>();
+        for (AuthSystem.ScoreEntry entry : entries) {
+            byUser.computeIfAbsent(entry.username, u -> new ArrayList<>()).add(entry);
+        }
+        JSONWriter json = new JSONWriter(out, indent);
+        json.object();
+        for (Map.Entry<String, List<AuthSystem.ScoreEntry>> user : byUser.entrySet()) {
+            json.key(user.getKey()).array();
+            for (AuthSystem.ScoreEntry entry : user.getValue()) {
+                json.object()
+                    .key("date").value(entry.date)
+                    .key("time").value(entry.time)
+                    .key("level").value(entry.level)
+                    .key("score").value(entry.score)
+                    .key("enemies_killed").value(entry.enemiesKilled)
+                    .key("health").value(entry.health)
+                    .key("money_spent").value(entry.moneySpent)
+                    .endObject();
+            }
+            json.endArray();
+        }
+        json.endObject();
+        json.flush();
+    }
+
+    public static List<AuthSystem.ScoreEntry> fromJson(JSONObject allScores) {
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+        for (String username : allScores.keySet()) {
+            JSONArray userScores = allScores.getJSONArray(username);
+            for (int i = 0; i < userScores.length(); i++) {
+                JSONObject scoreData = userScores.getJSONObject(i);
+                entries.add(new AuthSystem.ScoreEntry(
+                    username,
+                    scoreData.getString("date"),
+                    scoreData.getString("time"),
+                    scoreData.getInt("level"),
+                    scoreData.getInt("score"),
+                    scoreData.getInt("enemies_killed"),
+                    scoreData.getInt("health"),
+                    scoreData.getInt("money_spent")
+                ));
+            }
+        }
+        return entries;
+    }
+
+    // ----- Date helpers (stored as local wall-clock seconds, so they round-trip exactly) -----
+
+    /** Throws IllegalArgumentException if the date or time is missing or malformed. */
+    static long toEpochSecond(String date, String time) {
+        if (date == null || time == null) throw new IllegalArgumentException("Missing date or time");
+        try {
+            return LocalDateTime.parse(date + "T" + time).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Bad date or time: " + date + " " + time, e);
+        }
+    }
+
+    static String formatDate(long epochSecond) {
+        LocalDateTime t = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        char[] c = new char[10];
+        pad(c, 0, t.getYear(), 4);
+        c[4] = '-';
+        pad(c, 5, t.getMonthValue(), 2);
+        c[7] = '-';
+        pad(c, 8, t.getDayOfMonth(), 2);
+        return new String(c);
+    }
+
+    static String formatTime(long epochSecond) {
+        int seconds = (int) Math.floorMod(epochSecond, 86400L);
+        char[] c = new char[8];
+        pad(c, 0, seconds / 3600, 2);
+        c[2] = ':';
+        pad(c, 3, seconds / 60 % 60, 2);
+        c[5] = ':';
+        pad(c, 6, seconds % 60, 2);
+        return new String(c);
+    }
+
+    private static void pad(char[] c, int at, int value, int digits) {
+        for (int i = at + digits - 1; i >= at; i--) {
+            c[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
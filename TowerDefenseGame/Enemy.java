@@ -1,5 +1,7 @@
 import java.awt.Point;
-import java.util.List;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * Enemy Class
@@ -28,8 +30,10 @@ public class Enemy {
         }
     }
     
-    private List<Point> path;
-    private int pathIndex;
+    private final int id; // Unique within a game, used by snapshots to link projectiles to targets
+    private FlowField field; // Shared by every enemy of the level (of the game, in mazing mode)
+    private int targetX, targetY; // Cell being walked to; -1 once there is nowhere left to go
+    private int dirX, dirY; // Heading, keeps enemies going straight in wide corridors
     private double x, y;
     private EnemyType type;
     private int maxHealth;
@@ -44,12 +48,16 @@ public class Enemy {
     private int attackCooldown;
     private int attackTimer;
     
-    public Enemy(List<Point> path, EnemyType type, int waveNumber, int spawnDelay) {
-        this.path = path;
-        this.pathIndex = 0;
-        Point start = path.get(0);
-        this.x = start.x;
-        this.y = start.y;
+    public Enemy(int id, FlowField field, Point spawn, EnemyType type, int waveNumber, int spawnDelay) {
+        this.id = id;
+        this.field = field;
+        this.x = LevelData.centerX(spawn.x);
+        this.y = LevelData.centerY(spawn.y);
+        this.dirX = 1; // Enemies start heading right
+        this.dirY = 0;
+        this.targetX = spawn.x;
+        this.targetY = spawn.y;
+        chooseNextCell();
         this.type = type;
         this.spawnDelay = spawnDelay;
         
@@ -115,19 +123,19 @@ public class Enemy {
             return true;
         }
         
-        if (pathIndex >= path.size() - 1) {
+        if (targetX < 0) {
             reachedEnd = true;
             return false;
         }
         
-        Point target = path.get(pathIndex + 1);
-        double dx = target.x - x;
-        double dy = target.y - y;
+        double dx = LevelData.centerX(targetX) - x;
+        double dy = LevelData.centerY(targetY) - y;
         double dist = Math.sqrt(dx * dx + dy * dy);
         
         if (dist < speed) {
-            pathIndex++;
-            if (pathIndex >= path.size() - 1) {
+            // Reached the cell: walk on to the next one, or leave at an exit
+            chooseNextCell();
+            if (targetX < 0) {
                 reachedEnd = true;
                 return false;
             }
@@ -140,20 +148,25 @@ public class Enemy {
             attackTimer--;
         }
         
-        // Attack nearest tower in range
+        if (attackTimer > 0) return true; // Still reloading: no need to look for a target
+        
+        // Attack nearest tower in range (squared distances, compared against every tower)
         Tower targetTower = null;
-        double nearestDist = Double.MAX_VALUE;
+        double nearestDistSq = Double.MAX_VALUE;
+        double rangeSq = (double) attackRange * attackRange;
         for (Tower tower : towers) {
             if (tower.isAlive()) {
-                double distToTower = Math.hypot(tower.getX() - x, tower.getY() - y);
-                if (distToTower <= attackRange && distToTower < nearestDist) {
-                    nearestDist = distToTower;
+                double tx = tower.getX() - x;
+                double ty = tower.getY() - y;
+                double distSq = tx * tx + ty * ty;
+                if (distSq <= rangeSq && distSq < nearestDistSq) {
+                    nearestDistSq = distSq;
                     targetTower = tower;
                 }
             }
         }
         
-        if (targetTower != null && attackTimer <= 0) {
+        if (targetTower != null) {
             enemyProjectiles.add(new EnemyProjectile(x, y, targetTower, attackDamage));
             attackTimer = attackCooldown;
         }
@@ -161,6 +174,22 @@ public class Enemy {
         return true;
     }
     
+    // Moves the target on to the neighbour of the target cell that is one step closer to an exit
+    private void chooseNextCell() {
+        int next = field.next(targetX, targetY, dirX, dirY);
+        if (next < 0) {
+            targetX = -1;
+            targetY = -1;
+            return;
+        }
+        int nx = next % field.getWidth();
+        int ny = next / field.getWidth();
+        dirX = nx - targetX;
+        dirY = ny - targetY;
+        targetX = nx;
+        targetY = ny;
+    }
+    
     public void takeDamage(int damage) {
         health -= damage;
         if (health <= 0) {
@@ -168,10 +197,52 @@ public class Enemy {
         }
     }
     
+    // ----- Snapshots -----
+    
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(id);
+        out.writeByte(type.ordinal());
+        out.writeShort(targetX);
+        out.writeShort(targetY);
+        out.writeByte(dirX);
+        out.writeByte(dirY);
+        out.writeDouble(x);
+        out.writeDouble(y);
+        out.writeInt(maxHealth);
+        out.writeInt(health);
+        out.writeDouble(speed);
+        out.writeBoolean(alive);
+        out.writeBoolean(reachedEnd);
+        out.writeInt(spawnDelay);
+        out.writeInt(attackTimer);
+    }
+    
+    static Enemy readState(DataInputStream in, FlowField field) throws IOException {
+        int id = in.readInt();
+        Enemy enemy = new Enemy(id, field, new Point(0, 0), EnemyType.values()[in.readByte()], 0, 0);
+        enemy.targetX = in.readShort();
+        enemy.targetY = in.readShort();
+        enemy.dirX = in.readByte();
+        enemy.dirY = in.readByte();
+        enemy.x = in.readDouble();
+        enemy.y = in.readDouble();
+        enemy.maxHealth = in.readInt();
+        enemy.health = in.readInt();
+        enemy.speed = in.readDouble();
+        enemy.alive = in.readBoolean();
+        enemy.reachedEnd = in.readBoolean();
+        enemy.spawnDelay = in.readInt();
+        enemy.attackTimer = in.readInt();
+        return enemy;
+    }
+    
+    public int getId() { return id; }
     public boolean isAlive() { return alive; }
     public boolean hasReachedEnd() { return reachedEnd; }
     public double getX() { return x; }
     public double getY() { return y; }
+    public int getTargetX() { return targetX; }
+    public int getTargetY() { return targetY; }
     public int getHealth() { return health; }
     public int getMaxHealth() { return maxHealth; }
     public int getReward() { return reward; }
@@ -0,0 +1,330 @@
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flow Field
+ * Steps from every walkable cell to the nearest exit, found with one
+ * breadth-first search started from all exits at once. Computed once per
+ * level and shared by every enemy: an enemy on a cell moves to a neighbour
+ * one step closer, an O(1) lookup, whatever the number of spawns, exits,
+ * branches or corridor widths.
+ *
+ * When several neighbours are one step closer (wide corridors), the one
+ * straight ahead wins, then the turns, so enemies walk in straight lines
+ * instead of zigzagging across the corridor.
+ *
+ * In mazing mode the towers of a game block cells of its field. block and
+ * unblock repair the distances instead of searching the whole grid again: a
+ * blocked cell only invalidates the cells whose every shortest step went
+ * through it, which are then re-attached from their intact neighbours, and
+ * an unblocked cell only spreads shorter distances outwards. The work
+ * follows the size of the change rather than the size of the grid.
+ *
+ * Cells are stored with a border of unwalkable cells around the grid, so the
+ * searches step to a neighbour by adding an offset, without bounds checks.
+ */
+public class FlowField {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int width;
+    private final int height;
+    private final int stride; // Row length with the border
+    private final boolean[] walkable;
+    private final boolean[] exit;
+    private final int[] distance;
+
+    // Scratch space for block/unblock, allocated on first use
+    private int[] queue;
+    private int[] invalidated; // Cells whose distance the current block cleared
+    private int[] queued; // == stamp: already a candidate in the current block
+    private int stamp;
+    private long[] seeds; // (distance << 32) | cell, to re-attach invalidated cells in order
+    private int[] undoCells; // Distances changed by the current block, to take it back
+    private int[] undoDistances;
+    private int undoCount;
+    private int undoBlocked = -1; // Cell the current block made unwalkable, -1 if none
+
+    public FlowField(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 2;
+        int cells = stride * (height + 2);
+        this.walkable = new boolean[cells];
+        this.exit = new boolean[cells];
+        this.distance = new int[cells];
+        Arrays.fill(distance, UNREACHABLE);
+    }
+
+    // Where (x, y) is stored, inside the border
+    private int index(int x, int y) {
+        return (y + 1) * stride + x + 1;
+    }
+
+    public void setWalkable(int x, int y, boolean value) {
+        walkable[index(x, y)] = value;
+    }
+
+    public void addExit(int x, int y) {
+        walkable[index(x, y)] = true;
+        exit[index(x, y)] = true;
+    }
+
+    /** Breadth-first search from all exits over the walkable cells. */
+    public void compute() {
+        Arrays.fill(distance, UNREACHABLE);
+        int[] queue = new int[distance.length];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < exit.length; i++) {
+            if (exit[i]) {
+                distance[i] = 0;
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int cell = queue[head++];
+            int d = distance[cell] + 1;
+            tail = visit(cell - 1, d, queue, tail);
+            tail = visit(cell + 1, d, queue, tail);
+            tail = visit(cell - stride, d, queue, tail);
+            tail = visit(cell + stride, d, queue, tail);
+        }
+    }
+
+    private int visit(int cell, int d, int[] queue, int tail) {
+        if (walkable[cell] && distance[cell] == UNREACHABLE) {
+            distance[cell] = d;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    // ----- Incremental updates (mazing mode) -----
+
+    /**
+     * Makes the cell unwalkable and repairs the distances. If a required cell
+     * (as y * width + x; -1 entries are skipped) would lose its way to every
+     * exit, nothing changes and false is returned. Exits cannot be blocked.
+     */
+    public boolean block(int x, int y, int[] required, int requiredCount) {
+        int cell = index(x, y);
+        if (exit[cell]) return false;
+        undoCount = 0;
+        undoBlocked = -1;
+        if (!walkable[cell]) return true;
+
+        ensureScratch();
+        walkable[cell] = false;
+        undoBlocked = cell;
+        int old = distance[cell];
+        setDistance(cell, UNREACHABLE);
+        if (old != UNREACHABLE) {
+            reattach(invalidateDependents(cell, old));
+        }
+
+        for (int i = 0; i < requiredCount; i++) {
+            int r = required[i];
+            if (r >= 0 && distance[index(r % width, r / width)] == UNREACHABLE) {
+                undo();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Whether block would succeed; the field is left as it was. */
+    public boolean canBlock(int x, int y, int[] required, int requiredCount) {
+        if (!block(x, y, required, requiredCount)) return false;
+        undo();
+        return true;
+    }
+
+    /** Makes the cell walkable again and spreads the shorter distances it opens up. */
+    public void unblock(int x, int y) {
+        int cell = index(x, y);
+        if (walkable[cell]) return;
+        ensureScratch();
+        walkable[cell] = true;
+        int best = closestNeighbour(cell);
+        if (best == UNREACHABLE) return; // Walled in: still cut off
+        distance[cell] = best + 1;
+
+        // Breadth-first from the cell: every improvement is one step more than the last
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = cell;
+        while (head < tail) {
+            int c = queue[head++];
+            int d = distance[c] + 1;
+            tail = improve(c - 1, d, tail);
+            tail = improve(c + 1, d, tail);
+            tail = improve(c - stride, d, tail);
+            tail = improve(c + stride, d, tail);
+        }
+    }
+
+    private int improve(int cell, int d, int tail) {
+        if (walkable[cell] && distance[cell] > d) {
+            distance[cell] = d;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    /**
+     * Clears the distance of every cell that stepped only through the blocked
+     * one, level by level outwards: a cell keeps its distance if another
+     * neighbour is still one step closer. Returns how many were cleared.
+     */
+    private int invalidateDependents(int blocked, int blockedDistance) {
+        stamp++;
+        int count = 0;
+        int head = 0;
+        int tail = pushDependents(blocked, blockedDistance, 0);
+        while (head < tail) {
+            int cell = queue[head++];
+            int d = distance[cell];
+            if (d - 1 == closestNeighbour(cell)) continue; // Another way, just as short
+            invalidated[count++] = cell;
+            setDistance(cell, UNREACHABLE);
+            tail = pushDependents(cell, d, tail);
+        }
+        return count;
+    }
+
+    // Queues the neighbours that were one step further than the cell
+    private int pushDependents(int cell, int d, int tail) {
+        tail = pushDependent(cell - 1, d + 1, tail);
+        tail = pushDependent(cell + 1, d + 1, tail);
+        tail = pushDependent(cell - stride, d + 1, tail);
+        tail = pushDependent(cell + stride, d + 1, tail);
+        return tail;
+    }
+
+    private int pushDependent(int cell, int d, int tail) {
+        if (distance[cell] == d && queued[cell] != stamp) {
+            queued[cell] = stamp;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    /**
+     * Gives the invalidated cells their new distances: each one next to an
+     * intact cell is a seed one step further than that neighbour, and the
+     * seeds spread in order of distance (the sorted seeds merged with a
+     * breadth-first queue). Cells no seed reaches stay unreachable.
+     */
+    private void reattach(int count) {
+        int seedCount = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = invalidated[i];
+            int best = closestNeighbour(cell);
+            if (best != UNREACHABLE) {
+                distance[cell] = best + 1;
+                seeds[seedCount++] = ((long) (best + 1) << 32) | cell;
+            }
+        }
+        Arrays.sort(seeds, 0, seedCount);
+
+        int next = 0;
+        int head = 0;
+        int tail = 0;
+        while (next < seedCount || head < tail) {
+            int cell;
+            if (next < seedCount && (head == tail || (int) (seeds[next] >>> 32) <= distance[queue[head]])) {
+                long seed = seeds[next++];
+                cell = (int) seed;
+                if (distance[cell] < (int) (seed >>> 32)) continue; // Reached sooner from another seed
+            } else {
+                cell = queue[head++];
+            }
+            int d = distance[cell] + 1;
+            tail = improve(cell - 1, d, tail);
+            tail = improve(cell + 1, d, tail);
+            tail = improve(cell - stride, d, tail);
+            tail = improve(cell + stride, d, tail);
+        }
+    }
+
+    // Smallest distance among the neighbours, UNREACHABLE if none has one
+    private int closestNeighbour(int cell) {
+        return Math.min(Math.min(distance[cell - 1], distance[cell + 1]),
+                        Math.min(distance[cell - stride], distance[cell + stride]));
+    }
+
+    private void setDistance(int cell, int d) {
+        undoCells[undoCount] = cell;
+        undoDistances[undoCount++] = distance[cell];
+        distance[cell] = d;
+    }
+
+    // Takes back the current block
+    private void undo() {
+        for (int i = undoCount - 1; i >= 0; i--) {
+            distance[undoCells[i]] = undoDistances[i];
+        }
+        if (undoBlocked >= 0) walkable[undoBlocked] = true;
+        undoCount = 0;
+        undoBlocked = -1;
+    }
+
+    private void ensureScratch() {
+        if (queue != null) return;
+        int cells = distance.length;
+        queue = new int[cells];
+        invalidated = new int[cells];
+        queued = new int[cells];
+        seeds = new long[cells];
+        undoCells = new int[cells];
+        undoDistances = new int[cells];
+    }
+
+    // ----- Steering -----
+
+    /**
+     * The cell to move to from (x, y) when heading (dirX, dirY), as y * width + x;
+     * -1 on an exit or where no exit can be reached.
+     */
+    public int next(int x, int y, int dirX, int dirY) {
+        if (!inBounds(x, y)) return -1;
+        int d = distance[index(x, y)];
+        if (d == 0 || d == UNREACHABLE) return -1;
+        // Straight on, then the turns (down before up, right before left), then back
+        int perpX = dirX != 0 ? 0 : 1;
+        int perpY = dirX != 0 ? 1 : 0;
+        if (isStepCloser(x + dirX, y + dirY, d)) return (y + dirY) * width + x + dirX;
+        if (isStepCloser(x + perpX, y + perpY, d)) return (y + perpY) * width + x + perpX;
+        if (isStepCloser(x - perpX, y - perpY, d)) return (y - perpY) * width + x - perpX;
+        if (isStepCloser(x - dirX, y - dirY, d)) return (y - dirY) * width + x - dirX;
+        return -1;
+    }
+
+    private boolean isStepCloser(int x, int y, int d) {
+        return inBounds(x, y) && distance[index(x, y)] == d - 1;
+    }
+
+    /** Whether every spawn can reach an exit. */
+    public boolean reachesExit(List<Point> spawns) {
+        for (Point spawn : spawns) {
+            if (getDistance(spawn.x, spawn.y) == UNREACHABLE) return false;
+        }
+        return true;
+    }
+
+    public int getDistance(int x, int y) {
+        return inBounds(x, y) ? distance[index(x, y)] : UNREACHABLE;
+    }
+
+    public boolean isExit(int x, int y) {
+        return inBounds(x, y) && exit[index(x, y)];
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+}
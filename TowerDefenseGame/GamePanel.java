@@ -4,42 +4,44 @@ import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Game Panel
- * Main game screen with rendering and game logic
+ * Main game screen: input, rendering and dialogs around a GameSimulation.
+ * Every game is recorded as a Replay; the same panel also plays replays back.
  */
 public class GamePanel extends JPanel implements ActionListener {
     private TowerDefenseGame game;
     private Timer gameTimer;
     private LevelData levelData;
     private int levelNumber;
+    private int previousLevel; // Level numbers the arrows lead to, -1 for none
+    private int nextLevel;
     
-    // Game state
-    private int money;
-    private int health;
-    private int wave;
-    private int enemiesKilled;
-    private int moneySpent;
+    // Game rules and state (money, health, waves, towers, enemies, projectiles)
+    private GameSimulation sim;
+    
+    // Recording of this game, or the replay being played back (then input only pauses or leaves)
+    private static final int AUTOSAVE_TICKS = 10 * GameSimulation.TICKS_PER_SECOND;
+    private Replay.Recorder recorder;
+    private GameSnapshot resumeFrom; // Saved game this panel continues, if any
+    
+    // Practice mode (-Dtd.practice=true): LEFT/BACKSPACE rewinds, nothing is saved
+    private static final int REWIND_STEP_TICKS = 5 * GameSimulation.TICKS_PER_SECOND;
+    private RewindBuffer rewind;
+    private Replay replay;
+    private int replayNext; // Next replay command to apply
+    private boolean replayFinished;
+    
+    // Screen state
     private boolean paused;
-    private boolean gameOver;
     private boolean gameOverHandled;
     private int gameOverTimer;
-    private boolean levelComplete;
-    
-    // Game objects
-    private List<Tower> towers;
-    private List<Enemy> enemies;
-    private List<Projectile> projectiles;
-    private List<EnemyProjectile> enemyProjectiles;
     
     // Decorative animated elements (visual only)
     private List<DecorativeElement> decorativeElements;
     
-    // Wave management
-    private int spawnTimer;
-    private boolean waveActive;
-    
     // Inner class for decorative animated elements
     private static class DecorativeElement {
         double x, y;
@@ -83,44 +85,74 @@ public class GamePanel extends JPanel implements ActionListener {
     private Rectangle[] towerButtons;
     private Rectangle sellButton;
     
+    // Optional renderers (-Dtd.renderer=software|layered), both null = plain Java2D
+    private SoftwareRenderer softwareRenderer;
+    private LayeredRenderer layeredRenderer;
+    private Dimension layeredSize;
+    private List<List<Point>> layeredRoutes; // Routes in the cached background (they move in mazing mode)
+    
     public GamePanel(TowerDefenseGame game, int levelNumber) {
+        this(game, levelNumber, null, null);
+    }
+    
+    /** Plays a recorded game back at normal speed. */
+    public GamePanel(TowerDefenseGame game, Replay replay) {
+        this(game, replay.level, replay, null);
+    }
+    
+    /** Continues a saved game exactly where it was left. */
+    public GamePanel(TowerDefenseGame game, GameSnapshot snapshot) {
+        this(game, snapshot.sim.getLevelNumber(), null, snapshot);
+    }
+    
+    private GamePanel(TowerDefenseGame game, int levelNumber, Replay replay, GameSnapshot resumeFrom) {
         this.game = game;
         this.levelNumber = levelNumber;
-        this.levelData = LevelData.createLevels().get(levelNumber - 1);
+        this.replay = replay;
+        this.resumeFrom = resumeFrom;
         
         setLayout(null);
         setBackground(new Color(100, 200, 100));
         setFocusable(true);
         
+        if ("software".equals(System.getProperty("td.renderer"))) {
+            softwareRenderer = new SoftwareRenderer(game.getAssetManager());
+        } else if ("layered".equals(System.getProperty("td.renderer"))) {
+            layeredRenderer = new LayeredRenderer();
+        }
+        
         initGame();
         initUI();
         setupListeners();
     }
     
     private void initGame() {
-        money = 500;
-        health = 100;
-        wave = 1;
-        enemiesKilled = 0;
-        moneySpent = 0;
+        if (replay != null) {
+            sim = replay.newSimulation();
+        } else if (resumeFrom != null) {
+            sim = resumeFrom.sim;
+            recorder = resumeFrom.recorder;
+        } else {
+            // Mazing mode (-Dtd.mazing=true): towers anywhere, enemies walk around them
+            sim = new GameSimulation(levelNumber, new Random().nextLong(), Boolean.getBoolean("td.mazing"));
+            recorder = new Replay.Recorder(game.getAuthSystem().getCurrentUser(), levelNumber,
+                                           sim.getSeed(), sim.isMazing());
+        }
+        if (replay == null && Boolean.getBoolean("td.practice")) {
+            rewind = new RewindBuffer(sim);
+        }
+        levelData = sim.getLevelData();
+        previousLevel = LevelData.previousLevel(levelNumber);
+        nextLevel = LevelData.nextLevel(levelNumber);
         paused = false;
-        gameOver = false;
         gameOverHandled = false;
         gameOverTimer = 0;
-        levelComplete = false;
         
-        towers = new ArrayList<>();
-        enemies = new ArrayList<>();
-        projectiles = new ArrayList<>();
-        enemyProjectiles = new ArrayList<>();
         decorativeElements = new ArrayList<>();
         
         // Initialize decorative animated elements
         initDecorativeElements();
         
-        spawnTimer = 0;
-        waveActive = false;
-        
         selectedTowerType = null;
         sellMode = false;
         hoveredTower = null;
@@ -128,7 +160,8 @@ public class GamePanel extends JPanel implements ActionListener {
     
     private void initDecorativeElements() {
         decorativeElements.clear();
-        java.util.Random rand = new java.util.Random();
+        // Seeded like the game, so a replay looks the same as the original
+        Random rand = new Random(sim.getSeed());
         
         // Create 8-12 decorative elements that move across the screen
         int count = 8 + rand.nextInt(5);
@@ -173,6 +206,7 @@ public class GamePanel extends JPanel implements ActionListener {
         addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
+                requestFocusInWindow();
                 handleMouseClick(e.getPoint());
             }
         });
@@ -183,18 +217,48 @@ public class GamePanel extends JPanel implements ActionListener {
                 handleMouseMove(e.getPoint());
             }
         });
+        
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_LEFT || e.getKeyCode() == KeyEvent.VK_BACK_SPACE) {
+                    rewind();
+                }
+            }
+        });
+    }
+    
+    // Practice mode: go back a few seconds and pause, so the player can try something else
+    private void rewind() {
+        if (rewind == null || sim.isOver()) return;
+        sim = rewind.rewindTo(sim.getTick() - REWIND_STEP_TICKS);
+        paused = true;
+        selectedTowerType = null;
+        sellMode = false;
+        hoveredTower = null;
+        repaint();
     }
     
     private void handleMouseClick(Point p) {
         // Check pause button (always allow pausing/resuming)
         if (pauseButton.contains(p)) {
             paused = !paused;
+            record(Replay.PAUSE);
             repaint();
             return;
         }
         
+        // Watching a replay: leaving is the only other thing to do
+        if (replay != null) {
+            if (leaveButton.contains(p)) {
+                stopGame();
+                game.showPanel("HIGHSCORES");
+            }
+            return;
+        }
+        
         // If paused, don't handle other clicks
-        if (paused || gameOver || levelComplete) return;
+        if (paused || sim.isOver()) return;
         
         // Check leave button
         if (leaveButton.contains(p)) {
@@ -204,18 +268,20 @@ public class GamePanel extends JPanel implements ActionListener {
         
         // Check previous level button
         if (prevLevelButton.contains(p)) {
-            if (levelNumber > 1) {
+            if (previousLevel > 0) {
+                autosave(); // Scored as left once the other level has loaded (still continuable if it doesn't)
                 stopGame();
-                game.startGame(levelNumber - 1);
+                game.startGame(previousLevel);
             }
             return;
         }
         
         // Check next level button
         if (nextLevelButton.contains(p)) {
-            if (levelNumber < 3) {
+            if (nextLevel > 0) {
+                autosave(); // Scored as left once the other level has loaded (still continuable if it doesn't)
                 stopGame();
-                game.startGame(levelNumber + 1);
+                game.startGame(nextLevel);
             }
             return;
         }
@@ -224,9 +290,10 @@ public class GamePanel extends JPanel implements ActionListener {
         for (int i = 0; i < towerButtons.length; i++) {
             if (towerButtons[i].contains(p)) {
                 Tower.TowerType[] types = Tower.TowerType.values();
-                if (money >= types[i].cost) {
+                if (sim.getMoney() >= types[i].cost) {
                     selectedTowerType = types[i];
                     sellMode = false;
+                    record(Replay.SELECT_TOWER, i, 0, 0);
                 }
                 return;
             }
@@ -236,6 +303,7 @@ public class GamePanel extends JPanel implements ActionListener {
         if (sellButton.contains(p)) {
             sellMode = true;
             selectedTowerType = null;
+            record(Replay.SELECT_SELL);
             return;
         }
         
@@ -264,58 +332,37 @@ public class GamePanel extends JPanel implements ActionListener {
             // Track hovered grid position for tower placement preview
             hoveredGridX = gridX;
             hoveredGridY = gridY;
-            
-            for (Tower tower : towers) {
-                if (tower.getGridX() == gridX && tower.getGridY() == gridY) {
-                    hoveredTower = tower;
-                    break;
-                }
-            }
+            hoveredTower = sim.getTowerAt(gridX, gridY);
         }
         
         repaint(); // Repaint to show preview
     }
     
     private void placeTower(int gridX, int gridY) {
-        // Check if spot is on path (cannot place tower on path)
-        if (levelData.isPath(gridX, gridY)) {
-            return;
-        }
-        
-        // Check if spot has obstacle (cannot place tower on obstacle)
-        if (levelData.isObstacle(gridX, gridY)) {
-            return;
-        }
-        
-        // Check if spot is empty
-        for (Tower tower : towers) {
-            if (tower.getGridX() == gridX && tower.getGridY() == gridY) {
-                return;
-            }
-        }
-        
-        // Check if can afford
-        if (money >= selectedTowerType.cost) {
-            Tower newTower = new Tower(gridX, gridY, selectedTowerType);
-            towers.add(newTower);
-            money -= selectedTowerType.cost;
-            moneySpent += selectedTowerType.cost;
+        // Path, obstacle, occupied cell and funds are checked by the simulation
+        if (sim.placeTower(selectedTowerType, gridX, gridY)) {
+            record(Replay.PLACE, selectedTowerType.ordinal(), gridX, gridY);
             selectedTowerType = null;
         }
     }
     
     private void sellTower(int gridX, int gridY) {
-        for (int i = 0; i < towers.size(); i++) {
-            Tower tower = towers.get(i);
-            if (tower.getGridX() == gridX && tower.getGridY() == gridY) {
-                money += tower.getCost() / 2;
-                towers.remove(i);
-                sellMode = false;
-                break;
-            }
+        if (sim.sellTower(gridX, gridY)) {
+            record(Replay.SELL, -1, gridX, gridY);
+            sellMode = false;
         }
     }
     
+    // Commands are stamped with the number of ticks run so far: they take effect before the next one
+    private void record(byte op, int towerType, int gridX, int gridY) {
+        if (recorder != null) recorder.record(sim.getTick(), op, towerType, gridX, gridY);
+        if (rewind != null) rewind.record(new Replay.Command(sim.getTick(), op, towerType, gridX, gridY));
+    }
+    
+    private void record(byte op) {
+        record(op, -1, 0, 0);
+    }
+    
     private void handleLeave() {
         int result = JOptionPane.showConfirmDialog(
             this,
@@ -330,15 +377,42 @@ public class GamePanel extends JPanel implements ActionListener {
     }
     
     private void saveAndExit() {
-        int score = calculateScore();
-        game.getAuthSystem().saveScore(levelNumber, score, enemiesKilled, health, moneySpent);
+        // A saved game is scored once: when it ends after CONTINUE, or when a new game takes its slot
+        if (!autosave()) {
+            saveScore(Replay.LEFT);
+        }
         stopGame();
         game.showPanel("MENU");
     }
     
+    // Saves the score and, next to it, the replay of this game
+    private void saveScore(byte outcome) {
+        if (rewind != null || replay != null) return; // Practice games and replays stay off the leaderboard
+        AuthSystem auth = game.getAuthSystem();
+        AuthSystem.ScoreEntry entry = auth.saveScore(levelNumber, sim.calculateScore(), sim.getEnemiesKilled(),
+                                                     sim.getHealth(), sim.getMoneySpent());
+        if (entry != null && recorder != null) {
+            recorder.finish(sim, outcome).save(auth.getPersistenceWriter(), entry);
+        }
+        if (outcome != Replay.LEFT && recorder != null) {
+            // The game has ended, there is nothing left to continue
+            GameSnapshot.delete(auth.getPersistenceWriter(), GameSnapshot.fileFor(recorder.getUsername()));
+        }
+    }
+    
+    // Saves the whole game state to the player's slot; the file is written in the background.
+    // Returns false if this game is not one that can be continued.
+    private boolean autosave() {
+        if (recorder == null || rewind != null || sim.isOver()) return false;
+        new GameSnapshot(sim, recorder).save(game.getAuthSystem().getPersistenceWriter(),
+                                             GameSnapshot.fileFor(recorder.getUsername()));
+        return true;
+    }
+    
     public void startGame() {
         gameTimer = new Timer(1000 / 60, this); // 60 FPS
         gameTimer.start();
+        requestFocusInWindow(); // Keyboard rewind in practice mode
     }
     
     public void stopGame() {
@@ -349,11 +423,11 @@ public class GamePanel extends JPanel implements ActionListener {
     
     @Override
     public void actionPerformed(ActionEvent e) {
-        if (!paused && !gameOver && !levelComplete) {
+        if (!paused && !sim.isOver()) {
             updateGame();
         }
         // Game over countdown to show overlay before dialog
-        if (gameOver && !gameOverHandled && gameOverTimer > 0) {
+        if (sim.isGameOver() && !gameOverHandled && gameOverTimer > 0) {
             gameOverTimer--;
             if (gameOverTimer == 0) {
                 showGameOver();
@@ -364,121 +438,82 @@ public class GamePanel extends JPanel implements ActionListener {
     }
     
     private void updateGame() {
-        // Spawn waves
-        if (!waveActive && wave <= levelData.getWaves()) {
-            if (spawnTimer <= 0) {
-                spawnWave();
-                spawnTimer = 60; // 1 second delay between waves
-            } else {
-                spawnTimer--;
-            }
-        }
-        
-        // Update enemies
-        List<Enemy> toRemove = new ArrayList<>();
-        for (Enemy enemy : enemies) {
-            // Always update to let spawnDelay countdown happen
-            if (!enemy.update(towers, enemyProjectiles)) {
-                if (enemy.hasReachedEnd()) {
-                    health -= 20;
-                    if (health < 0) health = 0;
-                }
-                toRemove.add(enemy);
-            }
-            
-            if (!enemy.isAlive()) {
-                money += enemy.getReward();
-                enemiesKilled++;
-                toRemove.add(enemy);
-            }
+        if (replay != null) {
+            if (!stepReplay()) return;
         }
-        enemies.removeAll(toRemove);
         
-        // Check if wave is complete
-        if (waveActive && enemies.isEmpty()) {
-            waveActive = false;
-            wave++;
-            spawnTimer = 0; // Next wave immediately
+        sim.tick();
+        if (rewind != null) {
+            rewind.afterTick(sim);
         }
-        
-        // Update towers
-        List<Tower> deadTowers = new ArrayList<>();
-        for (Tower tower : towers) {
-            tower.update(enemies, projectiles);
-            if (!tower.isAlive()) {
-                deadTowers.add(tower);
-            }
-        }
-        towers.removeAll(deadTowers);
-        
-        // Update projectiles
-        List<Projectile> toRemoveProj = new ArrayList<>();
-        for (Projectile proj : projectiles) {
-            if (!proj.update()) {
-                toRemoveProj.add(proj);
-            }
-        }
-        projectiles.removeAll(toRemoveProj);
-        
-        // Update enemy projectiles
-        List<EnemyProjectile> toRemoveEnemyProj = new ArrayList<>();
-        for (EnemyProjectile proj : enemyProjectiles) {
-            if (!proj.update()) {
-                toRemoveEnemyProj.add(proj);
-            }
+        if (sim.getTick() % AUTOSAVE_TICKS == 0) {
+            autosave();
         }
-        enemyProjectiles.removeAll(toRemoveEnemyProj);
         
         // Update decorative elements (visual only, no gameplay impact)
         for (DecorativeElement elem : decorativeElements) {
             elem.update(getWidth(), getHeight());
         }
         
-        // Check game over
-        if (health <= 0 && !gameOver) {
-            gameOver = true;
+        if (sim.isGameOver()) {
             gameOverTimer = 90; // ~1.5 seconds at 60 FPS to show overlay
-        }
-        
-        // Check level complete
-        if (wave > levelData.getWaves() && enemies.isEmpty()) {
-            levelComplete = true;
+        } else if (sim.isLevelComplete()) {
             showLevelComplete();
         }
     }
     
-    private void spawnWave() {
-        int numEnemies = 5 + wave * 2;
-        Enemy.EnemyType[] allTypes = Enemy.EnemyType.values();
-        
-        // Use a structure where we spawn types in order
-        // Wave 1: only LIGHT
-        // Wave 2: LIGHT then MEDIUM
-        // Wave 3: LIGHT, MEDIUM, HEAVY
-        // etc.
-        
-        int typeLimit = Math.min(wave, allTypes.length);
-        int enemiesPerType = numEnemies / typeLimit;
-        
-        for (int i = 0; i < numEnemies; i++) {
-            // Determine type based on index to ensure they come in groups/order
-            int typeIndex = Math.min(i / Math.max(1, enemiesPerType), typeLimit - 1);
-            Enemy.EnemyType type = allTypes[typeIndex];
-            
-            Enemy enemy = new Enemy(levelData.getPath(), type, wave, i * 30);
-            enemies.add(enemy);
+    /** Applies the replay commands due before the next tick; false once the recording has ended. */
+    private boolean stepReplay() {
+        List<Replay.Command> commands = replay.getCommands();
+        while (replayNext < commands.size() && commands.get(replayNext).tick <= sim.getTick()) {
+            Replay.Command command = commands.get(replayNext++);
+            Replay.apply(sim, command);
+            // Mirror the player's selection so the HUD shows what they were doing
+            if (command.op == Replay.SELECT_TOWER) {
+                selectedTowerType = Tower.TowerType.values()[command.towerType];
+                sellMode = false;
+            } else if (command.op == Replay.SELECT_SELL) {
+                sellMode = true;
+                selectedTowerType = null;
+            } else if (command.op == Replay.PLACE) {
+                selectedTowerType = null;
+            } else if (command.op == Replay.SELL) {
+                sellMode = false;
+            }
         }
-        
-        waveActive = true;
+        if (sim.getTick() >= replay.ticks) {
+            if (!replayFinished) {
+                replayFinished = true;
+                showReplayFinished();
+            }
+            return false;
+        }
+        return true;
     }
     
-    private int calculateScore() {
-        return (enemiesKilled * 20) + health + moneySpent;
+    private void showReplayFinished() {
+        SwingUtilities.invokeLater(() -> {
+            JOptionPane.showMessageDialog(
+                this,
+                String.format("Replay of %s, level %d\n\nScore: %d", replay.username, replay.level, replay.score),
+                "Replay Finished",
+                JOptionPane.INFORMATION_MESSAGE
+            );
+            stopGame();
+            game.showPanel("HIGHSCORES");
+        });
     }
     
     private void showGameOver() {
-        int score = calculateScore();
-        game.getAuthSystem().saveScore(levelNumber, score, enemiesKilled, health, moneySpent);
+        if (replay != null) {
+            showReplayFinished();
+            return;
+        }
+        int score = sim.calculateScore();
+        int enemiesKilled = sim.getEnemiesKilled();
+        int health = sim.getHealth();
+        int moneySpent = sim.getMoneySpent();
+        saveScore(Replay.GAME_OVER);
         
         SwingUtilities.invokeLater(() -> {
             String message = String.format(
@@ -507,8 +542,15 @@ public class GamePanel extends JPanel implements ActionListener {
     }
     
     private void showLevelComplete() {
-        int score = calculateScore();
-        game.getAuthSystem().saveScore(levelNumber, score, enemiesKilled, health, moneySpent);
+        if (replay != null) {
+            showReplayFinished();
+            return;
+        }
+        int score = sim.calculateScore();
+        int enemiesKilled = sim.getEnemiesKilled();
+        int health = sim.getHealth();
+        int moneySpent = sim.getMoneySpent();
+        saveScore(Replay.LEVEL_COMPLETE);
         
         SwingUtilities.invokeLater(() -> {
             String message = String.format(
@@ -521,7 +563,7 @@ public class GamePanel extends JPanel implements ActionListener {
             );
             
             // If not the last level, offer to go to next level
-            if (levelNumber < 3) {
+            if (nextLevel > 0) {
                 int result = JOptionPane.showOptionDialog(
                     this,
                     message,
@@ -536,7 +578,7 @@ public class GamePanel extends JPanel implements ActionListener {
                 stopGame();
                 if (result == 0) {
                     // Next Level button clicked
-                    game.startGame(levelNumber + 1);
+                    game.startGame(nextLevel);
                 } else {
                     // Main Menu button clicked
                     game.showPanel("MENU");
@@ -561,7 +603,159 @@ public class GamePanel extends JPanel implements ActionListener {
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        // Sprites are scaled while blitting from the atlas, keep the smooth look of the old pre-scaled copies
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        
+        // Layered renderer paints everything (including HUD) on worker threads
+        if (layeredRenderer != null) {
+            paintLayered(g2d);
+            return;
+        }
+        
+        // Draw the play field
+        if (softwareRenderer != null) {
+            drawWorldSoftware(g2d);
+        } else {
+            drawWorld(g2d);
+        }
+        
+        // Draw UI
+        drawUI(g2d);
+        
+        // Draw level navigation buttons
+        drawLevelNavButtons(g2d);
         
+        // Draw pause / game over overlays
+        drawOverlays(g2d);
+    }
+    
+    private void drawOverlays(Graphics2D g2d) {
+        // Draw pause overlay
+        if (paused) {
+            g2d.setColor(new Color(0, 0, 0, 128));
+            g2d.fillRect(0, 0, getWidth(), getHeight());
+            
+            g2d.setColor(Color.WHITE);
+            g2d.setFont(new Font("Arial", Font.BOLD, 72));
+            String text = "PAUSED";
+            FontMetrics fm = g2d.getFontMetrics();
+            int textWidth = fm.stringWidth(text);
+            g2d.drawString(text, (getWidth() - textWidth) / 2, getHeight() / 2);
+        }
+
+        // Practice mode hint: how far back the rewind goes
+        if (rewind != null && !sim.isOver()) {
+            int seconds = (sim.getTick() - rewind.getEarliestTick()) / GameSimulation.TICKS_PER_SECOND;
+            String text = "PRACTICE  -  LEFT: rewind 5 s (" + seconds + " s available)";
+            g2d.setFont(new Font("Arial", Font.BOLD, 14));
+            int textWidth = g2d.getFontMetrics().stringWidth(text);
+            g2d.setColor(new Color(0, 0, 0, 150));
+            g2d.fillRoundRect(10, getHeight() - 36, textWidth + 20, 26, 5, 5);
+            g2d.setColor(new Color(255, 193, 7));
+            g2d.drawString(text, 20, getHeight() - 18);
+        }
+        
+        // Draw game over overlay before dialog
+        if (sim.isGameOver()) {
+            g2d.setColor(new Color(0, 0, 0, 170));
+            g2d.fillRect(0, 0, getWidth(), getHeight());
+            
+            g2d.setColor(Color.WHITE);
+            g2d.setFont(new Font("Arial", Font.BOLD, 80));
+            String text = "GAME OVER";
+            FontMetrics fm = g2d.getFontMetrics();
+            int textWidth = fm.stringWidth(text);
+            g2d.drawString(text, (getWidth() - textWidth) / 2, getHeight() / 2);
+        }
+    }
+    
+    /**
+     * Layered variant of paintComponent: the static background is cached, the
+     * entities are split into horizontal bands and every layer is painted on
+     * the worker pool before being composited in order.
+     */
+    private void paintLayered(Graphics2D g2d) {
+        Dimension size = getSize();
+        if (!layeredRenderer.hasLayers() || !size.equals(layeredSize)) {
+            layeredSize = size;
+            layeredRenderer.setLayers(createLayers(size.width, size.height));
+        }
+        if (sim.getRoutes() != layeredRoutes) {
+            layeredRoutes = sim.getRoutes();
+            layeredRenderer.invalidateCached();
+        }
+        layeredRenderer.render(g2d);
+    }
+    
+    private List<LayeredRenderer.Layer> createLayers(int width, int height) {
+        Rectangle full = new Rectangle(0, 0, width, height);
+        List<LayeredRenderer.Layer> layers = new ArrayList<>();
+        
+        layers.add(new LayeredRenderer.Layer("background", full, g -> {
+            drawBackground(g);
+            drawObstacles(g);
+            drawDecorations(g);
+        }, true));
+        layers.add(new LayeredRenderer.Layer("decorative", full, this::drawDecorativeElements, false));
+        
+        // Entities in horizontal bands, one per worker
+        int bandCount = LayeredRenderer.getWorkerCount();
+        int bandHeight = (height + bandCount - 1) / bandCount;
+        for (int top = 0; top < height; top += bandHeight) {
+            int bandTop = top;
+            int bandBottom = Math.min(height, top + bandHeight);
+            layers.add(new LayeredRenderer.Layer("entities@" + top, new Rectangle(0, bandTop, width, bandBottom - bandTop),
+                g -> drawEntityBand(g, bandTop, bandBottom), false));
+        }
+        
+        layers.add(new LayeredRenderer.Layer("health-bars", full, g -> {
+            for (Tower tower : sim.getTowers()) {
+                drawTowerHealthBar(g, tower);
+            }
+            for (Enemy enemy : sim.getEnemies()) {
+                if (enemy.shouldSpawn()) drawEnemyHealthBar(g, enemy);
+            }
+        }, false));
+        layers.add(new LayeredRenderer.Layer("effects", full, g -> {
+            if (selectedTowerType != null && hoveredGridX >= 0 && hoveredGridY >= 0) {
+                drawTowerPlacementPreview(g, hoveredGridX, hoveredGridY);
+            }
+            if (hoveredTower != null) {
+                g.setColor(new Color(255, 255, 255, 50));
+                g.setStroke(new BasicStroke(2));
+                int range = hoveredTower.getRange();
+                g.drawOval(hoveredTower.getX() - range, hoveredTower.getY() - range, range * 2, range * 2);
+            }
+        }, false));
+        layers.add(new LayeredRenderer.Layer("hud", full, g -> {
+            drawUI(g);
+            drawLevelNavButtons(g);
+            drawOverlays(g);
+        }, false));
+        return layers;
+    }
+    
+    // Draws towers, enemies and projectiles that can touch the band [top, bottom)
+    private void drawEntityBand(Graphics2D g2d, int top, int bottom) {
+        int margin = TowerDefenseGame.TILE_SIZE; // Largest sprite extent incl. muzzle flash
+        for (Tower tower : sim.getTowers()) {
+            if (tower.getY() + margin >= top && tower.getY() - margin < bottom) drawTowerSprite(g2d, tower);
+        }
+        AssetManager assets = game.getAssetManager();
+        for (Enemy enemy : sim.getEnemies()) {
+            if (enemy.shouldSpawn() && enemy.getY() + margin >= top && enemy.getY() - margin < bottom) {
+                assets.drawAsset(g2d, enemy.getType().assetKey, (int)enemy.getX() - 20, (int)enemy.getY() - 20, 40, 40);
+            }
+        }
+        for (Projectile proj : sim.getProjectiles()) {
+            if (proj.getY() + margin >= top && proj.getY() - margin < bottom) drawProjectile(g2d, proj);
+        }
+        for (EnemyProjectile proj : sim.getEnemyProjectiles()) {
+            if (proj.getY() + margin >= top && proj.getY() - margin < bottom) drawEnemyProjectile(g2d, proj);
+        }
+    }
+    
+    private void drawWorld(Graphics2D g2d) {
         // Draw background
         drawBackground(g2d);
         
@@ -575,7 +769,7 @@ public class GamePanel extends JPanel implements ActionListener {
         drawDecorativeElements(g2d);
         
         // Draw towers
-        for (Tower tower : towers) {
+        for (Tower tower : sim.getTowers()) {
             drawTower(g2d, tower);
         }
         
@@ -598,63 +792,136 @@ public class GamePanel extends JPanel implements ActionListener {
         }
         
         // Draw enemies
-        for (Enemy enemy : enemies) {
+        for (Enemy enemy : sim.getEnemies()) {
             if (enemy.shouldSpawn()) {
                 drawEnemy(g2d, enemy);
             }
         }
         
         // Draw projectiles
-        for (Projectile proj : projectiles) {
+        for (Projectile proj : sim.getProjectiles()) {
             drawProjectile(g2d, proj);
         }
         
         // Draw enemy projectiles
-        for (EnemyProjectile proj : enemyProjectiles) {
+        for (EnemyProjectile proj : sim.getEnemyProjectiles()) {
             drawEnemyProjectile(g2d, proj);
         }
+    }
+    
+    /**
+     * Same play field as drawWorld, composed by the software renderer into one
+     * int[] frame and presented with a single drawImage.
+     */
+    private void drawWorldSoftware(Graphics2D g2d) {
+        SoftwareRenderer r = softwareRenderer;
+        int tileSize = TowerDefenseGame.TILE_SIZE;
+        r.begin(getWidth(), getHeight());
+        r.clear(levelData.getBackgroundColor().getRGB());
         
-        // Draw UI
-        drawUI(g2d);
+        // Background tiles (opaque fast path) and path
+        String bgAssetKey = levelData.getBackgroundAssetKey();
+        if (bgAssetKey != null && !bgAssetKey.isEmpty()) {
+            for (int y = 100; y < getHeight(); y += tileSize) {
+                for (int x = 0; x < getWidth(); x += tileSize) {
+                    r.drawTile(bgAssetKey, x, y, tileSize, tileSize);
+                }
+            }
+        }
+        int pathColor = levelData.getPathColor().getRGB();
+        for (List<Point> route : sim.getRoutes()) {
+            for (int i = 0; i < route.size() - 1; i++) {
+                Point p1 = route.get(i);
+                Point p2 = route.get(i + 1);
+                r.drawThickLine(p1.x, p1.y, p2.x, p2.y, 40, pathColor);
+            }
+        }
         
-        // Draw level navigation buttons
-        drawLevelNavButtons(g2d);
+        // Obstacles, decorations and decorative elements (40% opacity)
+        for (LevelData.Obstacle obs : levelData.getObstacles()) {
+            r.drawSprite(obs.assetKey, obs.gridX * tileSize, obs.gridY * tileSize + 100, tileSize, tileSize);
+        }
+        for (LevelData.Decoration dec : levelData.getDecorations()) {
+            r.drawSprite(dec.assetKey, dec.x - 16, dec.y - 16, 32, 32);
+        }
+        for (DecorativeElement elem : decorativeElements) {
+            r.drawSprite(elem.assetKey, (int)(elem.x - elem.size/2), (int)(elem.y - elem.size/2), elem.size, elem.size, 102);
+        }
         
-        // Draw pause overlay
-        if (paused) {
-            g2d.setColor(new Color(0, 0, 0, 128));
-            g2d.fillRect(0, 0, getWidth(), getHeight());
-            
-            g2d.setColor(Color.WHITE);
-            g2d.setFont(new Font("Arial", Font.BOLD, 72));
-            String text = "PAUSED";
-            FontMetrics fm = g2d.getFontMetrics();
-            int textWidth = fm.stringWidth(text);
-            g2d.drawString(text, (getWidth() - textWidth) / 2, getHeight() / 2);
+        // Towers with muzzle flash and health bars
+        int towerSize = tileSize - 12;
+        for (Tower tower : sim.getTowers()) {
+            int drawX = tower.getGridX() * tileSize + 6;
+            int drawY = tower.getGridY() * tileSize + 6 + 100;
+            double centerX = drawX + towerSize / 2;
+            double centerY = drawY + towerSize / 2;
+            double angle = tower.getAngle() + Math.PI / 2;
+            r.drawSpriteRotated(tower.getType().assetKey, centerX, centerY, towerSize, towerSize, angle);
+            if (tower.isFlashing()) {
+                // Flash sits at the barrel end, half a tower in front of the centre
+                double flashX = centerX + Math.sin(angle) * towerSize / 2;
+                double flashY = centerY - Math.cos(angle) * towerSize / 2;
+                r.drawSpriteRotated("bullet", flashX, flashY, 24, 24, angle);
+            }
+            int barWidth = towerSize - 8;
+            double hpRatio = Math.max(0, (double)tower.getHealth() / tower.getMaxHealth());
+            r.fillRect(drawX + 4, drawY - 8, barWidth, 4, 0xFFFF0000);
+            r.fillRect(drawX + 4, drawY - 8, (int)(barWidth * hpRatio), 4, 0xFF32C832);
         }
-
-        // Draw game over overlay before dialog
-        if (gameOver) {
-            g2d.setColor(new Color(0, 0, 0, 170));
-            g2d.fillRect(0, 0, getWidth(), getHeight());
-            
-            g2d.setColor(Color.WHITE);
-            g2d.setFont(new Font("Arial", Font.BOLD, 80));
-            String text = "GAME OVER";
-            FontMetrics fm = g2d.getFontMetrics();
-            int textWidth = fm.stringWidth(text);
-            g2d.drawString(text, (getWidth() - textWidth) / 2, getHeight() / 2);
+        
+        // Tower placement preview
+        if (selectedTowerType != null && hoveredGridX >= 0 && hoveredGridY >= 0) {
+            int x = hoveredGridX * tileSize;
+            int y = hoveredGridY * tileSize + 100;
+            if (canPlaceAt(hoveredGridX, hoveredGridY)) {
+                r.fillRect(x, y, tileSize, tileSize, 0x6400FF00);
+                r.drawRect(x - 1, y - 1, tileSize + 3, tileSize + 3, 3, 0xC800C800);
+            } else {
+                r.fillRect(x, y, tileSize, tileSize, 0x64FF0000);
+                r.drawRect(x - 1, y - 1, tileSize + 3, tileSize + 3, 3, 0xC8C80000);
+            }
+        }
+        
+        // Enemies with health bars
+        for (Enemy enemy : sim.getEnemies()) {
+            if (!enemy.shouldSpawn()) continue;
+            int ex = (int)enemy.getX();
+            int ey = (int)enemy.getY();
+            r.drawSprite(enemy.getType().assetKey, ex - 20, ey - 20, 40, 40);
+            double healthRatio = Math.max(0, (double)enemy.getHealth() / enemy.getMaxHealth());
+            r.fillRect(ex - 15, ey - 30, 30, 4, 0xFFFF0000);
+            r.fillRect(ex - 15, ey - 30, (int)(30 * healthRatio), 4, 0xFF00FF00);
+        }
+        
+        // Projectiles
+        for (Projectile proj : sim.getProjectiles()) {
+            r.drawSpriteRotated("bullet", proj.getX(), proj.getY(), 24, 24, proj.getAngle() + Math.PI / 2);
+        }
+        for (EnemyProjectile proj : sim.getEnemyProjectiles()) {
+            r.fillCircle((int)proj.getX(), (int)proj.getY(), 6, 0xB4C83232);
+            r.drawSpriteRotated("bullet", proj.getX(), proj.getY(), 20, 20, proj.getAngle() + Math.PI / 2);
+        }
+        
+        r.present(g2d);
+        
+        // Range circle is a thin anti-aliased outline, cheaper to leave to Java2D
+        if (hoveredTower != null) {
+            g2d.setColor(new Color(255, 255, 255, 50));
+            g2d.setStroke(new BasicStroke(2));
+            int range = hoveredTower.getRange();
+            g2d.drawOval(hoveredTower.getX() - range, hoveredTower.getY() - range, range * 2, range * 2);
         }
     }
     
     private void drawTower(Graphics2D g2d, Tower tower) {
+        drawTowerSprite(g2d, tower);
+        drawTowerHealthBar(g2d, tower);
+    }
+    
+    private void drawTowerSprite(Graphics2D g2d, Tower tower) {
         // Smaller tower size for better precision
         int towerSize = TowerDefenseGame.TILE_SIZE - 12;
-        Image img = game.getAssetManager().getScaledAsset(
-            tower.getType().assetKey,
-            towerSize,
-            towerSize
-        );
+        AssetManager assets = game.getAssetManager();
         
         int drawX = tower.getGridX() * TowerDefenseGame.TILE_SIZE + 6;
         int drawY = tower.getGridY() * TowerDefenseGame.TILE_SIZE + 6 + 100; // Account for UI offset
@@ -666,18 +933,23 @@ public class GamePanel extends JPanel implements ActionListener {
         
         // Rotate and draw
         g2d.rotate(tower.getAngle() + Math.PI / 2, centerX, centerY);
-        g2d.drawImage(img, drawX, drawY, null);
+        assets.drawAsset(g2d, tower.getType().assetKey, drawX, drawY, towerSize, towerSize);
         
         // Draw muzzle flash if flashing
         if (tower.isFlashing()) {
-            Image flashImg = game.getAssetManager().getScaledAsset("bullet", 24, 24);
             // Draw flash slightly offset in front of the tower (at the barrel end)
-            g2d.drawImage(flashImg, drawX + (towerSize - 24) / 2, drawY - 12, null);
+            assets.drawAsset(g2d, "bullet", drawX + (towerSize - 24) / 2, drawY - 12, 24, 24);
         }
         
         // Restore transform
         g2d.setTransform(old);
-
+    }
+    
+    private void drawTowerHealthBar(Graphics2D g2d, Tower tower) {
+        int towerSize = TowerDefenseGame.TILE_SIZE - 12;
+        int drawX = tower.getGridX() * TowerDefenseGame.TILE_SIZE + 6;
+        int drawY = tower.getGridY() * TowerDefenseGame.TILE_SIZE + 6 + 100; // Account for UI offset
+        
         // Draw tower health bar
         int barWidth = towerSize - 8;
         int barHeight = 4;
@@ -692,9 +964,11 @@ public class GamePanel extends JPanel implements ActionListener {
     
     private void drawEnemy(Graphics2D g2d, Enemy enemy) {
         // Draw enemy sprite
-        Image img = game.getAssetManager().getScaledAsset(enemy.getType().assetKey, 40, 40);
-        g2d.drawImage(img, (int)enemy.getX() - 20, (int)enemy.getY() - 20, null);
-        
+        game.getAssetManager().drawAsset(g2d, enemy.getType().assetKey, (int)enemy.getX() - 20, (int)enemy.getY() - 20, 40, 40);
+        drawEnemyHealthBar(g2d, enemy);
+    }
+    
+    private void drawEnemyHealthBar(Graphics2D g2d, Enemy enemy) {
         // Draw health bar
         int barWidth = 30;
         int barHeight = 4;
@@ -716,8 +990,7 @@ public class GamePanel extends JPanel implements ActionListener {
         g2d.translate(proj.getX(), proj.getY());
         g2d.rotate(proj.getAngle() + Math.PI / 2);
         
-        Image fireImg = game.getAssetManager().getScaledAsset("bullet", 24, 24);
-        g2d.drawImage(fireImg, -12, -12, null);
+        game.getAssetManager().drawAsset(g2d, "bullet", -12, -12, 24, 24);
         
         // Restore transform
         g2d.setTransform(old);
@@ -731,11 +1004,10 @@ public class GamePanel extends JPanel implements ActionListener {
         g2d.translate(proj.getX(), proj.getY());
         g2d.rotate(proj.getAngle() + Math.PI / 2);
         
-        Image fireImg = game.getAssetManager().getScaledAsset("bullet", 20, 20);
         // Tint bullet red for enemy shots
         g2d.setColor(new Color(200, 50, 50, 180));
         g2d.fillOval(-6, -6, 12, 12);
-        g2d.drawImage(fireImg, -10, -10, null);
+        game.getAssetManager().drawAsset(g2d, "bullet", -10, -10, 20, 20);
         
         // Restore transform
         g2d.setTransform(old);
@@ -747,16 +1019,14 @@ public class GamePanel extends JPanel implements ActionListener {
         for (LevelData.Obstacle obs : levelData.getObstacles()) {
             int x = obs.gridX * tileSize;
             int y = obs.gridY * tileSize + 100; // Account for UI offset
-            Image img = game.getAssetManager().getScaledAsset(obs.assetKey, tileSize, tileSize);
-            g2d.drawImage(img, x, y, null);
+            game.getAssetManager().drawAsset(g2d, obs.assetKey, x, y, tileSize, tileSize);
         }
     }
     
     private void drawDecorations(Graphics2D g2d) {
         if (levelData == null) return;
         for (LevelData.Decoration dec : levelData.getDecorations()) {
-            Image img = game.getAssetManager().getScaledAsset(dec.assetKey, 32, 32);
-            g2d.drawImage(img, dec.x - 16, dec.y - 16, null);
+            game.getAssetManager().drawAsset(g2d, dec.assetKey, dec.x - 16, dec.y - 16, 32, 32);
         }
     }
     
@@ -764,8 +1034,7 @@ public class GamePanel extends JPanel implements ActionListener {
         // Draw decorative animated elements with transparency for visual effect
         g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.4f)); // 40% opacity
         for (DecorativeElement elem : decorativeElements) {
-            Image img = game.getAssetManager().getScaledAsset(elem.assetKey, elem.size, elem.size);
-            g2d.drawImage(img, (int)(elem.x - elem.size/2), (int)(elem.y - elem.size/2), null);
+            game.getAssetManager().drawAsset(g2d, elem.assetKey, (int)(elem.x - elem.size/2), (int)(elem.y - elem.size/2), elem.size, elem.size);
         }
         g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f)); // Reset to full opacity
     }
@@ -775,11 +1044,11 @@ public class GamePanel extends JPanel implements ActionListener {
         String bgAssetKey = levelData.getBackgroundAssetKey();
         if (bgAssetKey != null && !bgAssetKey.isEmpty()) {
             // Draw tiled background pattern
-            BufferedImage bgTile = game.getAssetManager().getAsset(bgAssetKey);
+            AssetManager assets = game.getAssetManager();
             int tileSize = TowerDefenseGame.TILE_SIZE;
             for (int y = 100; y < getHeight(); y += tileSize) {
                 for (int x = 0; x < getWidth(); x += tileSize) {
-                    g2d.drawImage(bgTile, x, y, tileSize, tileSize, null);
+                    assets.drawAsset(g2d, bgAssetKey, x, y, tileSize, tileSize);
                 }
             }
         } else {
@@ -791,38 +1060,27 @@ public class GamePanel extends JPanel implements ActionListener {
         // Draw path with level-specific color
         g2d.setColor(levelData.getPathColor());
         g2d.setStroke(new BasicStroke(40, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        List<Point> path = levelData.getPath();
-        for (int i = 0; i < path.size() - 1; i++) {
-            Point p1 = path.get(i);
-            Point p2 = path.get(i + 1);
-            g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
+        for (List<Point> route : sim.getRoutes()) {
+            for (int i = 0; i < route.size() - 1; i++) {
+                Point p1 = route.get(i);
+                Point p2 = route.get(i + 1);
+                g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
+            }
         }
     }
     
+    // Check if the selected tower can be placed on this cell
+    private boolean canPlaceAt(int gridX, int gridY) {
+        return sim.canPlaceTower(selectedTowerType, gridX, gridY);
+    }
+    
     private void drawTowerPlacementPreview(Graphics2D g2d, int gridX, int gridY) {
         int tileSize = TowerDefenseGame.TILE_SIZE;
         int x = gridX * tileSize;
         int y = gridY * tileSize + 100; // Account for UI offset
         
-        // Check if placement is valid
-        boolean canPlace = true;
-        boolean isOnPath = levelData.isPath(gridX, gridY);
-        boolean hasObstacle = levelData.isObstacle(gridX, gridY);
-        boolean hasTower = false;
-        boolean canAfford = money >= selectedTowerType.cost;
-        
-        // Check if spot already has a tower
-        for (Tower tower : towers) {
-            if (tower.getGridX() == gridX && tower.getGridY() == gridY) {
-                hasTower = true;
-                break;
-            }
-        }
-        
-        canPlace = !isOnPath && !hasObstacle && !hasTower && canAfford;
-        
         // Draw preview square
-        if (canPlace) {
+        if (canPlaceAt(gridX, gridY)) {
             // Green for valid placement
             g2d.setColor(new Color(0, 255, 0, 100));
             g2d.fillRect(x, y, tileSize, tileSize);
@@ -841,7 +1099,7 @@ public class GamePanel extends JPanel implements ActionListener {
     
     private void drawLevelNavButtons(Graphics2D g2d) {
         // Previous level button (RIGHT arrow - reversed 180 degrees)
-        if (levelNumber > 1) {
+        if (previousLevel > 0) {
             g2d.setColor(new Color(33, 150, 243, 200));
             g2d.fillRoundRect(prevLevelButton.x, prevLevelButton.y, 
                              prevLevelButton.width, prevLevelButton.height, 10, 10);
@@ -860,7 +1118,7 @@ public class GamePanel extends JPanel implements ActionListener {
         }
         
         // Next level button (LEFT arrow - reversed 180 degrees)
-        if (levelNumber < 3) {
+        if (nextLevel > 0) {
             g2d.setColor(new Color(33, 150, 243, 200));
             g2d.fillRoundRect(nextLevelButton.x, nextLevelButton.y, 
                              nextLevelButton.width, nextLevelButton.height, 10, 10);
@@ -897,7 +1155,7 @@ public class GamePanel extends JPanel implements ActionListener {
         g2d.setColor(new Color(255, 215, 64)); // Yellowish
         g2d.drawString("Funds: ", startX, yPos);
         g2d.setColor(Color.WHITE);
-        g2d.drawString("$" + money, startX + 60, yPos);
+        g2d.drawString("$" + sim.getMoney(), startX + 60, yPos);
         
         // Separator
         g2d.setColor(new Color(100, 100, 110));
@@ -907,7 +1165,7 @@ public class GamePanel extends JPanel implements ActionListener {
         g2d.setColor(new Color(76, 175, 80)); // Green
         g2d.drawString("Health: ", startX + 150, yPos);
         g2d.setColor(Color.WHITE);
-        g2d.drawString(health + "%", startX + 215, yPos);
+        g2d.drawString(sim.getHealth() + "%", startX + 215, yPos);
         
         // Separator
         g2d.setColor(new Color(100, 100, 110));
@@ -915,7 +1173,7 @@ public class GamePanel extends JPanel implements ActionListener {
         
         // Wave
         g2d.setColor(Color.WHITE);
-        g2d.drawString("Wave: " + wave + "/" + levelData.getWaves(), startX + 290, yPos);
+        g2d.drawString("Wave: " + sim.getWave() + "/" + levelData.getWaves(), startX + 290, yPos);
         
         // Separator
         g2d.setColor(new Color(100, 100, 110));
@@ -953,8 +1211,7 @@ public class GamePanel extends JPanel implements ActionListener {
             g2d.drawRect(btn.x, btn.y, btn.width, btn.height);
             
             // Tower icon - Scaled down to fit properly inside 55px box
-            Image img = game.getAssetManager().getScaledAsset(types[i].assetKey, 40, 40);
-            g2d.drawImage(img, btn.x + (btnSize - 40) / 2, btn.y + (btnSize - 40) / 2, null);
+            game.getAssetManager().drawAsset(g2d, types[i].assetKey, btn.x + (btnSize - 40) / 2, btn.y + (btnSize - 40) / 2, 40, 40);
             
             // Cost text below button
             g2d.setFont(new Font("Arial", Font.BOLD, 11));
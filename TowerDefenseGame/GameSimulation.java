@@ -0,0 +1,422 @@
+import java.awt.Point;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Game Simulation
+ * The rules of one level, advanced one fixed tick (1/60 s) at a time.
+ *
+ * Holds everything that decides how a game ends (money, health, waves,
+ * towers, enemies, projectiles) and nothing about drawing or input, so the
+ * same game can be played in GamePanel, replayed from a recording or run
+ * headless. The same level, seed and commands on the same ticks always give
+ * the same game.
+ *
+ * In mazing mode towers may stand anywhere off the exits, spawns and
+ * enemies, including on the road, and the enemies walk around them. Each
+ * game then has a flow field of its own that every placement, sale and
+ * destroyed tower updates incrementally; a placement that would cut a spawn
+ * or an enemy off from every exit is refused.
+ */
+public class GameSimulation {
+    public static final int TICKS_PER_SECOND = 60;
+
+    private final int levelNumber;
+    private final LevelData levelData;
+    private final long seed;
+    private final boolean mazing;
+    private final FlowField field; // The level's, or in mazing mode this game's own
+    private List<List<Point>> routes; // Mazing mode: traced again after the field changes
+    private int[] required = new int[16]; // Cells that must keep a way out, see requiredCells
+    private int tick; // Ticks run so far
+    private int nextId; // Next tower or enemy id
+
+    // Game state
+    private int money;
+    private int health;
+    private int wave;
+    private int enemiesKilled;
+    private int moneySpent;
+    private boolean gameOver;
+    private boolean levelComplete;
+
+    // Game objects
+    private final List<Tower> towers = new ArrayList<>();
+    private final List<Enemy> enemies = new ArrayList<>();
+    private final List<Projectile> projectiles = new ArrayList<>();
+    private final List<EnemyProjectile> enemyProjectiles = new ArrayList<>();
+
+    // Wave management
+    private int spawnTimer;
+    private boolean waveActive;
+
+    public GameSimulation(int levelNumber, long seed) {
+        this(levelNumber, seed, false);
+    }
+
+    public GameSimulation(int levelNumber, long seed, boolean mazing) {
+        this.levelNumber = levelNumber;
+        this.levelData = LevelData.getLevel(levelNumber);
+        this.seed = seed;
+        this.mazing = mazing;
+        this.field = mazing ? levelData.createMazingField() : levelData.getFlowField();
+        money = 500;
+        health = 100;
+        wave = 1;
+    }
+
+    /** Runs one tick; does nothing once the game is over or the level is complete. */
+    public void tick() {
+        if (gameOver || levelComplete) return;
+        tick++;
+
+        // Spawn waves
+        if (!waveActive && wave <= levelData.getWaves()) {
+            if (spawnTimer <= 0) {
+                spawnWave();
+                spawnTimer = 60; // 1 second delay between waves
+            } else {
+                spawnTimer--;
+            }
+        }
+
+        // Update enemies
+        List<Enemy> toRemove = new ArrayList<>();
+        for (Enemy enemy : enemies) {
+            // Always update to let spawnDelay countdown happen
+            if (!enemy.update(towers, enemyProjectiles)) {
+                if (enemy.hasReachedEnd()) {
+                    health -= 20;
+                    if (health < 0) health = 0;
+                }
+                toRemove.add(enemy);
+            }
+
+            if (!enemy.isAlive()) {
+                money += enemy.getReward();
+                enemiesKilled++;
+                toRemove.add(enemy);
+            }
+        }
+        enemies.removeAll(toRemove);
+
+        // Check if wave is complete
+        if (waveActive && enemies.isEmpty()) {
+            waveActive = false;
+            wave++;
+            spawnTimer = 0; // Next wave immediately
+        }
+
+        // Update towers
+        List<Tower> deadTowers = new ArrayList<>();
+        for (Tower tower : towers) {
+            tower.update(enemies, projectiles);
+            if (!tower.isAlive()) {
+                deadTowers.add(tower);
+            }
+        }
+        towers.removeAll(deadTowers);
+        if (mazing) {
+            for (Tower tower : deadTowers) {
+                openCell(tower.getGridX(), tower.getGridY());
+            }
+        }
+
+        // Update projectiles
+        List<Projectile> toRemoveProj = new ArrayList<>();
+        for (Projectile proj : projectiles) {
+            if (!proj.update()) {
+                toRemoveProj.add(proj);
+            }
+        }
+        projectiles.removeAll(toRemoveProj);
+
+        // Update enemy projectiles
+        List<EnemyProjectile> toRemoveEnemyProj = new ArrayList<>();
+        for (EnemyProjectile proj : enemyProjectiles) {
+            if (!proj.update()) {
+                toRemoveEnemyProj.add(proj);
+            }
+        }
+        enemyProjectiles.removeAll(toRemoveEnemyProj);
+
+        // Check game over
+        if (health <= 0) {
+            gameOver = true;
+        }
+
+        // Check level complete
+        if (!gameOver && wave > levelData.getWaves() && enemies.isEmpty()) {
+            levelComplete = true;
+        }
+    }
+
+    private void spawnWave() {
+        int numEnemies = 5 + wave * 2;
+        Enemy.EnemyType[] allTypes = Enemy.EnemyType.values();
+
+        // Use a structure where we spawn types in order
+        // Wave 1: only LIGHT
+        // Wave 2: LIGHT then MEDIUM
+        // Wave 3: LIGHT, MEDIUM, HEAVY
+        // etc.
+
+        int typeLimit = Math.min(wave, allTypes.length);
+        int enemiesPerType = numEnemies / typeLimit;
+
+        for (int i = 0; i < numEnemies; i++) {
+            // Determine type based on index to ensure they come in groups/order
+            int typeIndex = Math.min(i / Math.max(1, enemiesPerType), typeLimit - 1);
+            Enemy.EnemyType type = allTypes[typeIndex];
+
+            // Several spawns take turns
+            Point spawn = levelData.getSpawns().get(i % levelData.getSpawns().size());
+            Enemy enemy = new Enemy(nextId++, field, spawn, type, wave, i * 30);
+            enemies.add(enemy);
+        }
+
+        waveActive = true;
+    }
+
+    // ----- Player actions -----
+
+    /** Whether a tower of this type could be built on the cell right now. */
+    public boolean canPlaceTower(Tower.TowerType type, int gridX, int gridY) {
+        if (!isFree(type, gridX, gridY)) return false;
+        if (!mazing) return true;
+        int count = requiredCells(); // May grow the array: call before reading the field
+        return field.canBlock(gridX, gridY, required, count);
+    }
+
+    /** Builds a tower if the cell is free and it can be paid for. */
+    public boolean placeTower(Tower.TowerType type, int gridX, int gridY) {
+        if (!isFree(type, gridX, gridY)) return false;
+        if (mazing) {
+            int count = requiredCells();
+            if (!field.block(gridX, gridY, required, count)) return false;
+            routes = null;
+        }
+        towers.add(new Tower(nextId++, gridX, gridY, type));
+        money -= type.cost;
+        moneySpent += type.cost;
+        return true;
+    }
+
+    /** Sells the tower on the cell for half its cost. */
+    public boolean sellTower(int gridX, int gridY) {
+        Tower tower = getTowerAt(gridX, gridY);
+        if (tower == null) return false;
+        money += tower.getCost() / 2;
+        towers.remove(tower);
+        if (mazing) openCell(gridX, gridY);
+        return true;
+    }
+
+    // No tower or obstacle, enough money, and off the road unless mazing
+    private boolean isFree(Tower.TowerType type, int gridX, int gridY) {
+        return (mazing ? field.inBounds(gridX, gridY) : !levelData.isPath(gridX, gridY))
+            && !levelData.isObstacle(gridX, gridY)
+            && getTowerAt(gridX, gridY) == null
+            && money >= type.cost;
+    }
+
+    /**
+     * Fills required with the cells a tower may not cut off from the exits
+     * (nor stand on): the spawns, and the cell each enemy is on and the one
+     * it is walking to. Returns how many there are.
+     */
+    private int requiredCells() {
+        int width = field.getWidth();
+        int count = levelData.getSpawns().size() + enemies.size() * 2;
+        if (required.length < count) required = new int[count * 2];
+        int n = 0;
+        for (Point spawn : levelData.getSpawns()) {
+            required[n++] = spawn.y * width + spawn.x;
+        }
+        for (Enemy enemy : enemies) {
+            int x = (int) Math.floor(enemy.getX() / TowerDefenseGame.TILE_SIZE);
+            int y = (int) Math.floor((enemy.getY() - 100) / TowerDefenseGame.TILE_SIZE); // UI offset
+            required[n++] = field.inBounds(x, y) ? y * width + x : -1;
+            required[n++] = enemy.getTargetX() >= 0 ? enemy.getTargetY() * width + enemy.getTargetX() : -1;
+        }
+        return n;
+    }
+
+    // A tower left the cell (sold or destroyed): enemies may walk through it again
+    private void openCell(int gridX, int gridY) {
+        field.unblock(gridX, gridY);
+        routes = null;
+    }
+
+    /** The routes from the spawns (pixels), for drawing the road; the same list until they change. */
+    public List<List<Point>> getRoutes() {
+        if (!mazing) return levelData.getRoutes();
+        if (routes == null) {
+            routes = new ArrayList<>();
+            for (Point spawn : levelData.getSpawns()) {
+                routes.add(LevelData.traceRoute(field, spawn));
+            }
+        }
+        return routes;
+    }
+
+    public Tower getTowerAt(int gridX, int gridY) {
+        for (Tower tower : towers) {
+            if (tower.getGridX() == gridX && tower.getGridY() == gridY) {
+                return tower;
+            }
+        }
+        return null;
+    }
+
+    public int calculateScore() {
+        return (enemiesKilled * 20) + health + moneySpent;
+    }
+
+    // ----- Snapshots -----
+
+    /**
+     * Writes the complete state, from which readState builds an identical
+     * simulation. A projectile can outlive its target's place in the lists
+     * (an enemy that reached the exit, a sold tower) and still fly to it, so
+     * such targets are written in sections of their own.
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(levelNumber);
+        out.writeLong(seed);
+        out.writeBoolean(mazing);
+        out.writeInt(tick);
+        out.writeInt(nextId);
+        out.writeInt(money);
+        out.writeInt(health);
+        out.writeInt(wave);
+        out.writeInt(enemiesKilled);
+        out.writeInt(moneySpent);
+        out.writeBoolean(gameOver);
+        out.writeBoolean(levelComplete);
+        out.writeInt(spawnTimer);
+        out.writeBoolean(waveActive);
+
+        BitSet written = new BitSet(nextId);
+        out.writeShort(enemies.size());
+        for (Enemy enemy : enemies) {
+            enemy.writeState(out);
+            written.set(enemy.getId());
+        }
+        List<Enemy> detachedEnemies = new ArrayList<>();
+        for (Projectile proj : projectiles) {
+            Enemy target = proj.getTarget();
+            if (!written.get(target.getId())) {
+                detachedEnemies.add(target);
+                written.set(target.getId());
+            }
+        }
+        out.writeShort(detachedEnemies.size());
+        for (Enemy enemy : detachedEnemies) {
+            enemy.writeState(out);
+        }
+
+        out.writeShort(towers.size());
+        for (Tower tower : towers) {
+            tower.writeState(out);
+            written.set(tower.getId());
+        }
+        List<Tower> detachedTowers = new ArrayList<>();
+        for (EnemyProjectile proj : enemyProjectiles) {
+            Tower target = proj.getTarget();
+            if (!written.get(target.getId())) {
+                detachedTowers.add(target);
+                written.set(target.getId());
+            }
+        }
+        out.writeShort(detachedTowers.size());
+        for (Tower tower : detachedTowers) {
+            tower.writeState(out);
+        }
+
+        out.writeShort(projectiles.size());
+        for (Projectile proj : projectiles) {
+            proj.writeState(out);
+        }
+        out.writeShort(enemyProjectiles.size());
+        for (EnemyProjectile proj : enemyProjectiles) {
+            proj.writeState(out);
+        }
+    }
+
+    static GameSimulation readState(DataInputStream in) throws IOException {
+        int levelNumber = in.readInt();
+        GameSimulation sim = new GameSimulation(levelNumber, in.readLong(), in.readBoolean());
+        sim.tick = in.readInt();
+        sim.nextId = in.readInt();
+        sim.money = in.readInt();
+        sim.health = in.readInt();
+        sim.wave = in.readInt();
+        sim.enemiesKilled = in.readInt();
+        sim.moneySpent = in.readInt();
+        sim.gameOver = in.readBoolean();
+        sim.levelComplete = in.readBoolean();
+        sim.spawnTimer = in.readInt();
+        sim.waveActive = in.readBoolean();
+
+        FlowField field = sim.field;
+        Map<Integer, Enemy> enemiesById = new HashMap<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            Enemy enemy = Enemy.readState(in, field);
+            sim.enemies.add(enemy);
+            enemiesById.put(enemy.getId(), enemy);
+        }
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            Enemy enemy = Enemy.readState(in, field);
+            enemiesById.put(enemy.getId(), enemy);
+        }
+
+        Map<Integer, Tower> towersById = new HashMap<>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            Tower tower = Tower.readState(in, enemiesById);
+            sim.towers.add(tower);
+            towersById.put(tower.getId(), tower);
+            if (sim.mazing) field.setWalkable(tower.getGridX(), tower.getGridY(), false);
+        }
+        if (sim.mazing) field.compute(); // Distances around the towers, as block left them
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            Tower tower = Tower.readState(in, enemiesById);
+            towersById.put(tower.getId(), tower);
+        }
+
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            sim.projectiles.add(Projectile.readState(in, enemiesById));
+        }
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            sim.enemyProjectiles.add(EnemyProjectile.readState(in, towersById));
+        }
+        return sim;
+    }
+
+    // ----- State -----
+
+    public int getLevelNumber() { return levelNumber; }
+    public LevelData getLevelData() { return levelData; }
+    public long getSeed() { return seed; }
+    public boolean isMazing() { return mazing; }
+    public FlowField getFlowField() { return field; }
+    public int getTick() { return tick; }
+    public int getMoney() { return money; }
+    public int getHealth() { return health; }
+    public int getWave() { return wave; }
+    public int getEnemiesKilled() { return enemiesKilled; }
+    public int getMoneySpent() { return moneySpent; }
+    public boolean isGameOver() { return gameOver; }
+    public boolean isLevelComplete() { return levelComplete; }
+    public boolean isOver() { return gameOver || levelComplete; }
+    public List<Tower> getTowers() { return towers; }
+    public List<Enemy> getEnemies() { return enemies; }
+    public List<Projectile> getProjectiles() { return projectiles; }
+    public List<EnemyProjectile> getEnemyProjectiles() { return enemyProjectiles; }
+}
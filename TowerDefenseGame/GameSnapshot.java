@@ -0,0 +1,134 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Game Snapshot
+ * The complete state of a game in progress: the simulation (towers with
+ * health and cooldowns, enemies with their path progress, projectiles in
+ * flight, wave and spawn timers, money and health) plus the replay recorded
+ * so far, so a resumed game still saves a replay that verifies from tick 0.
+ *
+ * GamePanel autosaves one snapshot per player (saves/<user>.tds) on an
+ * interval and when leaving; CONTINUE in level select resumes it. Starting
+ * a new game scores the saved one as left first, so it is never lost. The state
+ * is encoded on the EDT (a few KB, microseconds) and the file is written by
+ * the PersistenceWriter.
+ *
+ * File layout (big-endian): magic "TDSV", version, recorder (username,
+ * level, seed, mazing, started-at, commands), simulation state (see
+ * GameSimulation.writeState).
+ */
+public class GameSnapshot {
+    private static final int MAGIC = 0x54445356; // "TDSV"
+    private static final int VERSION = 4; // 2: enemies walk a flow field instead of a path index; 3: mazing flag;
+                                          // 4: tower and replay coordinates wide enough for large levels
+    private static final String DIRECTORY = "saves";
+    private static final String EXTENSION = ".tds";
+
+    public final GameSimulation sim;
+    public final Replay.Recorder recorder;
+
+    public GameSnapshot(GameSimulation sim, Replay.Recorder recorder) {
+        this.sim = sim;
+        this.recorder = recorder;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            recorder.writeState(out);
+            sim.writeState(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    public static GameSnapshot fromBytes(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a saved game");
+            int version = in.readShort();
+            if (version != VERSION) throw new IOException("Unsupported saved game version " + version);
+            Replay.Recorder recorder = Replay.Recorder.readState(in);
+            GameSimulation sim = GameSimulation.readState(in);
+            return new GameSnapshot(sim, recorder);
+        } catch (RuntimeException e) {
+            // An unknown tower/enemy type or level: the file is damaged
+            throw new IOException("Corrupt saved game: " + e, e);
+        }
+    }
+
+    // ----- Files -----
+
+    /** The autosave slot of a player, e.g. saves/alice.tds (names encoded as for replays, one slot per account). */
+    public static File fileFor(String username) {
+        return new File(DIRECTORY, Replay.fileName(username) + EXTENSION);
+    }
+
+    public static GameSnapshot load(File file) throws IOException {
+        return fromBytes(Files.readAllBytes(file.toPath()));
+    }
+
+    /** Encodes the state now and writes it on the background writer. */
+    public void save(PersistenceWriter writer, File file) {
+        writer.submit(FILE_SINK, new PendingFile(file, toBytes()));
+    }
+
+    /**
+     * Records this unfinished game as left (score and replay) for the
+     * logged-in player, who owns its slot; used when a new game takes the
+     * slot, so the saved one is still scored once.
+     */
+    public void saveAsLeft(AuthSystem auth) {
+        AuthSystem.ScoreEntry entry = auth.saveScore(sim.getLevelNumber(), sim.calculateScore(), sim.getEnemiesKilled(),
+                                                     sim.getHealth(), sim.getMoneySpent());
+        if (entry != null) {
+            recorder.finish(sim, Replay.LEFT).save(auth.getPersistenceWriter(), entry);
+        }
+    }
+
+    /** Removes a saved game once it has ended; queued behind any save of the same file. */
+    public static void delete(PersistenceWriter writer, File file) {
+        writer.submit(FILE_SINK, new PendingFile(file, null));
+    }
+
+    private static class PendingFile {
+        final File file;
+        final byte[] data; // null = delete
+
+        PendingFile(File file, byte[] data) {
+            this.file = file;
+            this.data = data;
+        }
+    }
+
+    private static final PersistenceWriter.Sink<PendingFile> FILE_SINK = batch -> {
+        for (int i = 0; i < batch.size(); i++) {
+            PendingFile pending = batch.get(i);
+            if (isSuperseded(batch, i)) continue; // Only the last autosave of a file matters
+            if (pending.data == null) {
+                pending.file.delete();
+                continue;
+            }
+            File dir = pending.file.getAbsoluteFile().getParentFile();
+            if (dir != null) dir.mkdirs();
+            // Write aside and move over, so a crash mid-write keeps the previous save
+            File temp = new File(pending.file.getPath() + ".tmp");
+            Files.write(temp.toPath(), pending.data);
+            Files.move(temp.toPath(), pending.file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    };
+
+    private static boolean isSuperseded(List<PendingFile> batch, int index) {
+        File file = batch.get(index).file;
+        for (int i = index + 1; i < batch.size(); i++) {
+            if (batch.get(i).file.equals(file)) return true;
+        }
+        return false;
+    }
+}
@@ -1,20 +1,47 @@
 import javax.swing.*;
+import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * High Scores Panel
+ * Scores are shown in a JTable whose model holds only the pages loaded so
+ * far; pages are fetched from the score index by a SwingWorker and appear
+ * as they arrive, and more are fetched as the table is scrolled to the end.
+ * Clicking the SCORE or DATE header re-queries the index in that order.
  */
 public class HighScoresPanel extends JPanel {
+    private static final int PAGE_SIZE = 100;
+    private static final int LOAD_ROWS = 300;    // Rows fetched per background load
+    private static final int PREFETCH_ROWS = 50; // Start the next load this close to the end
+    private static final Color BACKGROUND = new Color(90, 200, 90);
+    private static final Color TAB_COLOR = new Color(60, 140, 60);
+    private static final Color ACTIVE_TAB_COLOR = new Color(33, 150, 243);
+    
     private TowerDefenseGame game;
-    private JPanel scoresPanel;
+    private JButton[] tabButtons;
+    private JTable table;
+    private JScrollPane scrollPane;
+    private JLabel messageLabel;
+    private ScoreTableModel model;
+    
+    // Current tab: level filter (null = all) and whether only the user's own scores are shown
+    private Integer levelFilter;
+    private boolean myScores;
+    private ScoreQuery.Order order = ScoreQuery.Order.SCORE;
+    
+    // Loading state (EDT only). Bumping generation makes results of older loads be ignored.
+    private int generation;
+    private ScoreQuery nextQuery; // null once every page is loaded
+    private boolean loading;
     
     public HighScoresPanel(TowerDefenseGame game) {
         this.game = game;
         setLayout(null);
         // Green background to match game levels
-        setBackground(new Color(90, 200, 90));
+        setBackground(BACKGROUND);
         
         initComponents();
     }
@@ -24,19 +51,75 @@ public class HighScoresPanel extends JPanel {
         JLabel titleLabel = new JLabel("HIGH SCORES", SwingConstants.CENTER);
         titleLabel.setFont(new Font("Arial", Font.BOLD, 52));
         titleLabel.setForeground(Color.WHITE);
-        titleLabel.setBounds(300, 50, 600, 70);
+        titleLabel.setBounds(300, 30, 600, 70);
         add(titleLabel);
         
-        // Scores panel
-        scoresPanel = new JPanel();
-        scoresPanel.setLayout(new BoxLayout(scoresPanel, BoxLayout.Y_AXIS));
-        scoresPanel.setBackground(new Color(90, 200, 90));
+        // Filter tabs: all levels, each level, and the logged-in user's scores
+        String[] tabNames = {"ALL", "LEVEL 1", "LEVEL 2", "LEVEL 3", "MY SCORES"};
+        tabButtons = new JButton[tabNames.length];
+        for (int i = 0; i < tabNames.length; i++) {
+            final int tab = i;
+            JButton tabBtn = createStyledButton(tabNames[i], TAB_COLOR);
+            tabBtn.setFont(new Font("Arial", Font.BOLD, 14));
+            tabBtn.setBounds(150 + i * 184, 105, 172, 32);
+            tabBtn.addActionListener(e -> selectTab(tab));
+            tabButtons[i] = tabBtn;
+            add(tabBtn);
+        }
+        
+        // Shown instead of the table when there is nothing to list
+        messageLabel = new JLabel("", SwingConstants.CENTER);
+        messageLabel.setFont(new Font("Arial", Font.PLAIN, 20));
+        messageLabel.setForeground(Color.WHITE);
+        messageLabel.setBounds(150, 300, 900, 40);
+        messageLabel.setVisible(false);
+        add(messageLabel);
+        
+        // Score table: only the visible rows are ever rendered
+        model = new ScoreTableModel();
+        table = new JTable(model);
+        table.setFont(new Font("Arial", Font.PLAIN, 20));
+        table.setForeground(Color.WHITE);
+        table.setBackground(BACKGROUND);
+        table.setSelectionBackground(TAB_COLOR);
+        table.setSelectionForeground(Color.WHITE);
+        table.setRowHeight(34);
+        table.setShowGrid(false);
+        table.setIntercellSpacing(new Dimension(0, 0));
+        table.setFillsViewportHeight(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(80);
+        table.getColumnModel().getColumn(1).setPreferredWidth(300);
+        table.getColumnModel().getColumn(2).setPreferredWidth(180);
+        table.getColumnModel().getColumn(3).setPreferredWidth(120);
+        table.getColumnModel().getColumn(4).setPreferredWidth(220);
+        
+        JTableHeader header = table.getTableHeader();
+        header.setReorderingAllowed(false);
+        header.setDefaultRenderer(new HeaderRenderer());
+        header.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column == ScoreTableModel.SCORE_COLUMN) sortBy(ScoreQuery.Order.SCORE);
+                if (column == ScoreTableModel.DATE_COLUMN) sortBy(ScoreQuery.Order.DATE);
+            }
+        });
+        
+        // Double-click a score to watch the replay saved with it
+        table.setToolTipText("Double-click a score to watch its replay");
+        table.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                if (e.getClickCount() == 2 && row >= 0) watchReplay(model.getEntry(row));
+            }
+        });
         
-        JScrollPane scrollPane = new JScrollPane(scoresPanel);
-        scrollPane.setBounds(150, 140, 900, 450);
-        scrollPane.setBackground(new Color(90, 200, 90));
-        scrollPane.getViewport().setBackground(new Color(90, 200, 90));
+        scrollPane = new JScrollPane(table);
+        scrollPane.setBounds(150, 150, 900, 440);
+        scrollPane.setBackground(BACKGROUND);
+        scrollPane.getViewport().setBackground(BACKGROUND);
         scrollPane.setBorder(null);
+        // Fetch the next rows when the user scrolls near the end of what is loaded
+        scrollPane.getViewport().addChangeListener(e -> loadMoreIfNeeded());
         add(scrollPane);
         
         // Back button
@@ -55,53 +138,236 @@ public class HighScoresPanel extends JPanel {
         btn.setBorderPainted(false);
         btn.setCursor(new Cursor(Cursor.HAND_CURSOR));
         
-        btn.addMouseListener(new MouseAdapter() {
-            public void mouseEntered(MouseEvent e) {
-                btn.setBackground(bgColor.brighter());
-            }
-            public void mouseExited(MouseEvent e) {
-                btn.setBackground(bgColor);
-            }
-        });
+        btn.addMouseListener(new HoverListener(btn, bgColor));
         
         return btn;
     }
     
+    // Hover highlight; the base colour can change when a tab becomes active
+    private static class HoverListener extends MouseAdapter {
+        private final JButton btn;
+        Color baseColor;
+        
+        HoverListener(JButton btn, Color baseColor) {
+            this.btn = btn;
+            this.baseColor = baseColor;
+        }
+        
+        public void mouseEntered(MouseEvent e) {
+            btn.setBackground(baseColor.brighter());
+        }
+        public void mouseExited(MouseEvent e) {
+            btn.setBackground(baseColor);
+        }
+    }
+    
     public void refresh() {
-        scoresPanel.removeAll();
-        
-        List<AuthSystem.ScoreEntry> scores = game.getAuthSystem().getHighScores(10);
-        
-        if (scores.isEmpty()) {
-            JLabel noScoresLabel = new JLabel("No scores yet. Play a game to see your scores here!");
-            noScoresLabel.setFont(new Font("Arial", Font.PLAIN, 20));
-            noScoresLabel.setForeground(Color.WHITE);
-            noScoresLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            scoresPanel.add(Box.createVerticalStrut(150));
-            scoresPanel.add(noScoresLabel);
-        } else {
-            for (int i = 0; i < scores.size(); i++) {
-                AuthSystem.ScoreEntry entry = scores.get(i);
-                
-                String scoreText = String.format("%d. %s: %d pts (Lvl %d) - %s", 
-                    i + 1, entry.username, entry.score, entry.level, entry.date);
-                
-                JLabel scoreLabel = new JLabel(scoreText);
-                scoreLabel.setFont(new Font("Arial", Font.PLAIN, 22));
-                scoreLabel.setForeground(Color.WHITE);
-                scoreLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                
-                scoresPanel.add(Box.createVerticalStrut(10));
-                scoresPanel.add(scoreLabel);
+        selectTab(0);
+    }
+    
+    private void selectTab(int tab) {
+        // Tabs 1-3 are levels, tab 4 is "my scores"
+        levelFilter = (tab >= 1 && tab <= 3) ? tab : null;
+        myScores = tab == 4;
+        for (int i = 0; i < tabButtons.length; i++) {
+            Color color = i == tab ? ACTIVE_TAB_COLOR : TAB_COLOR;
+            tabButtons[i].setBackground(color);
+            for (java.awt.event.MouseListener l : tabButtons[i].getMouseListeners()) {
+                if (l instanceof HoverListener) ((HoverListener) l).baseColor = color;
             }
         }
+        reload();
+    }
+    
+    private void sortBy(ScoreQuery.Order newOrder) {
+        if (order == newOrder) return;
+        order = newOrder;
+        table.getTableHeader().repaint();
+        reload();
+    }
+    
+    /** Drops the loaded rows and starts loading the current tab from the first page. */
+    private void reload() {
+        generation++;
+        loading = false;
+        model.clear();
+        scrollPane.getViewport().setViewPosition(new Point(0, 0));
         
-        scoresPanel.revalidate();
-        scoresPanel.repaint();
+        String user = myScores ? game.getAuthSystem().getCurrentUser() : null;
+        if (myScores && user == null) {
+            nextQuery = null;
+            showMessage("Log in to see your scores.");
+            return;
+        }
+        
+        showMessage("Loading...");
+        nextQuery = new ScoreQuery(user, levelFilter, null, null, order, null, PAGE_SIZE);
+        loadMore();
+    }
+    
+    private void watchReplay(AuthSystem.ScoreEntry entry) {
+        java.io.File file = Replay.find(entry);
+        if (file == null) {
+            JOptionPane.showMessageDialog(this, "No replay was saved for this score.", "Replay", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        try {
+            game.startReplay(Replay.read(file));
+        } catch (java.io.IOException e) {
+            JOptionPane.showMessageDialog(this, "Could not read the replay: " + e.getMessage(), "Replay", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void loadMoreIfNeeded() {
+        if (loading || nextQuery == null) return;
+        Rectangle visible = scrollPane.getViewport().getViewRect();
+        int lastVisible = table.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        if (lastVisible < 0 || lastVisible >= model.getRowCount() - PREFETCH_ROWS) {
+            loadMore();
+        }
+    }
+    
+    private void loadMore() {
+        if (loading || nextQuery == null) return;
+        loading = true;
+        new PageLoader(generation, nextQuery).execute();
+    }
+    
+    /**
+     * Fetches up to LOAD_ROWS rows off the EDT, publishing each page as soon
+     * as it arrives so the first rows show up without waiting for the rest.
+     */
+    private class PageLoader extends SwingWorker<Void, ScoreQuery.Page> {
+        private final int loadGeneration;
+        private ScoreQuery query;
+        
+        PageLoader(int loadGeneration, ScoreQuery query) {
+            this.loadGeneration = loadGeneration;
+            this.query = query;
+        }
+        
+        @Override
+        protected Void doInBackground() {
+            int rows = 0;
+            while (rows < LOAD_ROWS && !isCancelled()) {
+                ScoreQuery.Page page = game.getAuthSystem().queryScores(query);
+                publish(page);
+                rows += page.entries.size();
+                if (!page.hasMore()) break;
+                query = query.next(page);
+            }
+            return null;
+        }
+        
+        @Override
+        protected void process(List<ScoreQuery.Page> pages) {
+            if (loadGeneration != generation) return; // Tab or order changed meanwhile
+            for (ScoreQuery.Page page : pages) {
+                model.addRows(page.entries);
+                nextQuery = page.hasMore() ? nextQuery.next(page) : null;
+            }
+            if (model.getRowCount() > 0) hideMessage();
+        }
+        
+        @Override
+        protected void done() {
+            if (loadGeneration != generation) return;
+            loading = false;
+            try {
+                get();
+            } catch (Exception e) {
+                e.printStackTrace();
+                nextQuery = null;
+            }
+            if (model.getRowCount() == 0) {
+                showMessage("No scores yet. Play a game to see your scores here!");
+            } else {
+                // The table may still not reach the bottom of the view
+                loadMoreIfNeeded();
+            }
+        }
+    }
+    
+    private void showMessage(String text) {
+        messageLabel.setText(text);
+        messageLabel.setVisible(true);
+        scrollPane.setVisible(false);
+    }
+    
+    private void hideMessage() {
+        messageLabel.setVisible(false);
+        scrollPane.setVisible(true);
+    }
+    
+    /**
+     * Rows loaded so far, in query order. Cell values are computed from the
+     * entry when a row is painted; nothing per row is kept besides the entry.
+     */
+    private static class ScoreTableModel extends AbstractTableModel {
+        static final String[] COLUMNS = {"#", "PLAYER", "SCORE", "LEVEL", "DATE"};
+        static final int SCORE_COLUMN = 2;
+        static final int DATE_COLUMN = 4;
+        
+        private final List<AuthSystem.ScoreEntry> rows = new ArrayList<>();
+        
+        void clear() {
+            int size = rows.size();
+            if (size == 0) return;
+            rows.clear();
+            fireTableRowsDeleted(0, size - 1);
+        }
+        
+        void addRows(List<AuthSystem.ScoreEntry> entries) {
+            if (entries.isEmpty()) return;
+            int first = rows.size();
+            rows.addAll(entries);
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+        
+        AuthSystem.ScoreEntry getEntry(int row) {
+            return rows.get(row);
+        }
+        
+        public int getRowCount() {
+            return rows.size();
+        }
+        
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+        
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+        
+        public Object getValueAt(int row, int column) {
+            AuthSystem.ScoreEntry entry = rows.get(row);
+            switch (column) {
+                case 0: return row + 1;
+                case 1: return entry.username;
+                case 2: return entry.score + " pts";
+                case 3: return "Lvl " + entry.level;
+                default: return entry.date;
+            }
+        }
+    }
+    
+    // Header cells in the tab colours; the column the table is ordered by is highlighted
+    private class HeaderRenderer extends DefaultTableCellRenderer {
+        HeaderRenderer() {
+            setHorizontalAlignment(SwingConstants.LEFT);
+            setFont(new Font("Arial", Font.BOLD, 16));
+            setForeground(Color.WHITE);
+            setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+        }
+        
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            super.getTableCellRendererComponent(table, value, false, false, row, column);
+            boolean active = (column == ScoreTableModel.SCORE_COLUMN && order == ScoreQuery.Order.SCORE)
+                          || (column == ScoreTableModel.DATE_COLUMN && order == ScoreQuery.Order.DATE);
+            setBackground(active ? ACTIVE_TAB_COLOR : TAB_COLOR);
+            return this;
+        }
     }
 }
-
-
-
-
-
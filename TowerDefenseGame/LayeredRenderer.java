@@ -0,0 +1,129 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Layered Renderer
+ * Optional renderer (-Dtd.renderer=layered) that paints independent layers in
+ * parallel into their own off-screen buffers on a worker pool, then composites
+ * them in order on the EDT. Meant for large outputs where one core cannot
+ * fill the frame in 16 ms.
+ *
+ * Layers only read game state; the EDT waits for all of them before it
+ * continues, so the game loop never mutates state while a layer is painting.
+ */
+public class LayeredRenderer {
+    private static ExecutorService pool;
+
+    private final List<Layer> layers = new ArrayList<>();
+    private final List<BufferedImage> buffers = new ArrayList<>();
+    private final List<Boolean> cachedValid = new ArrayList<>();
+
+    /**
+     * One layer: a region of the frame, the painter that fills it and whether
+     * its content can be kept between frames (e.g. the static background).
+     * The painter draws in frame coordinates; the buffer is translated and clipped for it.
+     */
+    public static class Layer {
+        final String name;
+        final Rectangle bounds;
+        final Consumer<Graphics2D> painter;
+        final boolean cached;
+
+        public Layer(String name, Rectangle bounds, Consumer<Graphics2D> painter, boolean cached) {
+            this.name = name;
+            this.bounds = bounds;
+            this.painter = painter;
+            this.cached = cached;
+        }
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "layer-renderer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return pool;
+    }
+
+    public static int getWorkerCount() {
+        return Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Replaces the layer list (composited in list order). */
+    public void setLayers(List<Layer> newLayers) {
+        layers.clear();
+        buffers.clear();
+        cachedValid.clear();
+        for (Layer layer : newLayers) {
+            layers.add(layer);
+            buffers.add(new BufferedImage(Math.max(1, layer.bounds.width), Math.max(1, layer.bounds.height),
+                                          BufferedImage.TYPE_INT_ARGB_PRE));
+            cachedValid.add(false);
+        }
+    }
+
+    public boolean hasLayers() {
+        return !layers.isEmpty();
+    }
+
+    /** Forces cached layers to be repainted on the next frame. */
+    public void invalidateCached() {
+        for (int i = 0; i < cachedValid.size(); i++) {
+            cachedValid.set(i, false);
+        }
+    }
+
+    public void render(Graphics2D target) {
+        List<Future<?>> pending = new ArrayList<>();
+        List<Integer> painting = new ArrayList<>(); // Layer index of each pending future
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            if (layer.cached && cachedValid.get(i)) continue;
+            BufferedImage buffer = buffers.get(i);
+            pending.add(getPool().submit(() -> paintLayer(layer, buffer)));
+            painting.add(i);
+        }
+        for (int p = 0; p < pending.size(); p++) {
+            int i = painting.get(p);
+            try {
+                pending.get(p).get();
+                // Kept only once it has been painted completely; a failed layer is painted again next frame
+                if (layers.get(i).cached) cachedValid.set(i, true);
+            } catch (Exception e) {
+                cachedValid.set(i, false);
+                e.printStackTrace();
+            }
+        }
+
+        for (int i = 0; i < layers.size(); i++) {
+            Rectangle b = layers.get(i).bounds;
+            target.drawImage(buffers.get(i), b.x, b.y, null);
+        }
+    }
+
+    private static void paintLayer(Layer layer, BufferedImage buffer) {
+        Graphics2D g = buffer.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.translate(-layer.bounds.x, -layer.bounds.y);
+            g.clip(layer.bounds);
+            layer.painter.accept(g);
+        } finally {
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONWriter;
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Leaderboard Server
+ * Small HTTP service that lets several game installs share one leaderboard.
+ * Scores are stored through a LocalScoreBackend in the server's folder and
+ * every read is answered from its in-memory index.
+ *
+ *   POST /scores   body: score records, one JSON object per line  -> 204
+ *                  [X-Batch-Id header: a repeated id is acknowledged without storing the batch again]
+ *   GET  /top?limit=10[&level=1]                                   -> records, one per line
+ *   GET  /query?order=SCORE|DATE&size=20[&user=&level=&from=&to=&cursor=]
+ *                  -> records, one per line; X-Next-Cursor header if there are more
+ *
+ * Requests run on virtual threads where the JDK has them (21+), otherwise
+ * on a fixed pool.
+ */
+public class LeaderboardServer {
+    public static final int DEFAULT_PORT = 8642;
+    static final String CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+    private static final int MAX_LIMIT = 1000;
+    static final String BATCH_ID_HEADER = "X-Batch-Id";
+    private static final int REMEMBERED_BATCHES = 10_000;
+
+    private final ScoreBackend scores;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    // Ids of recently stored batches, so a client retrying after a lost response doesn't store it twice
+    private final Set<String> storedBatches = Collections.newSetFromMap(Collections.synchronizedMap(
+        new LinkedHashMap<String, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > REMEMBERED_BATCHES;
+            }
+        }));
+
+    public LeaderboardServer(ScoreBackend scores, int port) throws IOException {
+        // Headers and body go out as separate writes; with Nagle on, every response waits on a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.scores = scores;
+        this.server = HttpServer.create(new InetSocketAddress(port), 256);
+        this.executor = newExecutor();
+        server.setExecutor(executor);
+        server.createContext("/scores", this::handleSubmit);
+        server.createContext("/top", this::handleTop);
+        server.createContext("/query", this::handleQuery);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /** The bound port (useful when started on port 0). */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Runs a server on the scores in the current folder until the process is killed. */
+    public static void run(int port) throws IOException {
+        PersistenceWriter writer = new PersistenceWriter();
+        LeaderboardServer server = new LeaderboardServer(new LocalScoreBackend(new ScoreStore(), writer), port);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "leaderboard-server-shutdown"));
+        System.out.println("Leaderboard server listening on port " + server.getPort());
+    }
+
+    private static ExecutorService newExecutor() {
+        // Looked up reflectively so the game still builds and runs on JDKs without virtual threads
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "leaderboard-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ----- Handlers -----
+
+    private void handleSubmit(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendStatus(exchange, 405);
+                return;
+            }
+            List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.isEmpty()) entries.add(ScoreJsonReader.readLine(line));
+                }
+            } catch (RuntimeException e) {
+                sendStatus(exchange, 400); // Malformed record: take none of the batch
+                return;
+            }
+            String batchId = exchange.getRequestHeaders().getFirst(BATCH_ID_HEADER);
+            if (batchId != null && !storedBatches.add(batchId)) {
+                sendStatus(exchange, 204); // Already stored: the client just missed the answer
+                return;
+            }
+            for (AuthSystem.ScoreEntry entry : entries) {
+                scores.submit(entry);
+            }
+            sendStatus(exchange, 204);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleTop(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = params(exchange);
+            int limit = limitParam(params, "limit", 10);
+            Integer level = params.containsKey("level") ? Integer.valueOf(params.get("level")) : null;
+            sendEntries(exchange, scores.top(level, limit), null);
+        } catch (IllegalArgumentException e) {
+            sendStatus(exchange, 400); // Bad number or limit
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // A page size in [1, MAX_LIMIT]; larger values are capped, zero or less is a bad request
+    private static int limitParam(Map<String, String> params, String name, int defaultValue) {
+        int value = params.containsKey(name) ? Integer.parseInt(params.get(name)) : defaultValue;
+        if (value <= 0) throw new IllegalArgumentException(name + " must be positive");
+        return Math.min(MAX_LIMIT, value);
+    }
+
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, String> params = params(exchange);
+            ScoreQuery query = new ScoreQuery(
+                params.get("user"),
+                params.containsKey("level") ? Integer.valueOf(params.get("level")) : null,
+                params.get("from"),
+                params.get("to"),
+                ScoreQuery.Order.valueOf(params.getOrDefault("order", "SCORE")),
+                params.get("cursor"),
+                limitParam(params, "size", 20));
+            ScoreQuery.Page page = scores.query(query);
+            sendEntries(exchange, page.entries, page.nextCursor);
+        } catch (IllegalArgumentException e) {
+            sendStatus(exchange, 400); // Bad number, order or cursor
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendEntries(HttpExchange exchange, List<AuthSystem.ScoreEntry> entries, String nextCursor) throws IOException {
+        byte[] body = toLines(entries).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        if (nextCursor != null) exchange.getResponseHeaders().set("X-Next-Cursor", nextCursor);
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    // ----- Wire format -----
+
+    /** Records in the game_scores.log line format, one per line. */
+    static String toLines(List<AuthSystem.ScoreEntry> entries) {
+        StringWriter out = new StringWriter(entries.size() * 128);
+        for (AuthSystem.ScoreEntry entry : entries) {
+            ScoreStore.writeLine(new JSONWriter(out, 0), entry);
+            out.write('\n');
+        }
+        return out.toString();
+    }
+
+    private static Map<String, String> params(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                       URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
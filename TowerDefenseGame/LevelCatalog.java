@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Level Catalog
+ * The community levels in the levels/ folder: level files (.tdl, .tdlb) and
+ * level packs (.tdpack), indexed by level number. Scanning reads only the
+ * metadata (the start of each file, the index of each pack), so the level
+ * select screen lists hundreds of levels, large ones included, without
+ * parsing a single grid. A level is loaded and compiled when it is played,
+ * and the few most recent are kept. The folder is scanned again when files
+ * are added or removed, or when a file's timestamp or size changes (editing
+ * a file in place leaves the folder's timestamp alone).
+ *
+ * Numbers 1 to 3 belong to the built-in levels; a community level with one
+ * of them, or with a number another file already has, is skipped with a
+ * warning. Scores and replays refer to levels by number.
+ */
+public class LevelCatalog {
+    private static final String DIRECTORY = "levels";
+    private static final int LOADED_LEVELS = 4; // Compiled levels kept, most recently played first
+
+    private static LevelCatalog defaultCatalog;
+
+    private final File directory;
+    private final int firstNumber; // Lowest number a community level may have
+    private long scannedModified = -1; // Folder timestamp at the last scan
+    private Map<File, long[]> scannedFiles = new HashMap<>(); // Timestamp and size of each file at the last scan
+    private TreeMap<Integer, LevelFile.Info> infos = new TreeMap<>();
+    private final Map<Integer, LevelData> loaded = new LinkedHashMap<Integer, LevelData>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, LevelData> eldest) {
+            return size() > LOADED_LEVELS;
+        }
+    };
+
+    public LevelCatalog(File directory, int firstNumber) {
+        this.directory = directory;
+        this.firstNumber = firstNumber;
+    }
+
+    /** The catalog of the levels/ folder next to the game. */
+    public static synchronized LevelCatalog getDefault() {
+        if (defaultCatalog == null) {
+            defaultCatalog = new LevelCatalog(new File(DIRECTORY), LevelData.getBuiltInLevels().size() + 1);
+        }
+        return defaultCatalog;
+    }
+
+    /** Scans the folder again if files were added, removed or edited since the last scan. */
+    public synchronized void refresh() {
+        long modified = directory.lastModified(); // 0 if there is no folder
+        if (modified == scannedModified && !filesChanged()) return;
+        scannedModified = modified;
+        loaded.clear();
+
+        TreeMap<Integer, LevelFile.Info> found = new TreeMap<>();
+        Map<File, long[]> stamps = new HashMap<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparing(File::getName)); // Same order on every system
+            for (File file : files) {
+                if (!file.isFile()) continue;
+                stamps.put(file, stamp(file)); // Before reading, so an edit during the read shows next time
+                try {
+                    for (LevelFile.Info info : LevelFile.readInfos(file)) {
+                        if (info.number < firstNumber) {
+                            System.err.println(info.getSource() + ": level number " + info.number
+                                               + " is taken by a built-in level, skipped");
+                        } else if (found.containsKey(info.number)) {
+                            System.err.println(info.getSource() + ": level number " + info.number + " is also in "
+                                               + found.get(info.number).getSource() + ", skipped");
+                        } else {
+                            found.put(info.number, info);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Skipping level file " + e.getMessage());
+                }
+            }
+        }
+        infos = found;
+        scannedFiles = stamps;
+    }
+
+    private static long[] stamp(File file) {
+        return new long[]{file.lastModified(), file.length()};
+    }
+
+    private boolean changedSinceScan(File file) {
+        long[] scanned = scannedFiles.get(file);
+        return scanned == null || !Arrays.equals(scanned, stamp(file));
+    }
+
+    private boolean filesChanged() {
+        for (File file : scannedFiles.keySet()) {
+            if (changedSinceScan(file)) return true;
+        }
+        return false;
+    }
+
+    /** The community levels, by number. */
+    public synchronized List<LevelFile.Info> getInfos() {
+        refreshIfNeverScanned();
+        return new ArrayList<>(infos.values());
+    }
+
+    public synchronized LevelFile.Info getInfo(int number) {
+        refreshIfNeverScanned();
+        return infos.get(number);
+    }
+
+    /**
+     * The compiled level with this number, loaded now if it is not among the
+     * recently played ones. A missing level is an IllegalArgumentException,
+     * a damaged file an UncheckedIOException or IllegalArgumentException.
+     */
+    public synchronized LevelData load(int number) {
+        LevelFile.Info info = getInfo(number);
+        if (info != null && changedSinceScan(info.file)) {
+            // Edited since the scan: its place in the file, and the compiled level, may be out of date
+            refresh();
+            info = infos.get(number);
+        }
+        LevelData level = loaded.get(number);
+        if (level != null) return level;
+        if (info == null) {
+            throw new IllegalArgumentException("No level " + number + " in " + directory);
+        }
+        try {
+            level = LevelFile.load(info).compile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        loaded.put(number, level);
+        return level;
+    }
+
+    /** The community level numbered after this one, or -1. */
+    public synchronized int next(int number) {
+        refreshIfNeverScanned();
+        Integer next = infos.higherKey(number);
+        return next != null ? next : -1;
+    }
+
+    /** The community level numbered before this one, or -1. */
+    public synchronized int previous(int number) {
+        refreshIfNeverScanned();
+        Integer previous = infos.lowerKey(number);
+        return previous != null ? previous : -1;
+    }
+
+    private void refreshIfNeverScanned() {
+        if (scannedModified < 0) refresh();
+    }
+}
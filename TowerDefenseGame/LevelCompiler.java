@@ -0,0 +1,166 @@
+import java.awt.Color;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Level Compiler
+ * Turns a level description (grid, waves, colours, obstacles, decorations)
+ * into an immutable LevelData. Everything a game needs from the grid is
+ * worked out here, once per level: the grid is validated, the flow field and
+ * an obstacle lookup are computed, and the route drawn from each spawn keeps
+ * only its corners, so a straight corridor is one segment rather than a
+ * point per tile.
+ *
+ * Errors in the description are reported as IllegalArgumentException with
+ * the level name and the cell at fault.
+ */
+public class LevelCompiler {
+    public static final int MAX_SIZE = 1024; // Cells a side; snapshots store coordinates in 16 bits
+
+    private final String name;
+    private final int[][] grid;
+    private final int width;
+    private final int height;
+    private final int waves;
+    private final int spawnInterval;
+    private final Color backgroundColor;
+    private final Color pathColor;
+    private final String backgroundAssetKey;
+    private final List<LevelData.Obstacle> obstacles = new ArrayList<>();
+    private final List<LevelData.Decoration> decorations = new ArrayList<>();
+
+    // Grid as text, e.g. "2 1 1\n0 0 3": see LevelData for the cell values
+    public LevelCompiler(String name, String gridString, int waves, int spawnInterval,
+                         Color backgroundColor, Color pathColor, String backgroundAssetKey) {
+        this(name, LevelFile.parseGrid(gridString), waves, spawnInterval, backgroundColor, pathColor, backgroundAssetKey);
+    }
+
+    // Grid as grid[row][column]; shorter rows are padded with empty cells
+    public LevelCompiler(String name, int[][] grid, int waves, int spawnInterval,
+                         Color backgroundColor, Color pathColor, String backgroundAssetKey) {
+        this.name = name;
+        this.height = grid.length;
+        int maxWidth = 0;
+        for (int[] row : grid) {
+            maxWidth = Math.max(maxWidth, row.length);
+        }
+        this.width = maxWidth;
+        this.grid = new int[height][width];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(grid[y], 0, this.grid[y], 0, grid[y].length);
+        }
+        this.waves = waves;
+        this.spawnInterval = spawnInterval;
+        this.backgroundColor = backgroundColor;
+        this.pathColor = pathColor;
+        this.backgroundAssetKey = backgroundAssetKey;
+    }
+
+    /** An obstacle blocks tower placement; it must be on an empty cell. */
+    public void addObstacle(int gridX, int gridY, String assetKey) {
+        obstacles.add(new LevelData.Obstacle(gridX, gridY, assetKey));
+    }
+
+    /** A decoration is only drawn; one on the road is left out. */
+    public void addDecoration(int x, int y, String key) {
+        int gridX = x / TowerDefenseGame.TILE_SIZE;
+        int gridY = (y - 100) / TowerDefenseGame.TILE_SIZE; // Account for UI offset
+        if (!isRoad(gridX, gridY)) {
+            decorations.add(new LevelData.Decoration(x, y, key));
+        }
+    }
+
+    public void addDecorationAtGrid(int gridX, int gridY, String key) {
+        addDecoration(LevelData.centerX(gridX), LevelData.centerY(gridY), key);
+    }
+
+    // The description as given, e.g. for LevelFile.toBinary
+    String getName() { return name; }
+    int[][] getGrid() { return grid; }
+    int getWaves() { return waves; }
+    int getSpawnInterval() { return spawnInterval; }
+    Color getBackgroundColor() { return backgroundColor; }
+    Color getPathColor() { return pathColor; }
+    String getBackgroundAssetKey() { return backgroundAssetKey; }
+    List<LevelData.Obstacle> getObstacles() { return obstacles; }
+    List<LevelData.Decoration> getDecorations() { return decorations; }
+
+    private boolean isRoad(int gridX, int gridY) {
+        return gridX >= 0 && gridX < width && gridY >= 0 && gridY < height
+            && grid[gridY][gridX] != LevelData.EMPTY;
+    }
+
+    /** Validates the description and builds the level. */
+    public LevelData compile() {
+        if (width == 0 || height == 0) {
+            throw new IllegalArgumentException(name + ": empty grid");
+        }
+        if (width > MAX_SIZE || height > MAX_SIZE) {
+            throw new IllegalArgumentException(name + ": grid of " + width + "x" + height
+                                               + " (at most " + MAX_SIZE + " a side)");
+        }
+
+        // Cells, and the flow field over the road
+        List<Point> spawns = new ArrayList<>();
+        FlowField flowField = new FlowField(width, height);
+        boolean hasExit = false;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int cell = grid[y][x];
+                if (cell < LevelData.EMPTY || cell > LevelData.EXIT) {
+                    throw new IllegalArgumentException(name + ": unknown cell value " + cell + " at " + x + "," + y);
+                }
+                if (cell == LevelData.EXIT) {
+                    flowField.addExit(x, y);
+                    hasExit = true;
+                } else if (cell != LevelData.EMPTY) {
+                    flowField.setWalkable(x, y, true);
+                    if (cell == LevelData.SPAWN) spawns.add(new Point(x, y));
+                }
+            }
+        }
+        if (spawns.isEmpty()) {
+            throw new IllegalArgumentException(name + ": no spawn cell (2) in the grid");
+        }
+        if (!hasExit) {
+            throw new IllegalArgumentException(name + ": no exit cell (3) in the grid");
+        }
+        flowField.compute();
+        for (Point spawn : spawns) {
+            if (flowField.getDistance(spawn.x, spawn.y) == FlowField.UNREACHABLE) {
+                throw new IllegalArgumentException(name + ": the spawn at " + spawn.x + "," + spawn.y
+                                                   + " has no path to an exit cell (3)");
+            }
+        }
+
+        // Obstacles, looked up per cell when placing towers
+        boolean[] obstacleCells = new boolean[width * height];
+        for (LevelData.Obstacle obs : obstacles) {
+            if (obs.gridX < 0 || obs.gridX >= width || obs.gridY < 0 || obs.gridY >= height) {
+                throw new IllegalArgumentException(name + ": obstacle outside the grid at " + obs.gridX + "," + obs.gridY);
+            }
+            if (grid[obs.gridY][obs.gridX] != LevelData.EMPTY) {
+                throw new IllegalArgumentException(name + ": obstacle on the road at " + obs.gridX + "," + obs.gridY);
+            }
+            obstacleCells[obs.gridY * width + obs.gridX] = true;
+        }
+
+        // The route from each spawn, for drawing the road
+        List<List<Point>> routes = new ArrayList<>();
+        for (Point spawn : spawns) {
+            routes.add(LevelData.traceRoute(flowField, spawn));
+        }
+
+        int[][] cells = new int[height][];
+        for (int y = 0; y < height; y++) {
+            cells[y] = grid[y].clone();
+        }
+        return new LevelData(name, cells, Collections.unmodifiableList(spawns), flowField,
+                             Collections.unmodifiableList(routes), obstacleCells,
+                             Collections.unmodifiableList(new ArrayList<>(obstacles)),
+                             Collections.unmodifiableList(new ArrayList<>(decorations)),
+                             waves, spawnInterval, backgroundColor, pathColor, backgroundAssetKey);
+    }
+}
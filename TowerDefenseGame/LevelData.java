@@ -1,26 +1,47 @@
 import java.awt.Point;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Level Data Class
  * Contains level configuration
- * Uses grid-based mapping: 1 = path, 0 = empty (tower placeable)
+ * Uses grid-based mapping: 0 = empty (tower placeable), 1 = path,
+ * 2 = spawn (enemies enter here), 3 = exit (enemies leave here).
+ * A level may have several spawns and exits; enemies find their way with a
+ * FlowField computed once for the level. In mazing mode every game gets a
+ * field of its own over the whole grid (see createMazingField).
+ *
+ * Levels are built by LevelCompiler and cannot change afterwards, so the
+ * compiled levels are cached (getLevel) and shared by every game, including
+ * the replay verifier's threads. The shared flow field is only ever read.
+ * Levels 1 to 3 are built in; higher numbers are community levels loaded
+ * from the levels/ folder (see LevelCatalog and LevelFile).
  */
 public class LevelData {
-    private String name;
-    private int[][] grid; // Grid mapping: 1 = path, 0 = empty
-    private List<Point> path; // Calculated from grid
-    private List<Decoration> decorations;
-    private List<Obstacle> obstacles; // Obstacles that block tower placement
-    private int waves;
-    private int spawnInterval;
-    private Color backgroundColor;
-    private Color pathColor;
-    private String backgroundAssetKey; // Asset key for background tile pattern
-    private int gridWidth;
-    private int gridHeight;
+    public static final int EMPTY = 0;
+    public static final int PATH = 1;
+    public static final int SPAWN = 2;
+    public static final int EXIT = 3;
+    
+    private final String name;
+    private final int[][] grid; // Grid mapping: see above
+    private final int gridWidth;
+    private final int gridHeight;
+    private final List<Point> spawns; // Spawn cells (grid coordinates)
+    private final FlowField flowField; // Steps to the nearest exit, shared by all enemies
+    private final List<List<Point>> routes; // Corners of the route from each spawn (pixels), for drawing
+    private final boolean[] obstacleCells; // y * gridWidth + x
+    private final List<Obstacle> obstacles; // Obstacles that block tower placement
+    private final List<Decoration> decorations;
+    private final int waves;
+    private final int spawnInterval;
+    private final Color backgroundColor;
+    private final Color pathColor;
+    private final String backgroundAssetKey; // Asset key for background tile pattern
+    
+    private static List<LevelData> compiledLevels; // Built on first use
     
     public static class Obstacle {
         public final int gridX, gridY;
@@ -42,270 +63,175 @@ public class LevelData {
         }
     }
     
-    // Grid-based constructor
-    public LevelData(String name, String gridString, int waves, int spawnInterval, Color backgroundColor, Color pathColor) {
+    // Built by LevelCompiler.compile, which has validated everything
+    LevelData(String name, int[][] grid, List<Point> spawns, FlowField flowField, List<List<Point>> routes,
+              boolean[] obstacleCells, List<Obstacle> obstacles, List<Decoration> decorations,
+              int waves, int spawnInterval, Color backgroundColor, Color pathColor, String backgroundAssetKey) {
         this.name = name;
+        this.grid = grid;
+        this.gridHeight = grid.length;
+        this.gridWidth = grid[0].length;
+        this.spawns = spawns;
+        this.flowField = flowField;
+        this.routes = routes;
+        this.obstacleCells = obstacleCells;
+        this.obstacles = obstacles;
+        this.decorations = decorations;
         this.waves = waves;
         this.spawnInterval = spawnInterval;
-        this.decorations = new ArrayList<>();
         this.backgroundColor = backgroundColor;
         this.pathColor = pathColor;
-        this.backgroundAssetKey = null; // Default: no tile pattern
-        
-        // Parse grid from string (format: "1 0 0 1\n0 0 0 1")
-        parseGrid(gridString);
-        
-        // Calculate path from grid
-        this.path = calculatePathFromGrid();
+        this.backgroundAssetKey = backgroundAssetKey;
     }
     
-    // Grid-based constructor with background asset
-    public LevelData(String name, String gridString, int waves, int spawnInterval, Color backgroundColor, Color pathColor, String backgroundAssetKey) {
-        this.name = name;
-        this.waves = waves;
-        this.spawnInterval = spawnInterval;
-        this.decorations = new ArrayList<>();
-        this.obstacles = new ArrayList<>();
-        this.backgroundColor = backgroundColor;
-        this.pathColor = pathColor;
-        this.backgroundAssetKey = backgroundAssetKey;
-        
-        // Parse grid from string (format: "1 0 0 1\n0 0 0 1")
-        parseGrid(gridString);
-        
-        // Calculate path from grid
-        this.path = calculatePathFromGrid();
+    /**
+     * The compiled level with this number, shared by every game: a built-in
+     * level (1 to 3) or a community level from the LevelCatalog.
+     */
+    public static LevelData getLevel(int levelNumber) {
+        List<LevelData> builtIn = getBuiltInLevels();
+        if (levelNumber >= 1 && levelNumber <= builtIn.size()) {
+            return builtIn.get(levelNumber - 1);
+        }
+        return LevelCatalog.getDefault().load(levelNumber);
     }
     
-    // Legacy constructor for backward compatibility
-    public LevelData(String name, List<Point> path, int waves, int spawnInterval) {
-        this.name = name;
-        this.path = path;
-        this.waves = waves;
-        this.spawnInterval = spawnInterval;
-        this.decorations = new ArrayList<>();
-        // Default colors
-        this.backgroundColor = new Color(90, 200, 90);
-        this.pathColor = new Color(150, 120, 80);
-        // Create grid from path (for compatibility)
-        this.grid = null;
+    public static synchronized List<LevelData> getBuiltInLevels() {
+        if (compiledLevels == null) {
+            compiledLevels = Collections.unmodifiableList(createLevels());
+        }
+        return compiledLevels;
     }
     
-    // Legacy constructor for backward compatibility
-    public LevelData(String name, List<Point> path, int waves, int spawnInterval, Color backgroundColor, Color pathColor) {
-        this.name = name;
-        this.path = path;
-        this.waves = waves;
-        this.spawnInterval = spawnInterval;
-        this.decorations = new ArrayList<>();
-        this.backgroundColor = backgroundColor;
-        this.pathColor = pathColor;
-        // Create grid from path (for compatibility)
-        this.grid = null;
+    /** The level played after this one: the next built-in, then the community levels; -1 after the last. */
+    public static int nextLevel(int levelNumber) {
+        if (levelNumber < getBuiltInLevels().size()) return levelNumber + 1;
+        return LevelCatalog.getDefault().next(levelNumber);
     }
     
-    private void parseGrid(String gridString) {
-        String[] lines = gridString.trim().split("\n");
-        gridHeight = lines.length;
-        gridWidth = 0;
-        
-        // Find max width
-        for (String line : lines) {
-            String[] cells = line.trim().split("\\s+");
-            gridWidth = Math.max(gridWidth, cells.length);
-        }
-        
-        grid = new int[gridHeight][gridWidth];
-        
-        for (int y = 0; y < lines.length; y++) {
-            String[] cells = lines[y].trim().split("\\s+");
-            for (int x = 0; x < cells.length; x++) {
-                grid[y][x] = Integer.parseInt(cells[x]);
-            }
-        }
+    /** The level before this one, -1 before the first. */
+    public static int previousLevel(int levelNumber) {
+        int builtIn = getBuiltInLevels().size();
+        int previous = levelNumber > builtIn ? LevelCatalog.getDefault().previous(levelNumber) : -1;
+        if (previous < 0) previous = Math.min(levelNumber - 1, builtIn);
+        return previous >= 1 ? previous : -1;
     }
     
-    private List<Point> calculatePathFromGrid() {
-        List<Point> path = new ArrayList<>();
-        
-        // Find start point: first 1 in grid (leftmost, then topmost)
-        int startX = -1, startY = -1;
-        
-        // Find first 1 by scanning left to right, top to bottom
+    /**
+     * A field for mazing mode: every cell but the obstacles is walkable, so
+     * enemies cross the open ground and towers (blocked with FlowField.block)
+     * shape their route. A new field each call, for one game to change.
+     */
+    public FlowField createMazingField() {
+        FlowField field = new FlowField(gridWidth, gridHeight);
         for (int y = 0; y < gridHeight; y++) {
             for (int x = 0; x < gridWidth; x++) {
-                if (grid[y][x] == 1) {
-                    startX = x;
-                    startY = y;
-                    break;
+                if (grid[y][x] == EXIT) {
+                    field.addExit(x, y);
+                } else {
+                    field.setWalkable(x, y, !isObstacle(x, y));
                 }
             }
-            if (startX != -1) break;
         }
-        
-        if (startX == -1) {
-            // No path found, return empty
-            return path;
-        }
-        
-        // Follow path using improved pathfinding
-        int currentX = startX;
-        int currentY = startY;
-        boolean[][] visited = new boolean[gridHeight][gridWidth];
-        
-        path.add(new Point(
-            currentX * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2,
-            currentY * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2 + 100 // UI offset
-        ));
-        
-        // Improved path following: prioritize forward direction, then perpendicular
-        int lastDirX = 1, lastDirY = 0; // Default: moving right
-        
-        while (true) {
-            visited[currentY][currentX] = true;
-            int nextX = -1, nextY = -1;
-            
-            // Priority order: continue in same direction, then perpendicular directions
-            int[][] directions;
-            if (lastDirX != 0) {
-                // Moving horizontally, check horizontal first, then vertical
-                directions = new int[][]{
-                    {lastDirX, 0},      // Continue same direction
-                    {0, 1}, {0, -1},    // Perpendicular (down, up)
-                    {-lastDirX, 0}     // Opposite direction (last resort)
-                };
-            } else {
-                // Moving vertically, check vertical first, then horizontal
-                directions = new int[][]{
-                    {0, lastDirY},      // Continue same direction
-                    {1, 0}, {-1, 0},   // Perpendicular (right, left)
-                    {0, -lastDirY}     // Opposite direction (last resort)
-                };
-            }
-            
-            for (int[] dir : directions) {
-                int nx = currentX + dir[0];
-                int ny = currentY + dir[1];
-                
-                if (nx >= 0 && nx < gridWidth && ny >= 0 && ny < gridHeight &&
-                    grid[ny][nx] == 1 && !visited[ny][nx]) {
-                    nextX = nx;
-                    nextY = ny;
-                    lastDirX = dir[0];
-                    lastDirY = dir[1];
-                    break;
-                }
-            }
-            
-            if (nextX == -1) {
-                // Check if we're at the end (rightmost column or bottom row)
-                if (currentX == gridWidth - 1 || currentY == gridHeight - 1) {
-                    break;
-                }
-                // Try to find any unvisited adjacent 1 (backtrack prevention)
-                for (int[] dir : new int[][]{{1, 0}, {0, 1}, {-1, 0}, {0, -1}}) {
-                    int nx = currentX + dir[0];
-                    int ny = currentY + dir[1];
-                    if (nx >= 0 && nx < gridWidth && ny >= 0 && ny < gridHeight &&
-                        grid[ny][nx] == 1) {
-                        nextX = nx;
-                        nextY = ny;
-                        lastDirX = dir[0];
-                        lastDirY = dir[1];
-                        break;
-                    }
-                }
-                if (nextX == -1) break;
-            }
-            
-            currentX = nextX;
-            currentY = nextY;
-            
-            path.add(new Point(
-                currentX * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2,
-                currentY * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2 + 100 // UI offset
-            ));
-        }
-        
-        return path;
+        field.compute();
+        return field;
     }
     
-    public boolean isPath(int gridX, int gridY) {
-        if (grid == null) return false;
-        if (gridY < 0 || gridY >= gridHeight || gridX < 0 || gridX >= gridWidth) {
-            return false;
+    /**
+     * The corners (cell centres, in pixels) of the way an enemy walks from
+     * the spawn to an exit: the spawn, every cell where the way turns, and
+     * the exit. The cells in between lie on the straight lines.
+     */
+    static List<Point> traceRoute(FlowField flowField, Point spawn) {
+        int gridWidth = flowField.getWidth();
+        List<Point> route = new ArrayList<>();
+        int x = spawn.x, y = spawn.y;
+        int dirX = 1, dirY = 0; // Enemies start heading right
+        route.add(new Point(centerX(x), centerY(y)));
+        boolean cornerAdded = true; // The current cell is already in the route
+        int next;
+        while ((next = flowField.next(x, y, dirX, dirY)) >= 0) {
+            int nx = next % gridWidth;
+            int ny = next / gridWidth;
+            if ((nx - x != dirX || ny - y != dirY) && !cornerAdded) {
+                route.add(new Point(centerX(x), centerY(y))); // Turning here
+            }
+            dirX = nx - x;
+            dirY = ny - y;
+            x = nx;
+            y = ny;
+            cornerAdded = false;
         }
-        return grid[gridY][gridX] == 1;
-    }
-    
-    public int[][] getGrid() {
-        return grid;
+        if (!cornerAdded) {
+            route.add(new Point(centerX(x), centerY(y)));
+        }
+        return route;
     }
     
-    public void addDecoration(int x, int y, String key) {
-        // Check if decoration is on path - don't add decorations on path
-        int gridX = x / TowerDefenseGame.TILE_SIZE;
-        int gridY = (y - 100) / TowerDefenseGame.TILE_SIZE; // Account for UI offset
-        
-        // Only add decoration if it's not on the path
-        if (!isPath(gridX, gridY)) {
-            decorations.add(new Decoration(x, y, key));
-        }
+    /** Pixel centre of a grid column. */
+    public static int centerX(int gridX) {
+        return gridX * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2;
     }
     
-    public void addDecorationAtGrid(int gridX, int gridY, String key) {
-        // Grid koordinatını pixel'e çevir
-        int pixelX = gridX * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2;
-        int pixelY = gridY * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2 + 100; // UI offset
-        addDecoration(pixelX, pixelY, key);
+    /** Pixel centre of a grid row (below the ~100px HUD). */
+    public static int centerY(int gridY) {
+        return gridY * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2 + 100; // UI offset
     }
     
-    public void addObstacle(int gridX, int gridY, String assetKey) {
-        // Add obstacle that blocks tower placement (only if not on path)
-        if (!isPath(gridX, gridY)) {
-            obstacles.add(new Obstacle(gridX, gridY, assetKey));
+    public boolean isPath(int gridX, int gridY) {
+        if (gridY < 0 || gridY >= gridHeight || gridX < 0 || gridX >= gridWidth) {
+            return false;
         }
+        return grid[gridY][gridX] != EMPTY;
     }
     
     public boolean isObstacle(int gridX, int gridY) {
-        for (Obstacle obs : obstacles) {
-            if (obs.gridX == gridX && obs.gridY == gridY) {
-                return true;
-            }
+        if (gridY < 0 || gridY >= gridHeight || gridX < 0 || gridX >= gridWidth) {
+            return false;
         }
-        return false;
+        return obstacleCells[gridY * gridWidth + gridX];
+    }
+    
+    /** The cell value at (gridX, gridY); see above. */
+    public int getCell(int gridX, int gridY) {
+        return grid[gridY][gridX];
     }
     
     public List<Decoration> getDecorations() { return decorations; }
     public List<Obstacle> getObstacles() { return obstacles; }
     public String getName() { return name; }
-    public List<Point> getPath() { return path; }
+    public int getGridWidth() { return gridWidth; }
+    public int getGridHeight() { return gridHeight; }
+    public List<Point> getSpawns() { return spawns; }
+    public FlowField getFlowField() { return flowField; }
+    public List<List<Point>> getRoutes() { return routes; }
     public int getWaves() { return waves; }
     public int getSpawnInterval() { return spawnInterval; }
     public Color getBackgroundColor() { return backgroundColor; }
     public Color getPathColor() { return pathColor; }
     public String getBackgroundAssetKey() { return backgroundAssetKey; }
     
+    /** Compiles the built-in levels (getBuiltInLevels keeps the result). */
     public static List<LevelData> createLevels() {
         List<LevelData> levels = new ArrayList<>();
         
         // Level 1 - Simple S-curve path (EASY - Beginner friendly)
-        // Grid: 1 = path, 0 = empty (tower placeable)
+        // Grid: 0 = empty (tower placeable), 1 = path, 2 = spawn, 3 = exit
         // Screen: 1200x700, TILE_SIZE: 64, Grid: 18x9 (accounting for UI offset ~100px)
         // Path: Left -> Right -> Up -> Right (simple S-curve)
         // Path starts from left edge (column 0) and exits from right edge (column 17)
         String grid1 = 
             "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n" +
-            "1 1 1 1 1 1 1 1 1 0 0 0 0 0 0 0 0 0\n" +
+            "2 1 1 1 1 1 1 1 1 0 0 0 0 0 0 0 0 0\n" +
             "0 0 0 0 0 0 0 0 1 0 0 0 0 0 0 0 0 0\n" +
             "0 0 0 0 0 0 0 0 1 0 0 0 0 0 0 0 0 0\n" +
             "0 0 0 0 0 0 0 0 1 1 1 1 1 1 0 0 0 0\n" +
             "0 0 0 0 0 0 0 0 0 0 0 0 0 1 0 0 0 0\n" +
             "0 0 0 0 0 0 0 0 1 1 1 1 1 1 0 0 0 0\n" +
             "0 0 0 0 0 0 0 0 1 0 0 0 0 0 0 0 0 0\n" +
-            "0 0 0 0 0 0 0 0 1 0 0 0 0 0 0 0 0 0";
+            "0 0 0 0 0 0 0 0 3 0 0 0 0 0 0 0 0 0";
         
-        LevelData lvl1 = new LevelData("Level 1", grid1, 5, 60, 
+        LevelCompiler lvl1 = new LevelCompiler("Level 1", grid1, 5, 60, 
             new Color(90, 200, 90),  // Bright green background (fallback)
             new Color(150, 120, 80), // Brown path
             "level1_bg"); // Use tile024 as background pattern
@@ -315,22 +241,22 @@ public class LevelData {
         // Obstacle: lvl1.addObstacle(sütun, satır, "obstacle"); // Tower engelleyici
         // Asset seçimi: "dec1"-"dec5" = görsel, "obstacle" = engelleyici
         
-        levels.add(lvl1);
+        levels.add(lvl1.compile());
         
         // Level 2 - Restored to previous path
         String grid2 = 
             "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n" +
             "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n" +
-            "0 0 0 0 1 1 1 1 1 1 1 1 1 1 1 1 0 0\n" +
+            "0 0 0 0 2 1 1 1 1 1 1 1 1 1 1 1 0 0\n" +
             "0 0 0 0 1 0 0 0 0 0 0 0 0 0 0 1 0 0\n" +
             "0 1 1 1 1 0 0 0 0 0 0 0 0 0 0 1 0 0\n" +
             "0 1 0 0 0 0 0 0 0 0 0 0 0 0 0 1 0 0\n" +
             "0 1 1 1 1 1 0 0 0 0 0 0 1 1 1 1 0 0\n" +
             "0 0 0 0 0 1 0 0 0 0 0 0 1 0 0 0 0 0\n" +
-            "0 0 0 0 0 1 0 0 0 0 0 0 1 1 1 1 1 1";
+            "0 0 0 0 0 1 0 0 0 0 0 0 1 1 1 1 1 3";
         
         // Level 2 - Green theme - MEDIUM difficulty
-        LevelData lvl2 = new LevelData("Level 2", grid2, 8, 45,
+        LevelCompiler lvl2 = new LevelCompiler("Level 2", grid2, 8, 45,
             new Color(90, 200, 90),  // Green background (fallback)
             new Color(150, 120, 80), // Brown path (same as Level 1)
             "level2_bg"); // Use tile024 as background pattern
@@ -338,7 +264,7 @@ public class LevelData {
         // lvl2.addDecorationAtGrid(sütun, satır, "dec1");
         // lvl2.addObstacle(sütun, satır, "obstacle");
         
-        levels.add(lvl2);
+        levels.add(lvl2.compile());
         
         // Level 3 - EXTREME complex meandering path (VERY HARD - Extremely challenging)
         // Path: Complex pattern matching reference image exactly
@@ -357,7 +283,7 @@ public class LevelData {
         // Updated Level 3 path: single-width snake with many turns; starts at left edge and exits bottom-right
         String grid3 = 
             "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n" +
-            "1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1\n" +
+            "2 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1\n" +
             "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 1\n" +
             "0 0 0 0 1 1 1 1 1 1 1 1 1 1 1 1 1 1\n" +
             "0 0 0 0 1 0 0 0 0 0 0 0 0 0 0 0 0 0\n" +
@@ -366,10 +292,10 @@ public class LevelData {
             "0 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 1 0\n" +
             "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 1 0\n" +
             "0 0 0 0 0 1 1 1 1 1 1 1 1 1 1 1 1 0\n" +
-            "0 0 0 0 0 1 1 1 1 1 1 1 1 1 1 1 1 1";
+            "0 0 0 0 0 1 1 1 1 1 1 1 1 1 1 1 1 3";
         
         // Level 3 - Green theme - EXTREME difficulty
-        LevelData lvl3 = new LevelData("Level 3", grid3, 12, 35,
+        LevelCompiler lvl3 = new LevelCompiler("Level 3", grid3, 12, 35,
             new Color(90, 200, 90),  // Green background (fallback)
             new Color(150, 120, 80), // Brown path (same as Level 1)
             "level3_bg"); // Use tile024 as background pattern
@@ -390,12 +316,12 @@ public class LevelData {
         lvl3.addObstacle(3, 9, "obstacle136");
         lvl3.addObstacle(4, 9, "obstacle136");
         
-        levels.add(lvl3);
+        levels.add(lvl3.compile());
         
         return levels;
     }
 
-    private static void addDecorationCluster(LevelData lvl, int x, int y) {
+    private static void addDecorationCluster(LevelCompiler lvl, int x, int y) {
         // Create a natural-looking cluster with variety
         lvl.addDecoration(x, y, "dec" + ((x+y)%5 + 1));
         lvl.addDecoration(x + 25, y + 18, "dec" + ((x+y+1)%5 + 1));
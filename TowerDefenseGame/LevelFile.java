@@ -0,0 +1,524 @@
+import java.awt.Color;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Level File
+ * Community levels on disk, in three forms:
+ *
+ *   .tdl     text: metadata lines ("number 12", "name Spiral", "waves 10",
+ *            "interval 45", "background-color 5ac85a", "path-color 967850",
+ *            "background-asset level1_bg"), then "grid W H" and H rows of W
+ *            one-digit cells (spaces optional), then "obstacle X Y asset" and
+ *            "decoration X Y asset" lines (grid cells). '#' starts a comment.
+ *   .tdlb    binary (big-endian): magic "TDLV", version, the same metadata,
+ *            width and height, the cells packed four to a byte (2 bits each,
+ *            row by row), then the obstacles and decorations.
+ *   .tdpack  many binary levels in one file: magic "TDPK", version, count, an
+ *            index (number, name, waves, width, height, offset, length per
+ *            level), then the levels.
+ *
+ * The metadata comes first in every form, so the catalog reads only the
+ * start of each file (or a pack's index) and a level's grid is only parsed
+ * once it is played. Both parsers make a single pass over the bytes.
+ */
+public class LevelFile {
+    public static final String TEXT_EXTENSION = ".tdl";
+    public static final String BINARY_EXTENSION = ".tdlb";
+    public static final String PACK_EXTENSION = ".tdpack";
+
+    private static final int LEVEL_MAGIC = 0x54444C56; // "TDLV"
+    private static final int PACK_MAGIC = 0x5444504B; // "TDPK"
+    private static final int VERSION = 1;
+    private static final int HEADER_CHUNK = 4096; // Text metadata is read in chunks until the grid line
+
+    /** What the catalog knows about a level without loading it. */
+    public static class Info {
+        public final int number;
+        public final String name;
+        public final int waves;
+        public final int width;
+        public final int height;
+        final int spawnInterval;
+        final Color backgroundColor;
+        final Color pathColor;
+        final String backgroundAssetKey;
+
+        // Where the level is: a whole file, or a slice of a pack
+        final File file;
+        final long offset;
+        final int length;
+        final boolean binary;
+
+        Info(int number, String name, int waves, int width, int height, int spawnInterval,
+             Color backgroundColor, Color pathColor, String backgroundAssetKey,
+             File file, long offset, int length, boolean binary) {
+            this.number = number;
+            this.name = name;
+            this.waves = waves;
+            this.width = width;
+            this.height = height;
+            this.spawnInterval = spawnInterval;
+            this.backgroundColor = backgroundColor;
+            this.pathColor = pathColor;
+            this.backgroundAssetKey = backgroundAssetKey;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.binary = binary;
+        }
+
+        Info at(File file, long offset, int length, boolean binary) {
+            return new Info(number, name, waves, width, height, spawnInterval, backgroundColor,
+                            pathColor, backgroundAssetKey, file, offset, length, binary);
+        }
+
+        public String getSource() {
+            return file.getName() + (file.getName().endsWith(PACK_EXTENSION) ? " @" + offset : "");
+        }
+    }
+
+    // ----- Catalog -----
+
+    /** The levels in a file: one for a level file, the index of a pack. */
+    public static List<Info> readInfos(File file) throws IOException {
+        String fileName = file.getName();
+        List<Info> infos = new ArrayList<>();
+        if (fileName.endsWith(PACK_EXTENSION)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), HEADER_CHUNK))) {
+                if (in.readInt() != PACK_MAGIC) throw new IOException(fileName + ": not a level pack");
+                int version = in.readShort();
+                if (version != VERSION) throw new IOException(fileName + ": unsupported level pack version " + version);
+                for (int i = in.readInt(); i > 0; i--) {
+                    int number = in.readInt();
+                    String name = in.readUTF();
+                    int waves = in.readInt();
+                    int width = in.readShort();
+                    int height = in.readShort();
+                    int offset = in.readInt();
+                    int length = in.readInt();
+                    if (offset < 0 || length < 0 || (long) offset + length > file.length()) {
+                        // A damaged index entry: the other levels of the pack are still usable
+                        System.err.println(fileName + ": skipping level " + number + ", its data lies outside the pack");
+                        continue;
+                    }
+                    infos.add(new Info(number, name, waves, width, height, 0, null, null, null,
+                                       file, offset, length, true));
+                }
+            }
+        } else if (fileName.endsWith(BINARY_EXTENSION)) {
+            byte[] start = readStart(file, HEADER_CHUNK);
+            infos.add(readBinaryHeader(new ByteCursor(start, fileName)).at(file, 0, (int) file.length(), true));
+        } else if (fileName.endsWith(TEXT_EXTENSION)) {
+            infos.add(readTextInfo(file));
+        }
+        return infos;
+    }
+
+    // Reads chunks until the grid line, so only the metadata of a large level is read
+    private static Info readTextInfo(File file) throws IOException {
+        int size = HEADER_CHUNK;
+        while (true) {
+            byte[] start = readStart(file, size);
+            boolean partial = start.length == size; // There may be more after what was read
+            try {
+                return readTextHeader(new TextCursor(start, file.getName(), partial))
+                    .at(file, 0, (int) file.length(), false);
+            } catch (EOFException e) {
+                if (!partial) throw new IOException(file.getName() + ": no grid line");
+                size *= 4; // A very long header: read further
+            }
+        }
+    }
+
+    private static byte[] readStart(File file, int size) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.readNBytes(size);
+        }
+    }
+
+    /** Reads and parses one level (the whole file, or its slice of a pack). */
+    public static LevelCompiler load(Info info) throws IOException {
+        byte[] data = new byte[info.length];
+        try (RandomAccessFile file = new RandomAccessFile(info.file, "r")) {
+            file.seek(info.offset);
+            file.readFully(data);
+        }
+        return info.binary ? parseBinary(data, info.getSource()) : parseText(data, info.getSource());
+    }
+
+    // ----- Text -----
+
+    public static LevelCompiler parseText(byte[] data, String source) throws IOException {
+        TextCursor cursor = new TextCursor(data, source, false);
+        Info header = readTextHeader(cursor);
+        LevelCompiler level = new LevelCompiler(header.name, cursor.readGrid(header.width, header.height),
+                                                header.waves, header.spawnInterval, header.backgroundColor,
+                                                header.pathColor, header.backgroundAssetKey);
+        String[] line;
+        while ((line = cursor.readLine()) != null) {
+            if (line.length == 4 && line[0].equals("obstacle")) {
+                level.addObstacle(cursor.toInt(line[1]), cursor.toInt(line[2]), line[3]);
+            } else if (line.length == 4 && line[0].equals("decoration")) {
+                level.addDecorationAtGrid(cursor.toInt(line[1]), cursor.toInt(line[2]), line[3]);
+            } else {
+                throw cursor.error("expected obstacle or decoration");
+            }
+        }
+        return level;
+    }
+
+    // Metadata lines up to and including "grid W H"; the cursor is left at the first row
+    private static Info readTextHeader(TextCursor cursor) throws IOException {
+        int number = -1;
+        String name = null;
+        int waves = 5;
+        int spawnInterval = 60;
+        Color backgroundColor = new Color(90, 200, 90);
+        Color pathColor = new Color(150, 120, 80);
+        String backgroundAssetKey = null;
+        String[] line;
+        while ((line = cursor.readLine()) != null) {
+            String key = line[0];
+            if (key.equals("grid")) {
+                if (line.length != 3) throw cursor.error("expected grid WIDTH HEIGHT");
+                if (number < 0) throw cursor.error("no level number");
+                return new Info(number, name != null ? name : "Level " + number, waves,
+                                cursor.toInt(line[1]), cursor.toInt(line[2]), spawnInterval,
+                                backgroundColor, pathColor, backgroundAssetKey, null, 0, 0, false);
+            }
+            if (line.length < 2) throw cursor.error("no value for " + key);
+            switch (key) {
+                case "number": number = cursor.toInt(line[1]); break;
+                case "name": name = cursor.rest(); break;
+                case "waves": waves = cursor.toInt(line[1]); break;
+                case "interval": spawnInterval = cursor.toInt(line[1]); break;
+                case "background-color": backgroundColor = cursor.toColor(line[1]); break;
+                case "path-color": pathColor = cursor.toColor(line[1]); break;
+                case "background-asset": backgroundAssetKey = line[1]; break;
+                default: throw cursor.error("unknown setting " + key);
+            }
+        }
+        if (cursor.partial) throw new EOFException(cursor.source); // Read further
+        throw cursor.error("no grid line");
+    }
+
+    /** Parses a grid given as text (rows on lines, cells separated by spaces), e.g. the built-in levels. */
+    static int[][] parseGrid(String text) {
+        List<int[]> rows = new ArrayList<>();
+        int[] row = new int[32];
+        int count = 0;
+        int value = -1; // Cell being read, -1 between cells
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char c = i < n ? text.charAt(i) : '\n';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                continue;
+            }
+            if (value >= 0) {
+                if (count == row.length) row = Arrays.copyOf(row, count * 2);
+                row[count++] = value;
+                value = -1;
+            }
+            if (c == '\n' && count > 0) {
+                rows.add(Arrays.copyOf(row, count));
+                count = 0;
+            } else if (c != '\n' && c != ' ' && c != '\t' && c != '\r') {
+                throw new IllegalArgumentException("Unexpected '" + c + "' in grid");
+            }
+        }
+        return rows.toArray(new int[0][]);
+    }
+
+    // Lines of a text level; the grid rows are read digit by digit
+    private static class TextCursor {
+        final byte[] data;
+        final String source;
+        final boolean partial; // Only the start of the file: a line cut off at the end is not complete
+        int pos;
+        int lineNumber;
+        int lineStart;
+
+        TextCursor(byte[] data, String source, boolean partial) {
+            this.data = data;
+            this.source = source;
+            this.partial = partial;
+        }
+
+        // The next line that is not blank or a comment, split on whitespace; null at the end
+        String[] readLine() throws EOFException {
+            while (pos < data.length) {
+                lineStart = pos;
+                lineNumber++;
+                int end = pos;
+                while (end < data.length && data[end] != '\n') end++;
+                boolean complete = end < data.length;
+                if (!complete && partial) throw new EOFException(source); // Read further
+                String line = new String(data, pos, end - pos, StandardCharsets.UTF_8).trim();
+                pos = complete ? end + 1 : end;
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                return line.split("\\s+");
+            }
+            return null;
+        }
+
+        // Everything after the key on the current line (names may contain spaces)
+        String rest() {
+            int end = lineStart;
+            while (end < data.length && data[end] != '\n') end++;
+            String line = new String(data, lineStart, end - lineStart, StandardCharsets.UTF_8).trim();
+            return line.substring(line.indexOf(' ') + 1).trim();
+        }
+
+        int[][] readGrid(int width, int height) throws IOException {
+            if (width <= 0 || height <= 0 || width > LevelCompiler.MAX_SIZE || height > LevelCompiler.MAX_SIZE) {
+                throw error("grid size " + width + "x" + height + " (at most "
+                            + LevelCompiler.MAX_SIZE + " a side)");
+            }
+            int[][] grid = new int[height][width];
+            for (int y = 0; y < height; y++) {
+                lineNumber++;
+                int[] row = grid[y];
+                int x = 0;
+                int b = 0;
+                while (pos < data.length && (b = data[pos++]) != '\n') {
+                    if (b >= '0' && b <= '9') {
+                        if (x == width) throw error("more than " + width + " cells in grid row " + y);
+                        row[x++] = b - '0';
+                    } else if (b != ' ' && b != '\t' && b != '\r' && b != ',') {
+                        throw error("unexpected '" + (char) b + "' in grid row " + y);
+                    }
+                }
+                if (x < width) throw error("only " + x + " of " + width + " cells in grid row " + y);
+            }
+            return grid;
+        }
+
+        int toInt(String value) throws IOException {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw error("not a number: " + value);
+            }
+        }
+
+        Color toColor(String value) throws IOException {
+            try {
+                return new Color(Integer.parseInt(value, 16));
+            } catch (NumberFormatException e) {
+                throw error("not an RGB colour (rrggbb): " + value);
+            }
+        }
+
+        IOException error(String message) {
+            return new IOException(source + " line " + lineNumber + ": " + message);
+        }
+    }
+
+    // ----- Binary -----
+
+    public static LevelCompiler parseBinary(byte[] data, String source) throws IOException {
+        ByteCursor cursor = new ByteCursor(data, source);
+        Info header = readBinaryHeader(cursor);
+        int width = header.width;
+        int height = header.height;
+        int[][] grid = new int[height][width];
+        cursor.require((width * height + 3) / 4);
+        int bit = 0;
+        for (int y = 0; y < height; y++) {
+            int[] row = grid[y];
+            for (int x = 0; x < width; x++) {
+                row[x] = (data[cursor.pos] >> bit) & 3;
+                bit += 2;
+                if (bit == 8) {
+                    bit = 0;
+                    cursor.pos++;
+                }
+            }
+        }
+        if (bit != 0) cursor.pos++;
+
+        LevelCompiler level = new LevelCompiler(header.name, grid, header.waves, header.spawnInterval,
+                                                header.backgroundColor, header.pathColor, header.backgroundAssetKey);
+        for (int i = cursor.readInt(); i > 0; i--) {
+            level.addObstacle(cursor.readShort(), cursor.readShort(), cursor.readString());
+        }
+        for (int i = cursor.readInt(); i > 0; i--) {
+            level.addDecoration(cursor.readInt(), cursor.readInt(), cursor.readString());
+        }
+        return level;
+    }
+
+    private static Info readBinaryHeader(ByteCursor cursor) throws IOException {
+        if (cursor.readInt() != LEVEL_MAGIC) throw cursor.error("not a binary level");
+        int version = cursor.readShort();
+        if (version != VERSION) throw cursor.error("unsupported binary level version " + version);
+        int number = cursor.readInt();
+        String name = cursor.readString();
+        int waves = cursor.readInt();
+        int spawnInterval = cursor.readInt();
+        Color backgroundColor = new Color(cursor.readInt());
+        Color pathColor = new Color(cursor.readInt());
+        String backgroundAssetKey = cursor.readString();
+        int width = cursor.readShort();
+        int height = cursor.readShort();
+        if (width <= 0 || height <= 0 || width > LevelCompiler.MAX_SIZE || height > LevelCompiler.MAX_SIZE) {
+            throw cursor.error("grid size " + width + "x" + height);
+        }
+        return new Info(number, name, waves, width, height, spawnInterval, backgroundColor, pathColor,
+                        backgroundAssetKey.isEmpty() ? null : backgroundAssetKey, null, 0, 0, true);
+    }
+
+    /** The binary form of a level description. */
+    public static byte[] toBinary(int number, LevelCompiler level) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int[][] grid = level.getGrid();
+            int width = grid[0].length;
+            int height = grid.length;
+            out.writeInt(LEVEL_MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(number);
+            writeString(out, level.getName());
+            out.writeInt(level.getWaves());
+            out.writeInt(level.getSpawnInterval());
+            out.writeInt(level.getBackgroundColor().getRGB() & 0xFFFFFF);
+            out.writeInt(level.getPathColor().getRGB() & 0xFFFFFF);
+            writeString(out, level.getBackgroundAssetKey() != null ? level.getBackgroundAssetKey() : "");
+            out.writeShort(width);
+            out.writeShort(height);
+
+            int packed = 0;
+            int bit = 0;
+            for (int[] row : grid) {
+                for (int cell : row) {
+                    packed |= (cell & 3) << bit;
+                    bit += 2;
+                    if (bit == 8) {
+                        out.writeByte(packed);
+                        packed = 0;
+                        bit = 0;
+                    }
+                }
+            }
+            if (bit != 0) out.writeByte(packed);
+
+            out.writeInt(level.getObstacles().size());
+            for (LevelData.Obstacle obs : level.getObstacles()) {
+                out.writeShort(obs.gridX);
+                out.writeShort(obs.gridY);
+                writeString(out, obs.assetKey);
+            }
+            out.writeInt(level.getDecorations().size());
+            for (LevelData.Decoration dec : level.getDecorations()) {
+                out.writeInt(dec.x);
+                out.writeInt(dec.y);
+                writeString(out, dec.assetKey);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the levels of the given level files (text or binary) into one
+     * pack, in the order given.
+     */
+    public static void writePack(File pack, List<File> levelFiles) throws IOException {
+        List<Info> infos = new ArrayList<>();
+        List<byte[]> bodies = new ArrayList<>();
+        for (File file : levelFiles) {
+            for (Info info : readInfos(file)) {
+                infos.add(info);
+                bodies.add(toBinary(info.number, load(info)));
+            }
+        }
+
+        // The index size decides where the first level starts
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        int offset = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            index.reset();
+            try (DataOutputStream out = new DataOutputStream(index)) {
+                out.writeInt(PACK_MAGIC);
+                out.writeShort(VERSION);
+                out.writeInt(infos.size());
+                int at = offset;
+                for (int i = 0; i < infos.size(); i++) {
+                    Info info = infos.get(i);
+                    out.writeInt(info.number);
+                    out.writeUTF(info.name);
+                    out.writeInt(info.waves);
+                    out.writeShort(info.width);
+                    out.writeShort(info.height);
+                    out.writeInt(at);
+                    out.writeInt(bodies.get(i).length);
+                    at += bodies.get(i).length;
+                }
+            }
+            offset = index.size();
+        }
+
+        File dir = pack.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pack))) {
+            index.writeTo(out);
+            for (byte[] body : bodies) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    // Big-endian reads straight from the array
+    private static class ByteCursor {
+        final byte[] data;
+        final String source;
+        int pos;
+
+        ByteCursor(byte[] data, String source) {
+            this.data = data;
+            this.source = source;
+        }
+
+        void require(int count) throws IOException {
+            if (pos + count > data.length) throw error("truncated");
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            int value = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                      | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            pos += 4;
+            return value;
+        }
+
+        int readShort() throws IOException {
+            require(2);
+            int value = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+            pos += 2;
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readShort();
+            require(length);
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        IOException error(String message) {
+            return new IOException(source + ": " + message);
+        }
+    }
+}
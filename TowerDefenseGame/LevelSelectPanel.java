@@ -4,9 +4,15 @@ import java.awt.event.*;
 
 /**
  * Level Selection Panel
+ * The built-in levels, plus the community levels of the levels/ folder
+ * (listed from LevelCatalog metadata; a level is only loaded when played).
  */
 public class LevelSelectPanel extends JPanel {
     private TowerDefenseGame game;
+    private JButton continueBtn;
+    private JLabel communityLabel;
+    private DefaultListModel<LevelFile.Info> communityLevels;
+    private JScrollPane communityScroll;
     
     public LevelSelectPanel(TowerDefenseGame game) {
         this.game = game;
@@ -60,11 +66,72 @@ public class LevelSelectPanel extends JPanel {
         });
         add(level3Btn);
         
+        // Continue button (only while the player has a saved game)
+        continueBtn = createStyledButton("CONTINUE", new Color(255, 152, 0));
+        continueBtn.setBounds(500, 460, 200, 50);
+        continueBtn.addActionListener(e -> game.continueGame());
+        continueBtn.setVisible(false);
+        add(continueBtn);
+        
         // Back button
         JButton backBtn = createStyledButton("BACK", new Color(128, 128, 128));
-        backBtn.setBounds(500, 480, 200, 50);
+        backBtn.setBounds(500, 530, 200, 50);
         backBtn.addActionListener(e -> game.showPanel("MENU"));
         add(backBtn);
+        
+        // Community levels (only shown when the levels/ folder has some)
+        communityLabel = new JLabel("COMMUNITY LEVELS", SwingConstants.CENTER);
+        communityLabel.setFont(new Font("Arial", Font.BOLD, 22));
+        communityLabel.setForeground(Color.WHITE);
+        communityLabel.setBounds(780, 180, 340, 30);
+        add(communityLabel);
+        
+        communityLevels = new DefaultListModel<>();
+        JList<LevelFile.Info> communityList = new JList<>(communityLevels);
+        communityList.setFont(new Font("Arial", Font.PLAIN, 16));
+        communityList.setBackground(new Color(0x2E, 0x5A, 0x2A));
+        communityList.setForeground(Color.WHITE);
+        communityList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        communityList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                LevelFile.Info info = (LevelFile.Info) value;
+                String text = String.format("%d. %s  (%dx%d, %d waves)",
+                                            info.number, info.name, info.width, info.height, info.waves);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        communityList.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                LevelFile.Info info = communityList.getSelectedValue();
+                if (e.getClickCount() == 2 && info != null) {
+                    if (!game.getAuthSystem().isLoggedIn()) {
+                        game.showPanel("LOGIN");
+                    } else {
+                        game.startGame(info.number);
+                    }
+                }
+            }
+        });
+        communityScroll = new JScrollPane(communityList);
+        communityScroll.setBounds(780, 220, 340, 310);
+        add(communityScroll);
+    }
+    
+    public void refresh() {
+        AuthSystem auth = game.getAuthSystem();
+        continueBtn.setVisible(auth.isLoggedIn() && GameSnapshot.fileFor(auth.getCurrentUser()).isFile());
+        
+        // Rescans only if files were added or removed
+        LevelCatalog catalog = LevelCatalog.getDefault();
+        catalog.refresh();
+        communityLevels.clear();
+        for (LevelFile.Info info : catalog.getInfos()) {
+            communityLevels.addElement(info);
+        }
+        communityLabel.setVisible(!communityLevels.isEmpty());
+        communityScroll.setVisible(!communityLevels.isEmpty());
     }
     
     private JButton createStyledButton(String text, Color bgColor) {
@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local Score Backend
+ * Scores kept in this folder: written through the background PersistenceWriter
+ * into the ScoreStore, and read from an in-memory ScoreIndex that is built on
+ * first use and kept current with the store (including other local processes).
+ *
+ * submit never takes a lock: the score is queued for the writer and for the
+ * index, and the next read adds it. A reload of the whole index tells from
+ * where each queued score was written whether its read already had it.
+ */
+public class LocalScoreBackend implements ScoreBackend {
+    private final ScoreStore store;
+    private final PersistenceWriter writer;
+    private final PersistenceWriter.Sink<Pending> sink;
+    private static final long REFRESH_INTERVAL_NANOS = 500_000_000L;
+
+    private final ScoreStore.Tail tail = new ScoreStore.Tail(); // How much of the score log the index has seen
+    private volatile ScoreIndex index; // In-memory leaderboard, loaded on first use
+    private volatile long lastRefresh;
+    private final ReentrantLock lock = new ReentrantLock(); // Held while the index is refreshed or added to
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>(); // Submitted, not in the index yet
+    private final List<Pending> unconfirmed = new ArrayList<>(); // In the index, not yet known to be in what the tail read
+
+    // A submitted score and, once written, where in the log its batch ended
+    private static class Pending {
+        final AuthSystem.ScoreEntry entry;
+        volatile long[] writtenAt;
+
+        Pending(AuthSystem.ScoreEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    public LocalScoreBackend(ScoreStore store, PersistenceWriter writer) {
+        this.store = store;
+        this.writer = writer;
+        this.sink = batch -> {
+            List<AuthSystem.ScoreEntry> entries = new ArrayList<>(batch.size());
+            for (Pending p : batch) entries.add(p.entry);
+            long[] position = store.appendAll(entries);
+            for (Pending p : batch) p.writtenAt = position;
+        };
+    }
+
+    @Override
+    public void submit(AuthSystem.ScoreEntry entry) {
+        Pending p = new Pending(entry);
+        pending.add(p); // Before the writer has it, so a reload sees every score it may have read
+        writer.submit(sink, p); // Written off the caller's thread, batched with any other queued scores
+    }
+
+    @Override
+    public List<AuthSystem.ScoreEntry> top(Integer level, int limit) {
+        return level == null ? getIndex().top(limit) : getIndex().top(level, limit);
+    }
+
+    @Override
+    public ScoreQuery.Page query(ScoreQuery query) {
+        return getIndex().query(query);
+    }
+
+    private ScoreIndex getIndex() {
+        // Reads in between refreshes don't touch the files at all
+        ScoreIndex current = index;
+        if (current != null && System.nanoTime() - lastRefresh < REFRESH_INTERVAL_NANOS) {
+            // Scores submitted here show up at once; if the lock is busy, the refresh holding it adds them
+            if (!pending.isEmpty() && lock.tryLock()) {
+                try {
+                    addPending(index);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return current;
+        }
+        if (current != null) {
+            // Someone else is already refreshing: keep answering from the current index meanwhile
+            if (!lock.tryLock()) return current;
+        } else {
+            lock.lock();
+        }
+        try {
+            return refreshIndex();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ScoreIndex refreshIndex() {
+        lastRefresh = System.nanoTime();
+        if (index != null) {
+            // Pick up scores saved by other game processes sharing this folder
+            List<AuthSystem.ScoreEntry> others = store.readTail(tail);
+            if (others != null) {
+                for (AuthSystem.ScoreEntry entry : others) index.add(entry);
+                addPending(index);
+                unconfirmed.removeIf(p -> p.writtenAt != null && tail.covers(p.writtenAt));
+                return index;
+            }
+            // More than one rotation behind: reload below
+        }
+        ScoreIndex rebuilt = new ScoreIndex(store.readAll(tail));
+        // Every score queued before the read is now written and knows where; the rest
+        // of this process's scores, written after the read or not at all, are added again
+        writer.flush();
+        pending.addAll(unconfirmed);
+        unconfirmed.clear();
+        for (Iterator<Pending> it = pending.iterator(); it.hasNext(); ) {
+            long[] writtenAt = it.next().writtenAt;
+            if (writtenAt != null && tail.covers(writtenAt)) it.remove();
+        }
+        addPending(rebuilt);
+        index = rebuilt;
+        return rebuilt;
+    }
+
+    // Call with the lock held
+    private void addPending(ScoreIndex target) {
+        Pending p;
+        while ((p = pending.poll()) != null) {
+            target.add(p.entry);
+            unconfirmed.add(p);
+        }
+    }
+}
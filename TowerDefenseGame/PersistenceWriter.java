@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistence Writer
+ * Single background thread that performs all score and user file writes, so
+ * the EDT never waits on the disk.
+ *
+ * Work items go into a bounded queue (submit blocks only when it is full).
+ * The writer takes whatever has queued up, up to MAX_BATCH items, and hands
+ * them to each Sink once, so several records share a single open/flush
+ * (group commit). A shutdown hook drains the queue before the JVM exits.
+ *
+ * A batch that fails is kept, not dropped: its records are retried ahead of
+ * any newer records for the same sink, waiting longer after each failure,
+ * and counted in the metrics until they are written.
+ */
+public class PersistenceWriter {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_BATCH = 64;
+    private static final long RETRY_MIN_MILLIS = 500;
+    private static final long RETRY_MAX_MILLIS = 30_000;
+
+    /** Something that can persist a batch of records of one kind in one go. */
+    public interface Sink<T> {
+        void writeBatch(List<T> records) throws Exception;
+    }
+
+    private static class Item<T> {
+        final Sink<T> sink;
+        final T record;
+        final CountDownLatch done;
+
+        Item(Sink<T> sink, T record, CountDownLatch done) {
+            this.sink = sink;
+            this.record = record;
+            this.done = done;
+        }
+    }
+
+    private final BlockingQueue<Item<?>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Records whose write failed, per sink in submission order (guarded by this)
+    @SuppressWarnings("rawtypes")
+    private final Map<Sink, List<Object>> failed = new LinkedHashMap<>();
+    private long retryDelayMillis; // 0 while nothing has failed
+    private long nextRetryNanos;
+
+    // Metrics
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+    private final AtomicLong failures = new AtomicLong();
+    private volatile int unwritten; // Records kept after a failed write
+    private volatile String lastFailure;
+
+    public PersistenceWriter() {
+        thread = new Thread(this::run, "persistence-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "persistence-flush"));
+    }
+
+    /** Queues a record for the sink; returns immediately unless the queue is full. */
+    public <T> void submit(Sink<T> sink, T record) {
+        enqueue(new Item<>(sink, record, null));
+    }
+
+    /** Blocks until everything queued so far has been written (or has failed and is kept for a retry). */
+    public void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        enqueue(new Item<Object>(null, null, done));
+        try {
+            done.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Item<?> item) {
+        if (!running || Thread.currentThread() == thread) {
+            // After shutdown (or from inside a sink) write synchronously
+            writeItems(Collections.singletonList(item), false);
+            return;
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Item<?>> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Item<?> first = queue.poll(pollMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+                if (!batch.isEmpty() || isRetryDue()) writeItems(batch, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private synchronized long pollMillis() {
+        if (failed.isEmpty()) return 200;
+        return Math.max(1, Math.min(200, (nextRetryNanos - System.nanoTime()) / 1_000_000));
+    }
+
+    private synchronized boolean isRetryDue() {
+        return !failed.isEmpty() && System.nanoTime() >= nextRetryNanos;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private synchronized void writeItems(List<Item<?>> items, boolean retryNow) {
+        long start = System.nanoTime();
+        int written = 0;
+
+        // Group records per sink, keeping submission order inside each sink; failed records go first
+        Map<Sink, List<Object>> bySink = new LinkedHashMap<>();
+        if (retryNow || isRetryDue()) {
+            bySink.putAll(failed);
+            failed.clear();
+        }
+        for (Item<?> item : items) {
+            if (item.sink == null) continue;
+            List<Object> held = failed.get(item.sink);
+            if (held != null) {
+                held.add(item.record); // Waits behind the failed records of its sink
+            } else {
+                bySink.computeIfAbsent(item.sink, s -> new ArrayList<>()).add(item.record);
+            }
+        }
+        boolean failedNow = false;
+        for (Map.Entry<Sink, List<Object>> entry : bySink.entrySet()) {
+            try {
+                entry.getKey().writeBatch(entry.getValue());
+                written += entry.getValue().size();
+            } catch (Exception e) {
+                failed.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+                failures.incrementAndGet();
+                if (retryDelayMillis == 0) e.printStackTrace(); // Once per run of failures
+                lastFailure = e.toString();
+                failedNow = true;
+            }
+        }
+        updateRetry(failedNow);
+        for (Item<?> item : items) {
+            if (item.done != null) item.done.countDown();
+        }
+
+        if (written > 0) {
+            long elapsed = System.nanoTime() - start;
+            flushes.incrementAndGet();
+            recordsWritten.addAndGet(written);
+            totalFlushNanos.addAndGet(elapsed);
+            lastFlushNanos = elapsed;
+            if (elapsed > maxFlushNanos) maxFlushNanos = elapsed;
+        }
+    }
+
+    private void updateRetry(boolean failedNow) {
+        int count = 0;
+        for (List<Object> records : failed.values()) count += records.size();
+        unwritten = count;
+        if (failedNow) {
+            retryDelayMillis = retryDelayMillis == 0 ? RETRY_MIN_MILLIS : Math.min(retryDelayMillis * 2, RETRY_MAX_MILLIS);
+            nextRetryNanos = System.nanoTime() + retryDelayMillis * 1_000_000;
+            System.err.println("Persistence: " + count + " records not written, retrying in " + retryDelayMillis + " ms");
+        } else if (failed.isEmpty() && retryDelayMillis != 0) {
+            retryDelayMillis = 0;
+            System.err.println("Persistence: failed records written after all");
+        }
+    }
+
+    /** Stops accepting queued work and writes whatever is still pending. */
+    public void shutdown() {
+        if (!running) return;
+        // Not interrupted: an interrupt would close the FileChannels the sinks are using
+        flush();
+        running = false;
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // A last try for records that failed earlier
+        writeItems(Collections.emptyList(), true);
+        if (unwritten > 0) {
+            System.err.println("Persistence: " + unwritten + " records could not be written: " + lastFailure);
+        }
+    }
+
+    // ----- Metrics -----
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten.get();
+    }
+
+    public double getLastFlushMillis() {
+        return lastFlushNanos / 1e6;
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+
+    /** Records kept after a failed write, waiting for a retry. */
+    public int getUnwrittenCount() {
+        return unwritten;
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /** The last write error, or null if nothing has failed. */
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    public double getAverageFlushMillis() {
+        long count = flushes.get();
+        return count == 0 ? 0 : totalFlushNanos.get() / 1e6 / count;
+    }
+
+    public String describeMetrics() {
+        return String.format("queue=%d flushes=%d records=%d unwritten=%d failures=%d flush ms last=%.2f avg=%.2f max=%.2f",
+            getQueueDepth(), getFlushCount(), getRecordsWritten(), getUnwrittenCount(), getFailureCount(),
+            getLastFlushMillis(), getAverageFlushMillis(), getMaxFlushMillis());
+    }
+}
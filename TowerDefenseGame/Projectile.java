@@ -1,3 +1,8 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
 /**
  * Projectile Class
  * Represents a bullet fired from a tower
@@ -8,7 +13,7 @@ public class Projectile {
     private int damage;
     private double speed;
     private boolean active;
-    private double angle;
+    private final double aimX, aimY; // Initial direction; the angle is only needed for drawing
     
     public Projectile(double x, double y, Enemy target, int damage) {
         this.x = x;
@@ -17,7 +22,8 @@ public class Projectile {
         this.damage = damage;
         this.speed = 8.0;
         this.active = true;
-        this.angle = Math.atan2(target.getY() - y, target.getX() - x);
+        this.aimX = target.getX() - x;
+        this.aimY = target.getY() - y;
     }
     
     public boolean update() {
@@ -44,10 +50,42 @@ public class Projectile {
         return true;
     }
     
+    // Restores a projectile in flight from a snapshot
+    private Projectile(double x, double y, Enemy target, int damage, double aimX, double aimY) {
+        this.x = x;
+        this.y = y;
+        this.target = target;
+        this.damage = damage;
+        this.speed = 8.0;
+        this.active = true;
+        this.aimX = aimX;
+        this.aimY = aimY;
+    }
+    
+    // ----- Snapshots -----
+    
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeDouble(x);
+        out.writeDouble(y);
+        out.writeInt(target.getId());
+        out.writeInt(damage);
+        out.writeDouble(aimX);
+        out.writeDouble(aimY);
+    }
+    
+    static Projectile readState(DataInputStream in, Map<Integer, Enemy> enemies) throws IOException {
+        double x = in.readDouble();
+        double y = in.readDouble();
+        Enemy target = enemies.get(in.readInt());
+        if (target == null) throw new IOException("Snapshot projectile without its target");
+        return new Projectile(x, y, target, in.readInt(), in.readDouble(), in.readDouble());
+    }
+    
+    Enemy getTarget() { return target; }
     public boolean isActive() { return active; }
     public double getX() { return x; }
     public double getY() { return y; }
-    public double getAngle() { return angle; }
+    public double getAngle() { return Math.atan2(aimY, aimX); }
     public int getDamage() { return damage; }
 }
 
@@ -0,0 +1,200 @@
+import java.io.*;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remote Score Backend
+ * Scores kept by a shared LeaderboardServer.
+ *
+ * Submitted scores are queued and sent in batches by a background thread
+ * (one POST per batch), so finishing a game never waits on the network.
+ * A batch keeps its id across retries, so the server stores it once even
+ * when an answer is lost; a batch the server rejects (4xx) is logged and
+ * dropped rather than blocking the scores behind it.
+ *
+ * Top-N reads are cached for a short time and include scores still waiting
+ * to be sent, so a player sees their own score right away. A failed read
+ * logs and returns an empty result.
+ */
+public class RemoteScoreBackend implements ScoreBackend {
+    private static final int BATCH_SIZE = 32;
+    private static final long BATCH_DELAY_MILLIS = 200;
+    private static final long RETRY_DELAY_MILLIS = 2000;
+    private static final long CACHE_TTL_NANOS = 2_000_000_000L;
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private final List<AuthSystem.ScoreEntry> pending = new ArrayList<>(); // Guarded by itself
+    private List<AuthSystem.ScoreEntry> sending; // Head of pending being sent; same batch until answered
+    private String sendingId;
+    private final Map<String, CachedTop> topCache = new ConcurrentHashMap<>();
+
+    private static class CachedTop {
+        final List<AuthSystem.ScoreEntry> entries;
+        final long loadedAt;
+
+        CachedTop(List<AuthSystem.ScoreEntry> entries, long loadedAt) {
+            this.entries = entries;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    public RemoteScoreBackend(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1) // The JDK server has no HTTP/2; skip the upgrade attempt
+            .connectTimeout(Duration.ofSeconds(3))
+            .build();
+        Thread sender = new Thread(this::sendLoop, "leaderboard-sender");
+        sender.setDaemon(true);
+        sender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::sendPending, "leaderboard-sender-shutdown"));
+    }
+
+    @Override
+    public void submit(AuthSystem.ScoreEntry entry) {
+        synchronized (pending) {
+            pending.add(entry);
+            if (pending.size() >= BATCH_SIZE) pending.notifyAll();
+        }
+    }
+
+    @Override
+    public List<AuthSystem.ScoreEntry> top(Integer level, int limit) {
+        String key = level + ":" + limit;
+        CachedTop cached = topCache.get(key);
+        if (cached == null || System.nanoTime() - cached.loadedAt > CACHE_TTL_NANOS) {
+            try {
+                String query = "/top?limit=" + limit + (level != null ? "&level=" + level : "");
+                cached = new CachedTop(readLines(get(query).body()), System.nanoTime());
+                topCache.put(key, cached);
+            } catch (Exception e) {
+                System.err.println("Leaderboard unavailable: " + e);
+                if (cached == null) cached = new CachedTop(new ArrayList<>(), 0);
+            }
+        }
+        return withPending(cached.entries, level, limit);
+    }
+
+    @Override
+    public ScoreQuery.Page query(ScoreQuery q) {
+        StringBuilder url = new StringBuilder("/query?order=").append(q.order).append("&size=").append(q.pageSize);
+        appendParam(url, "user", q.username);
+        appendParam(url, "level", q.level);
+        appendParam(url, "from", q.fromDate);
+        appendParam(url, "to", q.toDate);
+        appendParam(url, "cursor", q.cursor);
+        try {
+            HttpResponse<String> response = get(url.toString());
+            String next = response.headers().firstValue("X-Next-Cursor").orElse(null);
+            return new ScoreQuery.Page(readLines(response.body()), next);
+        } catch (Exception e) {
+            System.err.println("Leaderboard unavailable: " + e);
+            return ScoreQuery.Page.empty();
+        }
+    }
+
+    // ----- Sending -----
+
+    private void sendLoop() {
+        while (true) {
+            try {
+                synchronized (pending) {
+                    if (pending.size() < BATCH_SIZE) pending.wait(BATCH_DELAY_MILLIS);
+                }
+                if (!sendPending()) Thread.sleep(RETRY_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /** Posts everything queued; returns false (keeping the scores queued) if the server didn't take them. */
+    private synchronized boolean sendPending() {
+        List<AuthSystem.ScoreEntry> batch;
+        synchronized (pending) {
+            if (sending == null) {
+                // A new batch; a retried one is sent unchanged, under the same id
+                if (pending.isEmpty()) return true;
+                sending = new ArrayList<>(pending);
+                sendingId = UUID.randomUUID().toString();
+            }
+            batch = sending;
+        }
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/scores"))
+                .timeout(Duration.ofSeconds(5))
+                .header("Content-Type", LeaderboardServer.CONTENT_TYPE)
+                .header(LeaderboardServer.BATCH_ID_HEADER, sendingId)
+                .POST(HttpRequest.BodyPublishers.ofString(LeaderboardServer.toLines(batch)))
+                .build();
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            int status = response.statusCode();
+            if (status >= 400 && status < 500) {
+                // Sending it again won't help
+                System.err.println("Leaderboard rejected " + batch.size() + " scores (HTTP " + status + "), dropping them: "
+                                   + LeaderboardServer.toLines(batch).trim());
+            } else if (status != 204) {
+                throw new IOException("HTTP " + status);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not send scores to leaderboard: " + e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        synchronized (pending) {
+            pending.subList(0, batch.size()).clear();
+            sending = null;
+        }
+        topCache.clear(); // Our own scores are on the server now
+        return true;
+    }
+
+    // ----- Reading -----
+
+    private HttpResponse<String> get(String pathAndQuery) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + pathAndQuery))
+            .timeout(Duration.ofSeconds(5))
+            .GET()
+            .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) throw new IOException("HTTP " + response.statusCode());
+        return response;
+    }
+
+    private static List<AuthSystem.ScoreEntry> readLines(String body) {
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            if (!line.isEmpty()) entries.add(ScoreJsonReader.readLine(line));
+        }
+        return entries;
+    }
+
+    /** Server result with not-yet-sent scores merged in. */
+    private List<AuthSystem.ScoreEntry> withPending(List<AuthSystem.ScoreEntry> top, Integer level, int limit) {
+        List<AuthSystem.ScoreEntry> merged = new ArrayList<>(top);
+        synchronized (pending) {
+            if (pending.isEmpty()) return merged;
+            for (AuthSystem.ScoreEntry entry : pending) {
+                if (level == null || entry.level == level) merged.add(entry);
+            }
+        }
+        merged.sort(ScoreStore.BY_SCORE); // Stable, so server order is kept for equal scores
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    private static void appendParam(StringBuilder url, String name, Object value) {
+        if (value == null) return;
+        url.append('&').append(name).append('=')
+           .append(URLEncoder.encode(value.toString(), StandardCharsets.UTF_8));
+    }
+}
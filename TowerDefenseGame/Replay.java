@@ -0,0 +1,430 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Replay
+ * A recorded game: the level, the seed and every player command stamped
+ * with the simulation tick it happened before. GameSimulation is
+ * deterministic, so running the commands again on their ticks reproduces
+ * the game exactly, either on screen at real speed or headless as fast as
+ * the simulation runs.
+ *
+ * File layout (big-endian, replays/*.tdr next to the saved score):
+ *   header    magic "TDRP", version, level, seed, flags (version 2+; 1 = mazing),
+ *             recorded-at millis, username (UTF)
+ *   commands  tick delta (varint), opcode byte, operands (tower type a byte;
+ *             grid coordinates varints from version 3, bytes before)
+ *   footer    END opcode, ticks played, score, kills, health, money spent, outcome
+ */
+public class Replay {
+    private static final int MAGIC = 0x54445250; // "TDRP"
+    private static final int VERSION = 3; // 2: flags byte after the seed; 3: coordinates as varints (large levels)
+    private static final int FLAG_MAZING = 1;
+    private static final String DIRECTORY = "replays";
+    private static final String EXTENSION = ".tdr";
+
+    // Opcodes; PLACE and SELL change the game, the others only what the player sees
+    public static final byte PLACE = 1;        // tower type, gridX, gridY
+    public static final byte SELL = 2;         // gridX, gridY
+    public static final byte PAUSE = 3;        // toggles pause
+    public static final byte SELECT_TOWER = 4; // tower type
+    public static final byte SELECT_SELL = 5;
+    private static final byte END = 0;
+
+    // Outcomes
+    public static final byte LEFT = 0;
+    public static final byte GAME_OVER = 1;
+    public static final byte LEVEL_COMPLETE = 2;
+
+    public final String username;
+    public final int level;
+    public final long seed;
+    public final boolean mazing;
+    public final long recordedAt;
+    private final List<Command> commands;
+
+    // Footer: how the recorded game ended
+    public final int ticks;
+    public final int score;
+    public final int enemiesKilled;
+    public final int health;
+    public final int moneySpent;
+    public final byte outcome;
+
+    public static class Command {
+        public final int tick;
+        public final byte op;
+        public final int towerType; // Tower.TowerType ordinal, or -1
+        public final int gridX;
+        public final int gridY;
+
+        public Command(int tick, byte op, int towerType, int gridX, int gridY) {
+            this.tick = tick;
+            this.op = op;
+            this.towerType = towerType;
+            this.gridX = gridX;
+            this.gridY = gridY;
+        }
+    }
+
+    private Replay(String username, int level, long seed, boolean mazing, long recordedAt, List<Command> commands,
+                   int ticks, int score, int enemiesKilled, int health, int moneySpent, byte outcome) {
+        this.username = username;
+        this.level = level;
+        this.seed = seed;
+        this.mazing = mazing;
+        this.recordedAt = recordedAt;
+        this.commands = commands;
+        this.ticks = ticks;
+        this.score = score;
+        this.enemiesKilled = enemiesKilled;
+        this.health = health;
+        this.moneySpent = moneySpent;
+        this.outcome = outcome;
+    }
+
+    public List<Command> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    /** Collects commands while a game is played. */
+    public static class Recorder {
+        private final String username;
+        private final int level;
+        private final long seed;
+        private final boolean mazing;
+        private final long startedAt;
+        private final List<Command> commands = new ArrayList<>();
+
+        public Recorder(String username, int level, long seed) {
+            this(username, level, seed, false);
+        }
+
+        public Recorder(String username, int level, long seed, boolean mazing) {
+            this(username, level, seed, mazing, System.currentTimeMillis());
+        }
+
+        private Recorder(String username, int level, long seed, boolean mazing, long startedAt) {
+            this.username = username;
+            this.level = level;
+            this.seed = seed;
+            this.mazing = mazing;
+            this.startedAt = startedAt;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void record(int tick, byte op, int towerType, int gridX, int gridY) {
+            commands.add(new Command(tick, op, towerType, gridX, gridY));
+        }
+
+        public void record(int tick, byte op) {
+            record(tick, op, -1, 0, 0);
+        }
+
+        /** Saves the recording so far, e.g. inside a GameSnapshot, to carry on with later. */
+        void writeState(DataOutputStream out) throws IOException {
+            out.writeUTF(username);
+            out.writeInt(level);
+            out.writeLong(seed);
+            out.writeBoolean(mazing);
+            out.writeLong(startedAt);
+            writeCommands(out, commands);
+        }
+
+        static Recorder readState(DataInputStream in) throws IOException {
+            Recorder recorder = new Recorder(in.readUTF(), in.readInt(), in.readLong(), in.readBoolean(), in.readLong());
+            recorder.commands.addAll(readCommands(in, VERSION));
+            return recorder;
+        }
+
+        /** The finished recording, with the simulation's final state as footer. */
+        public Replay finish(GameSimulation sim, byte outcome) {
+            return new Replay(username, level, seed, mazing, startedAt, new ArrayList<>(commands),
+                              sim.getTick(), sim.calculateScore(), sim.getEnemiesKilled(),
+                              sim.getHealth(), sim.getMoneySpent(), outcome);
+        }
+    }
+
+    // ----- Playback -----
+
+    public GameSimulation newSimulation() {
+        return new GameSimulation(level, seed, mazing);
+    }
+
+    /** Applies a command to the simulation (the display-only ones do nothing here). */
+    public static void apply(GameSimulation sim, Command command) {
+        if (command.op == PLACE) {
+            sim.placeTower(Tower.TowerType.values()[command.towerType], command.gridX, command.gridY);
+        } else if (command.op == SELL) {
+            sim.sellTower(command.gridX, command.gridY);
+        }
+    }
+
+    /** Plays the whole recording as fast as possible and returns the final simulation. */
+    public GameSimulation runHeadless() {
+        return runHeadless(newSimulation());
+    }
+
+    /** Plays the rest of the recording on a simulation part-way through it, e.g. one restored from a snapshot. */
+    public GameSimulation runHeadless(GameSimulation sim) {
+        int next = 0;
+        while (next < commands.size() && commands.get(next).tick < sim.getTick()) {
+            next++; // Already applied before the simulation got here
+        }
+        while (sim.getTick() < ticks && !sim.isOver()) {
+            while (next < commands.size() && commands.get(next).tick <= sim.getTick()) {
+                apply(sim, commands.get(next++));
+            }
+            sim.tick();
+        }
+        // Commands given on the last tick (e.g. a tower bought just before leaving)
+        while (next < commands.size()) {
+            apply(sim, commands.get(next++));
+        }
+        return sim;
+    }
+
+    /** Whether a played-back simulation ended exactly as recorded. */
+    public boolean matches(GameSimulation sim) {
+        return sim.getTick() == ticks
+            && sim.calculateScore() == score
+            && sim.getEnemiesKilled() == enemiesKilled
+            && sim.getHealth() == health
+            && sim.getMoneySpent() == moneySpent;
+    }
+
+    // ----- Files -----
+
+    public static File directory() {
+        return new File(DIRECTORY);
+    }
+
+    /**
+     * The replay of a saved score, e.g. replays/alice_L2_2026-01-31_18-05-09.tdr,
+     * or null if none was saved. Scores of one player in the same second get
+     * numbered files (..._2.tdr); the one whose recorded result is this score
+     * is returned.
+     */
+    public static File find(AuthSystem.ScoreEntry entry) {
+        return find(directory(), entry);
+    }
+
+    public static File find(File directory, AuthSystem.ScoreEntry entry) {
+        File base = fileFor(directory, entry);
+        List<File> candidates = new ArrayList<>();
+        for (File file = base; file.isFile(); file = numbered(base, candidates.size() + 1)) {
+            candidates.add(file);
+        }
+        // Named before usernames were encoded; such a name may belong to another player
+        File legacy = new File(directory, entry.username.replaceAll("[^A-Za-z0-9_-]", "_")
+            + "_L" + entry.level + "_" + entry.date + "_" + entry.time.replace(':', '-') + EXTENSION);
+        boolean hasLegacy = !legacy.equals(base) && legacy.isFile();
+        if (!hasLegacy && candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+        if (hasLegacy) candidates.add(legacy);
+        for (File file : candidates) {
+            try {
+                if (read(file).isFor(entry)) return file;
+            } catch (IOException e) {
+                // Damaged: not the one
+            }
+        }
+        // None ends with this score (e.g. a tampered one): the verifier still checks the first
+        return candidates.get(0).equals(legacy) ? null : candidates.get(0);
+    }
+
+    private boolean isFor(AuthSystem.ScoreEntry entry) {
+        return username.equals(entry.username) && level == entry.level && score == entry.score
+            && enemiesKilled == entry.enemiesKilled && health == entry.health && moneySpent == entry.moneySpent;
+    }
+
+    private static File fileFor(File directory, AuthSystem.ScoreEntry entry) {
+        String name = fileName(entry.username) + "_L" + entry.level + "_" + entry.date + "_" + entry.time.replace(':', '-');
+        return new File(directory, name + EXTENSION);
+    }
+
+    private static File numbered(File base, int n) {
+        String name = base.getName();
+        return new File(base.getParentFile(), name.substring(0, name.length() - EXTENSION.length()) + "_" + n + EXTENSION);
+    }
+
+    /**
+     * A username as part of a file name: lowercase letters, digits and '-' as
+     * they are, every other UTF-8 byte as '_' and two uppercase hex digits.
+     * Two usernames never share a name, even on a case-insensitive file system.
+     */
+    static String fileName(String username) {
+        StringBuilder name = new StringBuilder(username.length());
+        for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+            if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '-') {
+                name.append((char) b);
+            } else {
+                name.append('_').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+            }
+        }
+        return name.toString();
+    }
+
+    /** Writes this as the replay of a saved score, under the first free name for it; returns the file. */
+    public File writeFor(File directory, AuthSystem.ScoreEntry entry) throws IOException {
+        directory.mkdirs();
+        File base = fileFor(directory, entry);
+        File file = base;
+        // createNewFile claims a name atomically, also against other game processes
+        for (int n = 2; !file.createNewFile(); n++) {
+            file = numbered(base, n);
+        }
+        write(file);
+        return file;
+    }
+
+    public void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(level);
+            out.writeLong(seed);
+            out.writeByte(mazing ? FLAG_MAZING : 0);
+            out.writeLong(recordedAt);
+            out.writeUTF(username);
+
+            writeCommands(out, commands);
+
+            out.writeInt(ticks);
+            out.writeInt(score);
+            out.writeInt(enemiesKilled);
+            out.writeInt(health);
+            out.writeInt(moneySpent);
+            out.writeByte(outcome);
+        }
+    }
+
+    public static Replay read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a replay file: " + file);
+            int version = in.readShort();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported replay version " + version);
+            int level = in.readInt();
+            long seed = in.readLong();
+            int flags = version >= 2 ? in.readUnsignedByte() : 0;
+            long recordedAt = in.readLong();
+            String username = in.readUTF();
+
+            List<Command> commands = readCommands(in, version);
+            return new Replay(username, level, seed, (flags & FLAG_MAZING) != 0, recordedAt, commands,
+                              in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readByte());
+        }
+    }
+
+    /** Saves this as the replay of the score on the background writer (GamePanel calls this on the EDT). */
+    public void save(PersistenceWriter writer, AuthSystem.ScoreEntry entry) {
+        writer.submit(FILE_SINK, new PendingFile(this, entry));
+    }
+
+    private static class PendingFile {
+        final Replay replay;
+        final AuthSystem.ScoreEntry entry;
+
+        PendingFile(Replay replay, AuthSystem.ScoreEntry entry) {
+            this.replay = replay;
+            this.entry = entry;
+        }
+    }
+
+    private static final PersistenceWriter.Sink<PendingFile> FILE_SINK = batch -> {
+        for (PendingFile pending : batch) {
+            pending.replay.writeFor(directory(), pending.entry);
+        }
+    };
+
+    // Commands end with an END opcode (after a zero tick delta)
+    private static void writeCommands(DataOutputStream out, List<Command> commands) throws IOException {
+        int lastTick = 0;
+        for (Command command : commands) {
+            writeVarInt(out, command.tick - lastTick);
+            lastTick = command.tick;
+            out.writeByte(command.op);
+            switch (command.op) {
+                case PLACE:
+                    out.writeByte(command.towerType);
+                    writeVarInt(out, command.gridX);
+                    writeVarInt(out, command.gridY);
+                    break;
+                case SELL:
+                    writeVarInt(out, command.gridX);
+                    writeVarInt(out, command.gridY);
+                    break;
+                case SELECT_TOWER:
+                    out.writeByte(command.towerType);
+                    break;
+                default:
+                    break;
+            }
+        }
+        writeVarInt(out, 0);
+        out.writeByte(END);
+    }
+
+    private static List<Command> readCommands(DataInputStream in, int version) throws IOException {
+        boolean wide = version >= 3;
+        List<Command> commands = new ArrayList<>();
+        int tick = 0;
+        while (true) {
+            tick += readVarInt(in);
+            byte op = in.readByte();
+            if (op == END) break;
+            switch (op) {
+                case PLACE:
+                    int towerType = in.readByte();
+                    commands.add(new Command(tick, op, towerType, readCoordinate(in, wide), readCoordinate(in, wide)));
+                    break;
+                case SELL:
+                    commands.add(new Command(tick, op, -1, readCoordinate(in, wide), readCoordinate(in, wide)));
+                    break;
+                case SELECT_TOWER:
+                    commands.add(new Command(tick, op, in.readByte(), 0, 0));
+                    break;
+                case PAUSE:
+                case SELECT_SELL:
+                    commands.add(new Command(tick, op, -1, 0, 0));
+                    break;
+                default:
+                    throw new IOException("Unknown replay command " + op);
+            }
+        }
+        return commands;
+    }
+
+    private static int readCoordinate(DataInputStream in, boolean wide) throws IOException {
+        return wide ? readVarInt(in) : in.readByte();
+    }
+
+    // Small unsigned varints: most commands are a few hundred ticks apart
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed replay varint");
+    }
+}
@@ -0,0 +1,149 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replay Verifier
+ * Checks submitted scores against their replays. Each replay is re-simulated
+ * headless and the final score, kills and health are compared with what the
+ * client submitted, so a tampered score (or a replay that does not belong to
+ * it) is flagged.
+ *
+ * Replays are independent, so they run one task each on a work-stealing
+ * fork/join pool with one worker per core: re-simulation is pure CPU work,
+ * so more threads than cores would not finish any sooner.
+ */
+public class ReplayVerifier {
+    // A game that outlasts this is not a real one: stop rather than simulate forever
+    private static final int MAX_TICKS = 2 * 60 * 60 * GameSimulation.TICKS_PER_SECOND;
+
+    public enum Status {
+        OK,
+        MISMATCH,       // Re-simulation does not end with the submitted values
+        MISSING_REPLAY, // No replay file for the score
+        INVALID_REPLAY  // Unreadable, for another player or level, or too long
+    }
+
+    public static class Result {
+        public final AuthSystem.ScoreEntry entry;
+        public final Status status;
+        public final String detail;
+
+        Result(AuthSystem.ScoreEntry entry, Status status, String detail) {
+            this.entry = entry;
+            this.status = status;
+            this.detail = detail;
+        }
+
+        public boolean isOk() {
+            return status == Status.OK;
+        }
+
+        @Override
+        public String toString() {
+            return status + " " + entry.username + " level " + entry.level + " score " + entry.score
+                + " (" + entry.date + " " + entry.time + ")" + (detail != null ? ": " + detail : "");
+        }
+    }
+
+    private final File directory;
+    private final int threads;
+
+    public ReplayVerifier(File directory) {
+        this(directory, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ReplayVerifier(File directory, int threads) {
+        this.directory = directory;
+        this.threads = threads;
+    }
+
+    /** Verifies every entry in parallel; the results are in the same order as the entries. */
+    public List<Result> verifyAll(List<AuthSystem.ScoreEntry> entries) throws InterruptedException {
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(entries.size());
+            for (AuthSystem.ScoreEntry entry : entries) {
+                futures.add(pool.submit(() -> verify(entry)));
+            }
+            List<Result> results = new ArrayList<>(entries.size());
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // verify() catches what a bad replay can throw; anything else is a bug
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Re-simulates the replay of one score and compares the outcome. */
+    public Result verify(AuthSystem.ScoreEntry entry) {
+        File file = Replay.find(directory, entry);
+        if (file == null) {
+            return new Result(entry, Status.MISSING_REPLAY, null);
+        }
+
+        Replay replay;
+        try {
+            replay = Replay.read(file);
+        } catch (IOException e) {
+            return new Result(entry, Status.INVALID_REPLAY, e.getMessage());
+        }
+        if (!replay.username.equals(entry.username) || replay.level != entry.level) {
+            return new Result(entry, Status.INVALID_REPLAY,
+                              "recorded by " + replay.username + " on level " + replay.level);
+        }
+        if (replay.ticks < 0 || replay.ticks > MAX_TICKS) {
+            return new Result(entry, Status.INVALID_REPLAY, replay.ticks + " ticks");
+        }
+
+        GameSimulation sim;
+        try {
+            sim = replay.runHeadless();
+        } catch (RuntimeException e) {
+            // A command no client could have sent, e.g. an unknown tower type or level
+            return new Result(entry, Status.INVALID_REPLAY, e.toString());
+        }
+
+        int score = sim.calculateScore();
+        if (score != entry.score || sim.getEnemiesKilled() != entry.enemiesKilled
+                || sim.getHealth() != entry.health) {
+            return new Result(entry, Status.MISMATCH, "replay ends with score " + score
+                              + ", kills " + sim.getEnemiesKilled() + ", health " + sim.getHealth());
+        }
+        return new Result(entry, Status.OK, null);
+    }
+
+    /** Verifies the scores saved in the game folder against their replays and prints a report. */
+    public static boolean run(File directory) throws InterruptedException {
+        List<AuthSystem.ScoreEntry> entries = new ScoreStore().readAll();
+        ReplayVerifier verifier = new ReplayVerifier(directory);
+
+        long start = System.nanoTime();
+        List<Result> results = verifier.verifyAll(entries);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int[] counts = new int[Status.values().length];
+        for (Result result : results) {
+            counts[result.status.ordinal()]++;
+            if (!result.isOk()) System.out.println(result);
+        }
+        System.out.printf("Verified %,d scores in %.1f s on %d threads (%,.0f per minute)%n",
+                          results.size(), seconds, verifier.threads,
+                          seconds > 0 ? results.size() / seconds * 60 : 0.0);
+        System.out.printf("OK %,d, mismatched %,d, missing replay %,d, invalid replay %,d%n",
+                          counts[Status.OK.ordinal()], counts[Status.MISMATCH.ordinal()],
+                          counts[Status.MISSING_REPLAY.ordinal()], counts[Status.INVALID_REPLAY.ordinal()]);
+        return counts[Status.MISMATCH.ordinal()] == 0 && counts[Status.INVALID_REPLAY.ordinal()] == 0;
+    }
+}
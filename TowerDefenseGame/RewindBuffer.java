@@ -0,0 +1,154 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Rewind Buffer
+ * The last minute of a practice game, so the player can go back and try a
+ * different placement.
+ *
+ * Once a second the full simulation state is kept as a keyframe; in between,
+ * the only per-tick delta is what the player built or sold on that tick.
+ * The simulation is deterministic, so nothing else changes on its own:
+ * restoring a tick loads the keyframe before it and re-runs at most a second
+ * of ticks with the same commands. Keyframes sit in a ring that drops the
+ * oldest once the window or the memory budget is exceeded.
+ */
+public class RewindBuffer {
+    public static final int KEYFRAME_TICKS = GameSimulation.TICKS_PER_SECOND;
+    public static final int DEFAULT_WINDOW_TICKS = 60 * GameSimulation.TICKS_PER_SECOND;
+    public static final int DEFAULT_BUDGET_BYTES = 1 << 20;
+
+    private static class Keyframe {
+        final int tick;
+        final byte[] state;
+
+        Keyframe(int tick, byte[] state) {
+            this.tick = tick;
+            this.state = state;
+        }
+    }
+
+    private final int windowTicks;
+    private final int budgetBytes;
+    private final ArrayDeque<Keyframe> keyframes = new ArrayDeque<>();
+    private final ArrayDeque<Replay.Command> commands = new ArrayDeque<>(); // PLACE/SELL since the oldest keyframe
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+    private long bytesUsed;
+
+    // Cost on the live game, for the HUD and Benchmarks
+    private long overheadNanos;
+    private int ticksRecorded;
+
+    public RewindBuffer(GameSimulation sim) {
+        this(sim, DEFAULT_WINDOW_TICKS, DEFAULT_BUDGET_BYTES);
+    }
+
+    public RewindBuffer(GameSimulation sim, int windowTicks, int budgetBytes) {
+        this.windowTicks = windowTicks;
+        this.budgetBytes = budgetBytes;
+        addKeyframe(sim);
+    }
+
+    /** Called after every tick of the live game. */
+    public void afterTick(GameSimulation sim) {
+        long start = System.nanoTime();
+        if (sim.getTick() % KEYFRAME_TICKS == 0) {
+            addKeyframe(sim);
+        }
+        overheadNanos += System.nanoTime() - start;
+        ticksRecorded++;
+    }
+
+    /** Called for every player command, stamped like the replay (before the next tick). */
+    public void record(Replay.Command command) {
+        if (command.op == Replay.PLACE || command.op == Replay.SELL) {
+            commands.addLast(command);
+        }
+    }
+
+    private void addKeyframe(GameSimulation sim) {
+        buffer.reset();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            sim.writeState(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by an in-memory stream
+        }
+        Keyframe keyframe = new Keyframe(sim.getTick(), buffer.toByteArray());
+        keyframes.addLast(keyframe);
+        bytesUsed += keyframe.state.length;
+
+        // Drop the oldest keyframes (and their commands) beyond the window or the budget
+        while (keyframes.size() > 1 && (keyframes.peekFirst().tick < sim.getTick() - windowTicks
+                                        || bytesUsed > budgetBytes)) {
+            bytesUsed -= keyframes.removeFirst().state.length;
+        }
+        int oldest = keyframes.peekFirst().tick;
+        while (!commands.isEmpty() && commands.peekFirst().tick < oldest) {
+            commands.removeFirst();
+        }
+    }
+
+    /** The earliest tick that can be restored. */
+    public int getEarliestTick() {
+        return keyframes.peekFirst().tick;
+    }
+
+    /**
+     * Rebuilds the game as it was after the given tick (clamped to the
+     * window) and forgets everything after it, so play continues from there.
+     */
+    public GameSimulation rewindTo(int tick) {
+        tick = Math.max(tick, getEarliestTick());
+        while (keyframes.size() > 1 && keyframes.peekLast().tick > tick) {
+            bytesUsed -= keyframes.removeLast().state.length;
+        }
+        Keyframe keyframe = keyframes.peekLast();
+
+        GameSimulation sim;
+        try {
+            sim = GameSimulation.readState(new DataInputStream(new ByteArrayInputStream(keyframe.state)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Written by this buffer a moment ago
+        }
+
+        // Re-run the ticks after the keyframe with the commands given on them
+        List<Replay.Command> pending = new ArrayList<>();
+        for (Iterator<Replay.Command> it = commands.iterator(); it.hasNext(); ) {
+            Replay.Command command = it.next();
+            if (command.tick >= tick) {
+                it.remove(); // The abandoned future
+            } else if (command.tick >= keyframe.tick) {
+                pending.add(command);
+            }
+        }
+        int next = 0;
+        while (sim.getTick() < tick && !sim.isOver()) {
+            while (next < pending.size() && pending.get(next).tick <= sim.getTick()) {
+                Replay.apply(sim, pending.get(next++));
+            }
+            sim.tick();
+        }
+        return sim;
+    }
+
+    public long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    public int getKeyframeCount() {
+        return keyframes.size();
+    }
+
+    /** Average time afterTick adds to a live tick, in microseconds. */
+    public double getAverageOverheadMicros() {
+        return ticksRecorded == 0 ? 0 : overheadNanos / 1e3 / ticksRecorded;
+    }
+}
@@ -0,0 +1,18 @@
+import java.util.List;
+
+/**
+ * Score Backend
+ * Where AuthSystem sends finished games and reads leaderboards from:
+ * LocalScoreBackend (files in the game folder) or RemoteScoreBackend
+ * (a shared LeaderboardServer, selected with -Dtd.leaderboard=http://host:port).
+ */
+public interface ScoreBackend {
+    /** Records a score; may return before it is stored. */
+    void submit(AuthSystem.ScoreEntry entry);
+
+    /** Best scores, highest first; level null means all levels. */
+    List<AuthSystem.ScoreEntry> top(Integer level, int limit);
+
+    /** Filtered, paged query (see ScoreQuery). */
+    ScoreQuery.Page query(ScoreQuery query);
+}
@@ -0,0 +1,227 @@
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Score Index
+ * In-memory leaderboard ordered by score, overall and per level.
+ * Built once from the score store and updated on every saved score, so
+ * top-N reads walk the first N nodes of a skip list and never touch disk.
+ *
+ * Secondary indexes by user (score order) and by date (newest first) back
+ * the paged queries, so a filter only walks the entries it can match.
+ *
+ * Page cursors hold the sort key of the last entry (score, date, time,
+ * level, user) rather than an index id, so a cursor stays valid when the
+ * index is rebuilt, e.g. after the score log is compacted.
+ */
+public class ScoreIndex {
+    private static final int CACHED_RANGES = 4; // Score-ordered date ranges kept for paging
+
+    // Highest score first; equal scores oldest first
+    static final Comparator<AuthSystem.ScoreEntry> ORDER = (a, b) -> {
+        int c = Integer.compare(b.score, a.score);
+        if (c == 0) c = a.date.compareTo(b.date);
+        if (c == 0) c = a.time.compareTo(b.time);
+        return c != 0 ? c : compareRest(a, b);
+    };
+
+    // Newest first
+    static final Comparator<AuthSystem.ScoreEntry> DATE_ORDER = (a, b) -> {
+        int c = b.date.compareTo(a.date);
+        if (c == 0) c = b.time.compareTo(a.time);
+        if (c == 0) c = Integer.compare(b.score, a.score);
+        return c != 0 ? c : compareRest(a, b);
+    };
+
+    // Level and user; the id only separates otherwise identical entries
+    private static int compareRest(AuthSystem.ScoreEntry a, AuthSystem.ScoreEntry b) {
+        int c = Integer.compare(a.level, b.level);
+        if (c == 0) c = Comparator.nullsFirst(Comparator.<String>naturalOrder()).compare(a.username, b.username);
+        return c != 0 ? c : Long.compare(a.id, b.id);
+    }
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final ConcurrentSkipListSet<AuthSystem.ScoreEntry> overall = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Integer, ConcurrentSkipListSet<AuthSystem.ScoreEntry>> byLevel = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListSet<AuthSystem.ScoreEntry>> byUser = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<AuthSystem.ScoreEntry> byDate = new ConcurrentSkipListSet<>(DATE_ORDER);
+    private final Map<String, NavigableSet<AuthSystem.ScoreEntry>> rangesByScore =
+        new LinkedHashMap<String, NavigableSet<AuthSystem.ScoreEntry>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, NavigableSet<AuthSystem.ScoreEntry>> eldest) {
+                return size() > CACHED_RANGES;
+            }
+        };
+
+    public ScoreIndex() {
+    }
+
+    public ScoreIndex(Collection<AuthSystem.ScoreEntry> entries) {
+        List<AuthSystem.ScoreEntry> sorted = new ArrayList<>(entries);
+        for (AuthSystem.ScoreEntry entry : sorted) {
+            entry.id = nextId.getAndIncrement();
+        }
+        // Inserting in order is much cheaper than random inserts into a skip list
+        sorted.sort(ORDER);
+        for (AuthSystem.ScoreEntry entry : sorted) {
+            insertByScore(entry);
+        }
+        sorted.sort(DATE_ORDER);
+        byDate.addAll(sorted);
+    }
+
+    public void add(AuthSystem.ScoreEntry entry) {
+        entry.id = nextId.getAndIncrement();
+        insertByScore(entry);
+        byDate.add(entry);
+        synchronized (rangesByScore) {
+            for (Map.Entry<String, NavigableSet<AuthSystem.ScoreEntry>> range : rangesByScore.entrySet()) {
+                String[] dates = range.getKey().split(",", -1);
+                if (inRange(entry, dates[0], dates[1])) range.getValue().add(entry);
+            }
+        }
+    }
+
+    private void insertByScore(AuthSystem.ScoreEntry entry) {
+        overall.add(entry);
+        byLevel.computeIfAbsent(entry.level, l -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+        byUser.computeIfAbsent(entry.username, u -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+    }
+
+    /** Best scores across all levels. */
+    public List<AuthSystem.ScoreEntry> top(int limit) {
+        return first(overall, limit);
+    }
+
+    /** Best scores of one level. */
+    public List<AuthSystem.ScoreEntry> top(int level, int limit) {
+        ConcurrentSkipListSet<AuthSystem.ScoreEntry> set = byLevel.get(level);
+        return set == null ? new ArrayList<>() : first(set, limit);
+    }
+
+    public int size() {
+        return overall.size();
+    }
+
+    /**
+     * Runs a filtered, paged query. The narrowest index for the filters is
+     * walked from the cursor position and the remaining filters are checked
+     * per entry; only one page of entries is collected.
+     */
+    public ScoreQuery.Page query(ScoreQuery q) {
+        NavigableSet<AuthSystem.ScoreEntry> base = baseSet(q);
+        if (base == null) return ScoreQuery.Page.empty();
+
+        if (q.cursor != null) {
+            AuthSystem.ScoreEntry last = fromCursor(q.cursor);
+            if (last == null) return ScoreQuery.Page.empty();
+            base = base.tailSet(last, false);
+        }
+
+        List<AuthSystem.ScoreEntry> page = new ArrayList<>(q.pageSize);
+        Iterator<AuthSystem.ScoreEntry> it = base.iterator();
+        while (it.hasNext()) {
+            AuthSystem.ScoreEntry entry = it.next();
+            if (!q.matches(entry)) continue;
+            if (page.size() >= q.pageSize) {
+                // There is at least one more match; entries a cursor cannot tell apart stay on one page
+                String cursor = toCursor(page.get(page.size() - 1));
+                if (!cursor.equals(toCursor(entry))) return new ScoreQuery.Page(page, cursor);
+            }
+            page.add(entry);
+        }
+        return new ScoreQuery.Page(page, null);
+    }
+
+    private NavigableSet<AuthSystem.ScoreEntry> baseSet(ScoreQuery q) {
+        if (q.order == ScoreQuery.Order.DATE) {
+            return dateRange(q.fromDate, q.toDate);
+        }
+        if (q.username != null) return byUser.get(q.username);
+        if (q.level != null) return byLevel.get(q.level);
+        if (q.fromDate != null || q.toDate != null) {
+            return rangeByScore(q.fromDate, q.toDate);
+        }
+        return overall;
+    }
+
+    /**
+     * A date range in score order, built on its first page and then kept up
+     * to date by add, so the following pages only walk one page each.
+     */
+    private NavigableSet<AuthSystem.ScoreEntry> rangeByScore(String fromDate, String toDate) {
+        String key = (fromDate == null ? "" : fromDate) + "," + (toDate == null ? "" : toDate);
+        synchronized (rangesByScore) {
+            NavigableSet<AuthSystem.ScoreEntry> ranged = rangesByScore.get(key);
+            if (ranged == null) {
+                ranged = new ConcurrentSkipListSet<>(ORDER);
+                ranged.addAll(dateRange(fromDate, toDate));
+                rangesByScore.put(key, ranged);
+            }
+            return ranged;
+        }
+    }
+
+    private static boolean inRange(AuthSystem.ScoreEntry entry, String fromDate, String toDate) {
+        return (fromDate.isEmpty() || entry.date.compareTo(fromDate) >= 0)
+            && (toDate.isEmpty() || entry.date.compareTo(toDate) <= 0);
+    }
+
+    // score,date,time,level,user (URL-encoded, so the cursor is safe in a header or query string)
+    static String toCursor(AuthSystem.ScoreEntry entry) {
+        return entry.score + "," + entry.date + "," + entry.time + "," + entry.level + ","
+            + URLEncoder.encode(entry.username, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An entry that sorts after every entry with the cursor's key, or null
+     * for a malformed cursor. query never ends a page between entries with
+     * the same key, so none are skipped.
+     */
+    static AuthSystem.ScoreEntry fromCursor(String cursor) {
+        String[] parts = cursor.split(",", 5);
+        if (parts.length != 5) return null;
+        try {
+            AuthSystem.ScoreEntry probe = new AuthSystem.ScoreEntry(
+                URLDecoder.decode(parts[4], StandardCharsets.UTF_8), parts[1], parts[2],
+                Integer.parseInt(parts[3]), Integer.parseInt(parts[0]), 0, 0, 0);
+            probe.id = Long.MAX_VALUE;
+            return probe;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private NavigableSet<AuthSystem.ScoreEntry> dateRange(String fromDate, String toDate) {
+        // Probe entries bracket whole days: newest possible time on toDate, oldest on fromDate
+        AuthSystem.ScoreEntry start = toDate == null ? null : probe(toDate, "\uffff");
+        AuthSystem.ScoreEntry end = fromDate == null ? null : probe(fromDate, "");
+        if (start != null && end != null) {
+            if (DATE_ORDER.compare(start, end) > 0) return new TreeSet<>(DATE_ORDER);
+            return byDate.subSet(start, true, end, true);
+        }
+        if (start != null) return byDate.tailSet(start, true);
+        if (end != null) return byDate.headSet(end, true);
+        return byDate;
+    }
+
+    private static AuthSystem.ScoreEntry probe(String date, String time) {
+        AuthSystem.ScoreEntry probe = new AuthSystem.ScoreEntry(null, date, time, 0, 0, 0, 0, 0);
+        probe.id = -1;
+        return probe;
+    }
+
+    private static List<AuthSystem.ScoreEntry> first(NavigableSet<AuthSystem.ScoreEntry> set, int limit) {
+        List<AuthSystem.ScoreEntry> result = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+        Iterator<AuthSystem.ScoreEntry> it = set.iterator();
+        while (result.size() < limit && it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+}
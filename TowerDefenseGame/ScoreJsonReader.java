@@ -0,0 +1,149 @@
+import org.json.JSONTokener;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Score JSON Reader
+ * Binds score JSON straight from the token stream into ScoreEntry objects,
+ * without building JSONObject maps of boxed values first.
+ *
+ * Numeric fields are read as primitives and the text fields are collected
+ * into reused buffers, so a record only becomes Strings and a ScoreEntry
+ * once it is kept. readTop uses that to drop records that can't make the
+ * top N without allocating anything for them.
+ */
+public class ScoreJsonReader {
+    private final JSONTokener json;
+
+    // Fields of the record being read
+    private String documentUser; // Owning key in game_scores.json; null for log records
+    private final StringBuilder user = new StringBuilder();
+    private final StringBuilder date = new StringBuilder();
+    private final StringBuilder time = new StringBuilder();
+    private int level;
+    private int score;
+    private int enemiesKilled;
+    private int health;
+    private int moneySpent;
+
+    private ScoreJsonReader(JSONTokener json) {
+        this.json = json;
+    }
+
+    /** Every score of a game_scores.json document (user -> list of scores). */
+    public static List<AuthSystem.ScoreEntry> readAll(Reader in) {
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+        new ScoreJsonReader(new JSONTokener(in)).readDocument(null, entries::add);
+        return entries;
+    }
+
+    /**
+     * The best limit scores of a game_scores.json document, highest first,
+     * optionally of one level only.
+     */
+    public static List<AuthSystem.ScoreEntry> readTop(Reader in, int limit, Integer level) {
+        if (limit <= 0) return new ArrayList<>();
+        // Lowest kept score on top; equal scores keep the earlier record
+        PriorityQueue<AuthSystem.ScoreEntry> best = new PriorityQueue<>(limit + 1, (a, b) -> {
+            int c = Integer.compare(a.score, b.score);
+            return c != 0 ? c : Long.compare(b.id, a.id);
+        });
+        long[] sequence = {0};
+        ScoreJsonReader reader = new ScoreJsonReader(new JSONTokener(in));
+        reader.readDocument(r -> (level == null || r.level == level)
+                                 && (best.size() < limit || r.score > best.peek().score),
+                            entry -> {
+                                entry.id = sequence[0]++;
+                                best.add(entry);
+                                if (best.size() > limit) best.poll();
+                            });
+
+        List<AuthSystem.ScoreEntry> result = new ArrayList<>(best);
+        result.sort((a, b) -> {
+            int c = Integer.compare(b.score, a.score);
+            return c != 0 ? c : Long.compare(a.id, b.id);
+        });
+        for (AuthSystem.ScoreEntry entry : result) entry.id = 0;
+        return result;
+    }
+
+    /** One game_scores.log record: {"user":...,"date":...,...}. */
+    public static AuthSystem.ScoreEntry readLine(String line) {
+        ScoreJsonReader reader = new ScoreJsonReader(new JSONTokener(line));
+        reader.readRecord();
+        if (!reader.json.atEnd()) throw new IllegalArgumentException("Trailing characters in score record");
+        return reader.toEntry();
+    }
+
+    // ----- Binding -----
+
+    private interface Filter {
+        boolean keep(ScoreJsonReader record);
+    }
+
+    private interface Sink {
+        void accept(AuthSystem.ScoreEntry entry);
+    }
+
+    private void readDocument(Filter filter, Sink sink) {
+        json.beginObject();
+        while (json.hasNext()) {
+            documentUser = json.nextName();
+            json.beginArray();
+            while (json.hasNext()) {
+                readRecord();
+                if (filter == null || filter.keep(this)) {
+                    sink.accept(toEntry());
+                }
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    /** Reads one score object into the fields; unknown keys are skipped. */
+    private void readRecord() {
+        user.setLength(0);
+        date.setLength(0);
+        time.setLength(0);
+        level = score = enemiesKilled = health = moneySpent = 0;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "user":
+                    json.nextString(user);
+                    break;
+                case "date":
+                    json.nextString(date);
+                    break;
+                case "time":
+                    json.nextString(time);
+                    break;
+                case "level":
+                    level = json.nextInt();
+                    break;
+                case "score":
+                    score = json.nextInt();
+                    break;
+                case "enemies_killed":
+                    enemiesKilled = json.nextInt();
+                    break;
+                case "health":
+                    health = json.nextInt();
+                    break;
+                case "money_spent":
+                    moneySpent = json.nextInt();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private AuthSystem.ScoreEntry toEntry() {
+        String username = documentUser != null ? documentUser : user.toString();
+        return new AuthSystem.ScoreEntry(username, date.toString(), time.toString(),
+                                         level, score, enemiesKilled, health, moneySpent);
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Score Query
+ * Filter and paging parameters for AuthSystem.queryScores.
+ * Null filters match everything. Dates are inclusive "yyyy-MM-dd" strings.
+ * The cursor comes from the previous page (null for the first page).
+ */
+public class ScoreQuery {
+    public enum Order { SCORE, DATE }
+
+    public final String username;
+    public final Integer level;
+    public final String fromDate;
+    public final String toDate;
+    public final Order order;
+    public final String cursor;
+    public final int pageSize;
+
+    public ScoreQuery(String username, Integer level, String fromDate, String toDate,
+                      Order order, String cursor, int pageSize) {
+        this.username = username;
+        this.level = level;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        this.order = order == null ? Order.SCORE : order;
+        this.cursor = cursor;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /** Same filters, continuing after the given page. */
+    public ScoreQuery next(Page page) {
+        return new ScoreQuery(username, level, fromDate, toDate, order, page.nextCursor, pageSize);
+    }
+
+    public boolean matches(AuthSystem.ScoreEntry entry) {
+        if (username != null && !username.equals(entry.username)) return false;
+        if (level != null && level != entry.level) return false;
+        if (fromDate != null && entry.date.compareTo(fromDate) < 0) return false;
+        if (toDate != null && entry.date.compareTo(toDate) > 0) return false;
+        return true;
+    }
+
+    /** One page of results; nextCursor is null on the last page. */
+    public static class Page {
+        public final List<AuthSystem.ScoreEntry> entries;
+        public final String nextCursor;
+
+        public Page(List<AuthSystem.ScoreEntry> entries, String nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+
+        public static Page empty() {
+            return new Page(new ArrayList<>(), null);
+        }
+
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+}
@@ -0,0 +1,522 @@
+import org.json.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Score Store
+ * Append-only score persistence replacing the read-modify-write of game_scores.json.
+ *
+ * - game_scores.log       new scores, one compact JSON record per line (append only)
+ * - game_scores.dat       compacted scores as fixed-width binary records (BinaryScoreFile),
+ *                         sorted by score (highest first)
+ * - game_scores.lock      lock file shared by every game process using this folder;
+ *                         also holds the log generation (bumped on each rotation)
+ *
+ * When the log grows past a threshold it is rotated and merged into the
+ * snapshot on a background thread. Readers see snapshot + any log being
+ * compacted + the live log, so nothing is lost or duplicated while that runs.
+ * The rotated log is kept after its merge until the next rotation, so a
+ * reader one rotation behind can still read the tail it had not seen.
+ *
+ * Several game processes may share the folder: appends and rotations take an
+ * exclusive FileChannel lock, reads a shared one, and only one process
+ * compacts at a time. Files are only ever appended to or replaced by an
+ * atomic rename, and readers ignore a last line without its newline, so a
+ * reader never sees a torn write. Use one ScoreStore per folder per process.
+ */
+public class ScoreStore {
+    private static final String LOG_FILE = "game_scores.log";
+    private static final String COMPACTING_FILE = "game_scores.log.compacting";
+    private static final String SNAPSHOT_FILE = "game_scores.dat";
+    private static final String TEXT_SNAPSHOT_FILE = "game_scores.snapshot"; // Line-format snapshot of earlier versions
+    private static final String LEGACY_FILE = "game_scores.json";
+    private static final String LOCK_FILE = "game_scores.lock";
+    private static final long COMPACT_THRESHOLD_BYTES = 64 * 1024;
+
+    // Lock file regions
+    private static final long STORE_REGION = 0;      // Shared for reads, exclusive for appends and swaps
+    private static final long COMPACTION_REGION = 1; // Held by the one process that is compacting
+
+    private final File log;
+    private final File compacting;
+    private final File snapshot;
+    private final File legacy;
+    private final FileChannel lockChannel;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // A JVM may hold only one lock per region, so concurrent readers share one shared lock
+    private final Object sharedLockMonitor = new Object();
+    private FileLock sharedLock;
+    private int sharedHolders;
+    private FileLock exclusiveLock;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "score-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean compactionQueued;
+    // Log byte ranges appended by this process: {generation, start, end}
+    private final List<long[]> ownAppends = new ArrayList<>();
+
+    /** How far a reader has consumed the live log (see readAll(Tail) and readTail). */
+    public static class Tail {
+        long generation = -1;
+        long offset;
+
+        /** Whether a batch appendAll wrote to this position was part of what the tail has read. */
+        boolean covers(long[] position) {
+            return position[0] < generation || (position[0] == generation && position[1] <= offset);
+        }
+    }
+
+    public ScoreStore() {
+        this(new File("."));
+    }
+
+    public ScoreStore(File dir) {
+        log = new File(dir, LOG_FILE);
+        compacting = new File(dir, COMPACTING_FILE);
+        snapshot = new File(dir, SNAPSHOT_FILE);
+        legacy = new File(dir, LEGACY_FILE);
+        try {
+            lockChannel = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + LOCK_FILE, e);
+        }
+        lockExclusive();
+        try {
+            importLegacyJson();
+            convertTextSnapshot(new File(dir, TEXT_SNAPSHOT_FILE));
+        } finally {
+            unlockExclusive();
+        }
+        // A compaction interrupted by a crash is simply finished now
+        if (compacting.exists() && readSnapshot(snapshot, 0, null) < readGenerationLocked()) {
+            scheduleCompaction();
+        }
+    }
+
+    public void append(AuthSystem.ScoreEntry entry) {
+        appendAll(Collections.singletonList(entry));
+    }
+
+    /**
+     * Appends several scores with one locked write to the log. Returns where
+     * the batch ends, as {generation, offset} (see Tail.covers). A failed
+     * write is an UncheckedIOException, so the PersistenceWriter retries it.
+     */
+    public long[] appendAll(List<AuthSystem.ScoreEntry> entries) {
+        if (entries.isEmpty()) return null;
+        // Build the whole batch first so the locked section is a single write
+        StringWriter lines = new StringWriter();
+        for (AuthSystem.ScoreEntry entry : entries) {
+            writeLine(new JSONWriter(lines, 0), entry);
+            lines.write('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        long logLength;
+        long[] position;
+        lockExclusive();
+        try (FileChannel channel = new FileOutputStream(log, true).getChannel()) {
+            if (channel.size() > 0 && !endsWithNewline(channel)) {
+                // A writer died mid-line: close that line off so it can't swallow this record
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            }
+            long start = channel.size();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            logLength = channel.size();
+            long generation = readGeneration();
+            synchronized (ownAppends) {
+                // Ranges of the rotated log are still needed by readTail one rotation behind
+                ownAppends.removeIf(range -> range[0] < generation - 1);
+                ownAppends.add(new long[]{generation, start, logLength});
+            }
+            position = new long[]{generation, logLength};
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to " + LOG_FILE, e);
+        } finally {
+            unlockExclusive();
+        }
+        if (logLength > COMPACT_THRESHOLD_BYTES) {
+            scheduleCompaction();
+        }
+        return position;
+    }
+
+    private boolean endsWithNewline(FileChannel channel) throws IOException {
+        try (FileChannel read = new FileInputStream(log).getChannel()) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            read.read(last, channel.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    /** Every stored score, in no particular order. */
+    public List<AuthSystem.ScoreEntry> readAll() {
+        return readAll(new Tail());
+    }
+
+    /**
+     * Every stored score, in no particular order. The tail is set to the end
+     * of the live log, so readTail can later return only what came after.
+     */
+    public List<AuthSystem.ScoreEntry> readAll(Tail tail) {
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+        lockShared();
+        try {
+            long generation = readGeneration();
+            long mergedThrough = readSnapshot(snapshot, Integer.MAX_VALUE, entries);
+            if (mergedThrough < generation) {
+                // Not merged yet (a merge whose cleanup was interrupted is skipped)
+                readLines(compacting, 0, null, entries);
+            }
+            tail.offset = readLines(log, 0, null, entries);
+            tail.generation = generation;
+        } finally {
+            unlockShared();
+        }
+        return entries;
+    }
+
+    /**
+     * Scores appended to the log by other processes since the tail, which is
+     * advanced. After one rotation the rest of the rotated log is read, then
+     * the new log. Returns null if the reader fell further behind (the
+     * rotated log it stopped in is gone); the caller should then reload with
+     * readAll.
+     */
+    public List<AuthSystem.ScoreEntry> readTail(Tail tail) {
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+        lockShared();
+        try {
+            long generation = readGeneration();
+            if (generation != tail.generation) {
+                if (generation != tail.generation + 1 || !compacting.exists()) return null;
+                readLines(compacting, tail.offset, ownAppends(tail.generation), entries);
+                tail.generation = generation;
+                tail.offset = 0;
+            }
+            if (log.length() > tail.offset) {
+                tail.offset = readLines(log, tail.offset, ownAppends(generation), entries);
+            }
+        } finally {
+            unlockShared();
+        }
+        return entries;
+    }
+
+    // Byte ranges this process appended to the log of a generation
+    private List<long[]> ownAppends(long generation) {
+        List<long[]> ranges = new ArrayList<>();
+        synchronized (ownAppends) {
+            for (long[] range : ownAppends) {
+                if (range[0] == generation) ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Highest scores first. Only the head of the sorted snapshot is read,
+     * plus the (small) uncompacted tail.
+     */
+    public List<AuthSystem.ScoreEntry> readTop(int limit) {
+        List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+        lockShared();
+        try {
+            long mergedThrough = readSnapshot(snapshot, limit, entries);
+            if (mergedThrough < readGeneration()) {
+                readLines(compacting, 0, null, entries);
+            }
+            readLines(log, 0, null, entries);
+        } finally {
+            unlockShared();
+        }
+        entries.sort(BY_SCORE);
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    static final Comparator<AuthSystem.ScoreEntry> BY_SCORE = (a, b) -> Integer.compare(b.score, a.score);
+
+    // ----- Locking -----
+
+    private void lockShared() {
+        lock.readLock().lock();
+        synchronized (sharedLockMonitor) {
+            if (sharedHolders == 0) {
+                try {
+                    sharedLock = lockChannel.lock(STORE_REGION, 1, true);
+                } catch (IOException e) {
+                    lock.readLock().unlock();
+                    throw new UncheckedIOException(e);
+                }
+            }
+            sharedHolders++;
+        }
+    }
+
+    private void unlockShared() {
+        synchronized (sharedLockMonitor) {
+            if (--sharedHolders == 0) {
+                release(sharedLock);
+                sharedLock = null;
+            }
+        }
+        lock.readLock().unlock();
+    }
+
+    private void lockExclusive() {
+        lock.writeLock().lock();
+        try {
+            exclusiveLock = lockChannel.lock(STORE_REGION, 1, false);
+        } catch (IOException e) {
+            lock.writeLock().unlock();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void unlockExclusive() {
+        release(exclusiveLock);
+        exclusiveLock = null;
+        lock.writeLock().unlock();
+    }
+
+    private static void release(FileLock fileLock) {
+        try {
+            if (fileLock != null) fileLock.release();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private long readGenerationLocked() {
+        lockShared();
+        try {
+            return readGeneration();
+        } finally {
+            unlockShared();
+        }
+    }
+
+    /** Number of log rotations so far, kept in the lock file. Call with a lock held. */
+    private long readGeneration() {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            if (lockChannel.read(buffer, 8) < 8) return 0;
+            return buffer.getLong(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeGeneration(long generation) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(0, generation);
+        lockChannel.write(buffer, 8);
+        lockChannel.force(false);
+    }
+
+    // ----- Compaction -----
+
+    private synchronized void scheduleCompaction() {
+        if (compactionQueued) return;
+        compactionQueued = true;
+        compactor.submit(() -> {
+            synchronized (this) {
+                compactionQueued = false;
+            }
+            try {
+                compact();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Merges the log into the sorted snapshot. Runs on the compactor thread;
+     * if another process is already compacting, this one leaves it to them.
+     */
+    void compact() throws IOException {
+        FileLock compactionLock = lockChannel.tryLock(COMPACTION_REGION, 1, false);
+        if (compactionLock == null) return;
+        try {
+            long mergedThrough;
+            // Rotate the live log so appends continue into a fresh file
+            lockExclusive();
+            try {
+                long generation = readGeneration();
+                if (!compacting.exists() || readSnapshot(snapshot, 0, null) >= generation) {
+                    // Nothing left to merge (an interrupted merge is finished below): rotate
+                    if (!log.exists() || log.length() == 0) return;
+                    // The previous rotated log was kept for readers one rotation behind
+                    Files.deleteIfExists(compacting.toPath());
+                    Files.move(log.toPath(), compacting.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    writeGeneration(++generation);
+                }
+                mergedThrough = generation;
+            } finally {
+                unlockExclusive();
+            }
+
+            // Appends go to the new log and only this process merges, so no store lock is needed here
+            List<AuthSystem.ScoreEntry> merged = new ArrayList<>();
+            readSnapshot(snapshot, Integer.MAX_VALUE, merged);
+            readLines(compacting, 0, null, merged);
+            merged.sort(BY_SCORE);
+            File temp = new File(snapshot.getPath() + ".tmp");
+            BinaryScoreFile.write(temp, merged, mergedThrough);
+
+            // Swap in the new snapshot; readers skip the rotated log from now on
+            lockExclusive();
+            try {
+                Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                unlockExclusive();
+            }
+        } finally {
+            compactionLock.release();
+        }
+    }
+
+    // ----- One-time import of the old game_scores.json -----
+
+    private void importLegacyJson() {
+        if (!legacy.exists() || snapshot.exists() || log.exists()) return;
+        try {
+            List<AuthSystem.ScoreEntry> entries;
+            try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(legacy), StandardCharsets.UTF_8))) {
+                entries = ScoreJsonReader.readAll(reader);
+            }
+            entries.sort(BY_SCORE);
+            File temp = new File(snapshot.getPath() + ".tmp");
+            BinaryScoreFile.write(temp, entries);
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(legacy.toPath(), new File(legacy.getPath() + ".imported").toPath());
+            System.out.println("Imported " + entries.size() + " scores from " + LEGACY_FILE);
+        } catch (Exception e) {
+            System.err.println("Could not import " + LEGACY_FILE + ": " + e.getMessage());
+        }
+    }
+
+    private void convertTextSnapshot(File textSnapshot) {
+        if (!textSnapshot.exists() || snapshot.exists()) return;
+        try {
+            List<AuthSystem.ScoreEntry> entries = new ArrayList<>();
+            readLines(textSnapshot, 0, null, entries);
+            File temp = new File(snapshot.getPath() + ".tmp");
+            BinaryScoreFile.write(temp, entries);
+            Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(textSnapshot.toPath());
+        } catch (IOException e) {
+            System.err.println("Could not convert " + TEXT_SNAPSHOT_FILE + ": " + e.getMessage());
+        }
+    }
+
+    // ----- Export -----
+
+    /** Writes every stored score to a file in the old game_scores.json layout. */
+    public void exportJson(File out) throws IOException {
+        List<AuthSystem.ScoreEntry> entries = readAll();
+        entries.sort(BY_SCORE);
+        // Streamed straight to the file; no document-sized String is built
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8))) {
+            BinaryScoreFile.writeJson(entries, writer, 2);
+        }
+    }
+
+    // ----- Line format -----
+
+    static void writeLine(JSONWriter json, AuthSystem.ScoreEntry entry) {
+        json.object()
+            .key("user").value(entry.username)
+            .key("date").value(entry.date)
+            .key("time").value(entry.time)
+            .key("level").value(entry.level)
+            .key("score").value(entry.score)
+            .key("enemies_killed").value(entry.enemiesKilled)
+            .key("health").value(entry.health)
+            .key("money_spent").value(entry.moneySpent)
+            .endObject();
+    }
+
+    /**
+     * Adds up to limit snapshot records to out (out may be null when limit is 0).
+     * Returns the log generation the snapshot is merged through, 0 without a snapshot.
+     */
+    private static long readSnapshot(File file, int limit, List<AuthSystem.ScoreEntry> out) {
+        try {
+            BinaryScoreFile scores = BinaryScoreFile.open(file);
+            if (scores == null) return 0;
+            if (limit > 0) scores.readInto(limit, out);
+            return scores.mergedThrough();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Parses the complete lines from byte offset from, skipping lines that
+     * start inside one of the {generation, start, end} ranges. A last line
+     * without its newline is still being written and is left for later.
+     * Returns the offset just after the last complete line.
+     */
+    private static long readLines(File file, long from, List<long[]> skip, List<AuthSystem.ScoreEntry> out) {
+        if (!file.exists()) return from;
+        long lineStart = from;
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long position = from;
+            while (true) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer.get(i);
+                    if (b != '\n') {
+                        line.write(b);
+                        continue;
+                    }
+                    if (!isSkipped(skip, lineStart)) parseLine(line, out);
+                    line.reset();
+                    lineStart = position + i + 1;
+                }
+                position += n;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return lineStart;
+    }
+
+    private static boolean isSkipped(List<long[]> skip, long offset) {
+        if (skip == null) return false;
+        for (long[] range : skip) {
+            if (offset >= range[1] && offset < range[2]) return true;
+        }
+        return false;
+    }
+
+    private static void parseLine(ByteArrayOutputStream line, List<AuthSystem.ScoreEntry> out) {
+        String text = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+        if (text.isEmpty()) return;
+        try {
+            out.add(ScoreJsonReader.readLine(text));
+        } catch (Exception e) {
+            // Skip a damaged record
+        }
+    }
+}
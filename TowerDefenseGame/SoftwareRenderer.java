@@ -0,0 +1,275 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Software Renderer
+ * Optional renderer that composes the play field directly into the int[] of a
+ * TYPE_INT_ARGB_PRE image and presents it with a single drawImage.
+ * Enabled with -Dtd.renderer=software. Text (HUD, overlays) is still drawn
+ * with Graphics2D on top of the presented frame.
+ *
+ * All colours are non-premultiplied ARGB ints on input; the frame and the
+ * cached sprite pixels are premultiplied so blending is one multiply per channel pair.
+ */
+public class SoftwareRenderer {
+    private final AssetManager assets;
+    private final Map<String, Map<Integer, Sprite>> sprites = new HashMap<>();
+    private BufferedImage frame;
+    private int[] pixels;
+    private int width, height;
+
+    // Scaled sprite in premultiplied ARGB
+    private static class Sprite {
+        final int[] pixels;
+        final int width, height;
+        final boolean opaque;
+
+        Sprite(int[] pixels, int width, int height, boolean opaque) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.opaque = opaque;
+        }
+    }
+
+    public SoftwareRenderer(AssetManager assets) {
+        this.assets = assets;
+    }
+
+    /** Prepares a frame of the given size; reuses the buffer when the size is unchanged. */
+    public void begin(int width, int height) {
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        if (frame == null || width != this.width || height != this.height) {
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public void clear(int argb) {
+        Arrays.fill(pixels, premultiply(argb));
+    }
+
+    /** Presents the composed frame with a single blit. */
+    public void present(Graphics g) {
+        g.drawImage(frame, 0, 0, null);
+    }
+
+    public BufferedImage getFrame() {
+        return frame;
+    }
+
+    // ----- Solid fills -----
+
+    public void fillRect(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(0, x), y0 = Math.max(0, y);
+        int x1 = Math.min(width, x + w), y1 = Math.min(height, y + h);
+        if (x0 >= x1 || y0 >= y1) return;
+        int src = premultiply(argb);
+        if ((src >>> 24) == 255) {
+            for (int row = y0; row < y1; row++) {
+                Arrays.fill(pixels, row * width + x0, row * width + x1, src);
+            }
+        } else {
+            for (int row = y0; row < y1; row++) {
+                int i = row * width + x0;
+                int end = row * width + x1;
+                for (; i < end; i++) {
+                    pixels[i] = blend(src, pixels[i]);
+                }
+            }
+        }
+    }
+
+    /** Outline of a rectangle, thickness pixels wide, drawn inside the bounds. */
+    public void drawRect(int x, int y, int w, int h, int thickness, int argb) {
+        fillRect(x, y, w, thickness, argb);
+        fillRect(x, y + h - thickness, w, thickness, argb);
+        fillRect(x, y + thickness, thickness, h - thickness * 2, argb);
+        fillRect(x + w - thickness, y + thickness, thickness, h - thickness * 2, argb);
+    }
+
+    public void fillCircle(int cx, int cy, int radius, int argb) {
+        int src = premultiply(argb);
+        boolean opaque = (src >>> 24) == 255;
+        int r2 = radius * radius;
+        for (int dy = -radius; dy <= radius; dy++) {
+            int row = cy + dy;
+            if (row < 0 || row >= height) continue;
+            int half = (int) Math.sqrt(r2 - dy * dy);
+            int x0 = Math.max(0, cx - half), x1 = Math.min(width, cx + half + 1);
+            if (x0 >= x1) continue;
+            int base = row * width;
+            if (opaque) {
+                Arrays.fill(pixels, base + x0, base + x1, src);
+            } else {
+                for (int i = base + x0; i < base + x1; i++) {
+                    pixels[i] = blend(src, pixels[i]);
+                }
+            }
+        }
+    }
+
+    /** Thick axis-aligned or diagonal line with round caps, like BasicStroke CAP_ROUND. */
+    public void drawThickLine(int x1, int y1, int x2, int y2, int thickness, int argb) {
+        int r = thickness / 2;
+        if (x1 == x2 || y1 == y2) {
+            fillRect(Math.min(x1, x2) - (x1 == x2 ? r : 0), Math.min(y1, y2) - (y1 == y2 ? r : 0),
+                     Math.abs(x2 - x1) + (x1 == x2 ? thickness : 0), Math.abs(y2 - y1) + (y1 == y2 ? thickness : 0), argb);
+        } else {
+            int steps = Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1));
+            for (int i = 0; i <= steps; i += Math.max(1, r / 2)) {
+                fillCircle(x1 + (x2 - x1) * i / steps, y1 + (y2 - y1) * i / steps, r, argb);
+            }
+        }
+        fillCircle(x1, y1, r, argb);
+        fillCircle(x2, y2, r, argb);
+    }
+
+    // ----- Sprites -----
+
+    /**
+     * Opaque tiles (e.g. background) are copied row by row with System.arraycopy;
+     * sprites with transparency fall back to the blend loop.
+     */
+    public void drawTile(String key, int x, int y, int w, int h) {
+        Sprite s = sprite(key, w, h);
+        if (!s.opaque) {
+            drawSprite(key, x, y, w, h);
+            return;
+        }
+        int sx0 = Math.max(0, -x), sy0 = Math.max(0, -y);
+        int sx1 = Math.min(w, width - x), sy1 = Math.min(h, height - y);
+        if (sx0 >= sx1 || sy0 >= sy1) return;
+        int len = sx1 - sx0;
+        for (int sy = sy0; sy < sy1; sy++) {
+            System.arraycopy(s.pixels, sy * w + sx0, pixels, (y + sy) * width + x + sx0, len);
+        }
+    }
+
+    public void drawSprite(String key, int x, int y, int w, int h) {
+        Sprite s = sprite(key, w, h);
+        int sx0 = Math.max(0, -x), sy0 = Math.max(0, -y);
+        int sx1 = Math.min(w, width - x), sy1 = Math.min(h, height - y);
+        if (sx0 >= sx1 || sy0 >= sy1) return;
+        int[] src = s.pixels;
+        for (int sy = sy0; sy < sy1; sy++) {
+            int si = sy * w + sx0;
+            int di = (y + sy) * width + x + sx0;
+            for (int sx = sx0; sx < sx1; sx++, si++, di++) {
+                int p = src[si];
+                int a = p >>> 24;
+                if (a == 255) {
+                    pixels[di] = p;
+                } else if (a != 0) {
+                    pixels[di] = blend(p, pixels[di]);
+                }
+            }
+        }
+    }
+
+    /** Sprite with a global opacity (0-255), used for the decorative elements. */
+    public void drawSprite(String key, int x, int y, int w, int h, int alpha) {
+        if (alpha >= 255) {
+            drawSprite(key, x, y, w, h);
+            return;
+        }
+        Sprite s = sprite(key, w, h);
+        int sx0 = Math.max(0, -x), sy0 = Math.max(0, -y);
+        int sx1 = Math.min(w, width - x), sy1 = Math.min(h, height - y);
+        if (sx0 >= sx1 || sy0 >= sy1) return;
+        int[] src = s.pixels;
+        for (int sy = sy0; sy < sy1; sy++) {
+            int si = sy * w + sx0;
+            int di = (y + sy) * width + x + sx0;
+            for (int sx = sx0; sx < sx1; sx++, si++, di++) {
+                int p = src[si];
+                if ((p >>> 24) != 0) {
+                    pixels[di] = blend(scale(p, alpha), pixels[di]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sprite of size w x h rotated by angle around (cx, cy). Each destination pixel
+     * of the rotated bounding box is mapped back into the sprite (nearest sample).
+     */
+    public void drawSpriteRotated(String key, double cx, double cy, int w, int h, double angle) {
+        Sprite s = sprite(key, w, h);
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        double halfW = w / 2.0, halfH = h / 2.0;
+        int extent = (int) Math.ceil(Math.sqrt(halfW * halfW + halfH * halfH));
+        int x0 = Math.max(0, (int) cx - extent), x1 = Math.min(width, (int) cx + extent + 1);
+        int y0 = Math.max(0, (int) cy - extent), y1 = Math.min(height, (int) cy + extent + 1);
+        int[] src = s.pixels;
+        for (int y = y0; y < y1; y++) {
+            double dy = y + 0.5 - cy;
+            int di = y * width + x0;
+            for (int x = x0; x < x1; x++, di++) {
+                double dx = x + 0.5 - cx;
+                // Inverse rotation back into sprite space
+                int sx = (int) Math.floor(dx * cos + dy * sin + halfW);
+                int sy = (int) Math.floor(-dx * sin + dy * cos + halfH);
+                if (sx < 0 || sy < 0 || sx >= w || sy >= h) continue;
+                int p = src[sy * w + sx];
+                int a = p >>> 24;
+                if (a == 255) {
+                    pixels[di] = p;
+                } else if (a != 0) {
+                    pixels[di] = blend(p, pixels[di]);
+                }
+            }
+        }
+    }
+
+    private Sprite sprite(String key, int w, int h) {
+        Map<Integer, Sprite> sizes = sprites.computeIfAbsent(key, k -> new HashMap<>());
+        Integer size = (w << 16) | (h & 0xFFFF);
+        Sprite s = sizes.get(size);
+        if (s == null) {
+            BufferedImage scaled = assets.getScaledAsset(key, w, h);
+            int[] argb = scaled.getRGB(0, 0, w, h, null, 0, w);
+            boolean opaque = true;
+            for (int i = 0; i < argb.length; i++) {
+                if ((argb[i] >>> 24) != 255) opaque = false;
+                argb[i] = premultiply(argb[i]);
+            }
+            s = new Sprite(argb, w, h, opaque);
+            sizes.put(size, s);
+        }
+        return s;
+    }
+
+    // ----- Pixel math (premultiplied ARGB) -----
+
+    static int premultiply(int argb) {
+        int a = argb >>> 24;
+        if (a == 255) return argb;
+        if (a == 0) return 0;
+        int rb = ((argb & 0xFF00FF) * a + 0x800080) >>> 8 & 0xFF00FF;
+        int g = ((argb & 0x00FF00) * a + 0x008000) >>> 8 & 0x00FF00;
+        return (a << 24) | rb | g;
+    }
+
+    /** Source-over of a premultiplied source onto a premultiplied destination. */
+    static int blend(int src, int dst) {
+        int ia = 255 - (src >>> 24);
+        int rb = ((dst & 0xFF00FF) * ia + 0x800080) >>> 8 & 0xFF00FF;
+        int ag = (((dst >>> 8) & 0xFF00FF) * ia + 0x800080) & 0xFF00FF00;
+        return src + (rb | ag);
+    }
+
+    /** Multiplies all four premultiplied channels by alpha/255. */
+    static int scale(int p, int alpha) {
+        int rb = ((p & 0xFF00FF) * alpha + 0x800080) >>> 8 & 0xFF00FF;
+        int ag = (((p >>> 8) & 0xFF00FF) * alpha + 0x800080) & 0xFF00FF00;
+        return rb | ag;
+    }
+}
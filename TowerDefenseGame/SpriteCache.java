@@ -0,0 +1,161 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sprite Cache
+ * On-disk cache of already decoded ARGB pixels, so later starts skip PNG decoding.
+ *
+ * File layout (native byte order):
+ *   int magic, int version, int entryCount
+ *   per entry: short nameLength, name bytes (UTF-8), long fingerprint, int width, int height, long pixelOffset
+ *   pixel data: width * height ints per entry, starting at pixelOffset
+ *
+ * An entry is only used when its fingerprint matches the current asset source,
+ * so editing or replacing PNG.zip invalidates exactly the sprites that changed.
+ *
+ * The file is read into memory and written from memory rather than mapped:
+ * Windows refuses to replace a file that is still mapped, which would keep
+ * a stale cache from ever being rebuilt.
+ */
+public class SpriteCache {
+    private static final String CACHE_FILE = "asset_cache.bin";
+    private static final int MAGIC = 0x54444143; // "TDAC"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private ByteBuffer data; // The whole file
+
+    private static class Entry {
+        final long fingerprint;
+        final int width, height;
+        final long offset;
+
+        Entry(long fingerprint, int width, int height, long offset) {
+            this.fingerprint = fingerprint;
+            this.width = width;
+            this.height = height;
+            this.offset = offset;
+        }
+    }
+
+    public SpriteCache() {
+        this(new File(CACHE_FILE));
+    }
+
+    public SpriteCache(File file) {
+        this.file = file;
+        open();
+    }
+
+    private void open() {
+        if (!file.isFile()) return;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                System.out.println("Sprite cache has an old format, it will be rebuilt");
+                return;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buffer.getShort()];
+                buffer.get(name);
+                long fingerprint = buffer.getLong();
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                long offset = buffer.getLong();
+                entries.put(new String(name, StandardCharsets.UTF_8), new Entry(fingerprint, width, height, offset));
+            }
+            data = buffer;
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable sprite cache: " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the cached pixels as a TYPE_INT_ARGB image, or null when the
+     * file is not cached or its fingerprint no longer matches.
+     */
+    public BufferedImage get(String filename, long fingerprint) {
+        Entry entry = entries.get(filename);
+        if (entry == null || data == null || fingerprint == -1 || entry.fingerprint != fingerprint) {
+            return null;
+        }
+        BufferedImage img = new BufferedImage(entry.width, entry.height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        // Duplicate so concurrent readers don't share a position
+        ByteBuffer view = data.duplicate().order(ByteOrder.nativeOrder());
+        view.position((int) entry.offset);
+        IntBuffer ints = view.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+        ints.get(pixels, 0, pixels.length);
+        return img;
+    }
+
+    /**
+     * Writes a fresh cache for the given images (filename -> image) with their
+     * fingerprints. Written to a temp file first and moved into place, so a
+     * crash never leaves a half-written cache behind.
+     */
+    public static void write(File target, Map<String, BufferedImage> images, Map<String, Long> fingerprints) throws IOException {
+        Map<String, byte[]> names = new HashMap<>();
+        long headerSize = 12;
+        for (String filename : images.keySet()) {
+            byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+            names.put(filename, name);
+            headerSize += 2 + name.length + 8 + 4 + 4 + 8;
+        }
+        long dataSize = 0;
+        for (BufferedImage img : images.values()) {
+            dataSize += (long) img.getWidth() * img.getHeight() * 4;
+        }
+
+        File temp = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            ByteBuffer out = ByteBuffer.allocate((int) (headerSize + dataSize));
+            out.order(ByteOrder.nativeOrder());
+            out.putInt(MAGIC).putInt(VERSION).putInt(images.size());
+
+            long offset = headerSize;
+            for (Map.Entry<String, BufferedImage> entry : images.entrySet()) {
+                byte[] name = names.get(entry.getKey());
+                BufferedImage img = entry.getValue();
+                out.putShort((short) name.length).put(name);
+                out.putLong(fingerprints.get(entry.getKey()));
+                out.putInt(img.getWidth()).putInt(img.getHeight());
+                out.putLong(offset);
+                offset += (long) img.getWidth() * img.getHeight() * 4;
+            }
+            for (BufferedImage img : images.values()) {
+                int[] argb = img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+                out.asIntBuffer().put(argb);
+                out.position(out.position() + argb.length * 4);
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(false);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
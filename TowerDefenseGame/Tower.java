@@ -1,3 +1,8 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
 /**
  * Tower Class
  * Represents a defensive tower that shoots at enemies
@@ -26,18 +31,20 @@ public class Tower {
         }
     }
     
+    private final int id; // Unique within a game, used by snapshots to link projectiles to targets
     private int gridX, gridY;
     private int x, y;
     private TowerType type;
     private int cooldown;
     private int flashTimer;
     private Enemy target;
-    private double angle; // Rotation angle in radians
+    private double aimX, aimY; // Direction to the last target; the rotation angle is worked out when drawn
     private int maxHealth;
     private int health;
     private boolean alive;
     
-    public Tower(int gridX, int gridY, TowerType type) {
+    public Tower(int id, int gridX, int gridY, TowerType type) {
+        this.id = id;
         this.gridX = gridX;
         this.gridY = gridY;
         this.x = gridX * TowerDefenseGame.TILE_SIZE + TowerDefenseGame.TILE_SIZE / 2;
@@ -46,7 +53,8 @@ public class Tower {
         this.cooldown = 0;
         this.flashTimer = 0;
         this.target = null;
-        this.angle = 0;
+        this.aimX = 0;
+        this.aimY = 0;
         this.maxHealth = type.health;
         this.health = maxHealth;
         this.alive = true;
@@ -62,24 +70,16 @@ public class Tower {
             flashTimer--;
         }
         
-        // Find target
-        target = null;
-        double nearestDist = Double.MAX_VALUE;
-        
-        for (Enemy enemy : enemies) {
-            if (enemy.isAlive() && enemy.shouldSpawn()) {
-                double dist = Math.sqrt(Math.pow(enemy.getX() - x, 2) + Math.pow(enemy.getY() - y, 2));
-                if (dist <= type.range && dist < nearestDist) {
-                    target = enemy;
-                    nearestDist = dist;
-                }
-            }
+        // Pick the nearest enemy when about to fire; in between, keep aiming at the current one
+        if (cooldown <= 0 || !inRange(target)) {
+            target = findNearest(enemies);
         }
         
         // Update angle and shoot
         if (target != null) {
-            // Calculate angle to target
-            angle = Math.atan2(target.getY() - y, target.getX() - x);
+            // Remember the direction to the target (turned into an angle only when drawn)
+            aimX = target.getX() - x;
+            aimY = target.getY() - y;
             
             // Shoot if cooldown is ready
             if (cooldown <= 0) {
@@ -90,6 +90,33 @@ public class Tower {
         }
     }
     
+    private Enemy findNearest(java.util.List<Enemy> enemies) {
+        // Squared distances: this compares against every enemy
+        Enemy nearest = null;
+        double nearestDistSq = Double.MAX_VALUE;
+        double rangeSq = (double) type.range * type.range;
+        
+        for (Enemy enemy : enemies) {
+            if (enemy.isAlive() && enemy.shouldSpawn()) {
+                double dx = enemy.getX() - x;
+                double dy = enemy.getY() - y;
+                double distSq = dx * dx + dy * dy;
+                if (distSq <= rangeSq && distSq < nearestDistSq) {
+                    nearest = enemy;
+                    nearestDistSq = distSq;
+                }
+            }
+        }
+        return nearest;
+    }
+    
+    private boolean inRange(Enemy enemy) {
+        if (enemy == null || !enemy.isAlive() || enemy.hasReachedEnd()) return false;
+        double dx = enemy.getX() - x;
+        double dy = enemy.getY() - y;
+        return dx * dx + dy * dy <= (double) type.range * type.range;
+    }
+    
     public void takeDamage(int damage) {
         if (!alive) return;
         health -= damage;
@@ -99,10 +126,42 @@ public class Tower {
         }
     }
 
+    // ----- Snapshots -----
+    
+    void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(id);
+        out.writeByte(type.ordinal());
+        out.writeShort(gridX);
+        out.writeShort(gridY);
+        out.writeInt(cooldown);
+        out.writeInt(flashTimer);
+        // A target that has left the game is never kept (see inRange), so it need not be restored
+        out.writeInt(target != null ? target.getId() : -1);
+        out.writeDouble(aimX);
+        out.writeDouble(aimY);
+        out.writeInt(health);
+        out.writeBoolean(alive);
+    }
+    
+    static Tower readState(DataInputStream in, Map<Integer, Enemy> enemies) throws IOException {
+        int id = in.readInt();
+        TowerType type = TowerType.values()[in.readByte()];
+        Tower tower = new Tower(id, in.readShort(), in.readShort(), type);
+        tower.cooldown = in.readInt();
+        tower.flashTimer = in.readInt();
+        tower.target = enemies.get(in.readInt());
+        tower.aimX = in.readDouble();
+        tower.aimY = in.readDouble();
+        tower.health = in.readInt();
+        tower.alive = in.readBoolean();
+        return tower;
+    }
+    
+    public int getId() { return id; }
     public boolean isAlive() { return alive; }
     public int getHealth() { return health; }
     public int getMaxHealth() { return maxHealth; }
-    public double getAngle() { return angle; }
+    public double getAngle() { return Math.atan2(aimY, aimX); } // Rotation angle in radians
     public boolean isFlashing() { return flashTimer > 0; }
     
     public int getX() { return x; }
@@ -66,6 +66,8 @@ public class TowerDefenseGame {
         // Refresh panels when showing them
         if (panelName.equals("MENU")) {
             mainMenuPanel.refresh();
+        } else if (panelName.equals("LEVEL_SELECT")) {
+            levelSelectPanel.refresh();
         } else if (panelName.equals("HIGHSCORES")) {
             highScoresPanel.refresh();
         }
@@ -78,12 +80,97 @@ public class TowerDefenseGame {
             return;
         }
         
+        GamePanel panel;
+        try {
+            panel = new GamePanel(this, level);
+        } catch (IllegalArgumentException | java.io.UncheckedIOException e) {
+            // A community level that is missing or damaged
+            JOptionPane.showMessageDialog(frame, "Could not load level " + level + ":\n" + e.getMessage(),
+                                          "Level", JOptionPane.ERROR_MESSAGE);
+            showPanel("LEVEL_SELECT");
+            return;
+        }
+        endSavedGame();
+        
         // Remove old game panel if exists
         if (gamePanel != null) {
             mainPanel.remove(gamePanel);
         }
         
-        gamePanel = new GamePanel(this, level);
+        gamePanel = panel;
+        mainPanel.add(gamePanel, "GAME");
+        showPanel("GAME");
+        gamePanel.startGame();
+    }
+    
+    // The player's saved game ends when a new one starts: score it before the new game's autosaves take the slot
+    private void endSavedGame() {
+        PersistenceWriter writer = authSystem.getPersistenceWriter();
+        writer.flush(); // An autosave still queued (the level arrows save just before) has to be on disk first
+        java.io.File slot = GameSnapshot.fileFor(authSystem.getCurrentUser());
+        if (!slot.isFile()) return;
+        try {
+            GameSnapshot.load(slot).saveAsLeft(authSystem);
+        } catch (java.io.IOException e) {
+            System.err.println("Discarding unreadable saved game: " + e.getMessage());
+        }
+        GameSnapshot.delete(writer, slot);
+    }
+    
+    /** Continues the logged-in player's saved game, if there is one. */
+    public void continueGame() {
+        if (!authSystem.isLoggedIn()) {
+            showPanel("LOGIN");
+            return;
+        }
+        
+        GameSnapshot snapshot;
+        try {
+            snapshot = GameSnapshot.load(GameSnapshot.fileFor(authSystem.getCurrentUser()));
+        } catch (java.io.IOException e) {
+            JOptionPane.showMessageDialog(frame, "Could not load the saved game:\n" + e.getMessage(),
+                                          "Continue", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        GamePanel panel;
+        try {
+            panel = new GamePanel(this, snapshot);
+        } catch (IllegalArgumentException | java.io.UncheckedIOException e) {
+            // The saved game's level is missing or damaged
+            JOptionPane.showMessageDialog(frame, "Could not load the saved game's level:\n" + e.getMessage(),
+                                          "Continue", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        if (gamePanel != null) {
+            mainPanel.remove(gamePanel);
+        }
+        
+        gamePanel = panel;
+        mainPanel.add(gamePanel, "GAME");
+        showPanel("GAME");
+        gamePanel.startGame();
+    }
+    
+    /** Plays a recorded game back on the game screen (no login needed, nothing is saved). */
+    public void startReplay(Replay replay) {
+        GamePanel panel;
+        try {
+            panel = new GamePanel(this, replay);
+        } catch (IllegalArgumentException | java.io.UncheckedIOException e) {
+            // The replay's level is missing or damaged
+            JOptionPane.showMessageDialog(frame, "Could not load the replay's level:\n" + e.getMessage(),
+                                          "Replay", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        if (gamePanel != null) {
+            gamePanel.stopGame();
+            mainPanel.remove(gamePanel);
+        }
+        
+        gamePanel = panel;
         mainPanel.add(gamePanel, "GAME");
         showPanel("GAME");
         gamePanel.startGame();
@@ -101,16 +188,72 @@ public class TowerDefenseGame {
         return frame;
     }
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--leaderboard-server")) {
+            // Headless shared leaderboard: java TowerDefenseGame --leaderboard-server [port]
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : LeaderboardServer.DEFAULT_PORT;
+            LeaderboardServer.run(port);
+            return;
+        }
+        
+        if (args.length > 0 && args[0].equals("--verify-replays")) {
+            // Re-simulates every saved score's replay: java TowerDefenseGame --verify-replays [dir]
+            java.io.File dir = args.length > 1 ? new java.io.File(args[1]) : Replay.directory();
+            System.exit(ReplayVerifier.run(dir) ? 0 : 1);
+        }
+        
+        if (args.length > 2 && args[0].equals("--pack-levels")) {
+            // Packs level files into one: java TowerDefenseGame --pack-levels out.tdpack file|dir...
+            java.util.List<java.io.File> files = new java.util.ArrayList<>();
+            for (int i = 2; i < args.length; i++) {
+                java.io.File file = new java.io.File(args[i]);
+                java.io.File[] inDir = file.listFiles();
+                if (inDir != null) {
+                    java.util.Arrays.sort(inDir);
+                    files.addAll(java.util.Arrays.asList(inDir));
+                } else {
+                    files.add(file);
+                }
+            }
+            LevelFile.writePack(new java.io.File(args[1]), files);
+            return;
+        }
+        
+        // java TowerDefenseGame --replay file [--headless]
+        Replay replay = null;
+        if (args.length > 1 && args[0].equals("--replay")) {
+            replay = Replay.read(new java.io.File(args[1]));
+            if (args.length > 2 && args[2].equals("--headless")) {
+                System.exit(runHeadless(replay) ? 0 : 1);
+            }
+        }
+        
+        Replay startWith = replay;
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
             } catch (Exception e) {
                 e.printStackTrace();
             }
-            new TowerDefenseGame();
+            TowerDefenseGame game = new TowerDefenseGame();
+            if (startWith != null) game.startReplay(startWith);
         });
     }
+    
+    // Runs a replay without a window as fast as possible and checks it ends as recorded
+    private static boolean runHeadless(Replay replay) {
+        long start = System.nanoTime();
+        GameSimulation sim = replay.runHeadless();
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Replay of %s, level %d: %d ticks (%.1f min of play) in %.1f ms%n",
+                          replay.username, replay.level, sim.getTick(),
+                          sim.getTick() / (GameSimulation.TICKS_PER_SECOND * 60.0), millis);
+        System.out.printf("Score %d, kills %d, health %d, money spent %d%n",
+                          sim.calculateScore(), sim.getEnemiesKilled(), sim.getHealth(), sim.getMoneySpent());
+        boolean matches = replay.matches(sim);
+        System.out.println(matches ? "Matches the recorded result" : "DOES NOT match the recorded score " + replay.score);
+        return matches;
+    }
 }
 
 
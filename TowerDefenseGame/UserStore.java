@@ -0,0 +1,350 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * User Store
+ * Append-only user file with a persistent hash index, so startup and login
+ * never read the whole file and registering costs the same at any user count.
+ *
+ * - users_data.txt  one "username,password,created" line per account (same format as before, append only)
+ * - users_data.idx  open-addressing table: username hash -> line offset
+ *
+ * The index header records how much of the data file it covers. On open,
+ * lines appended after that point are indexed; a missing, damaged or
+ * out-of-date index is rebuilt from one scan of the data file.
+ *
+ * The table is held on the heap and changed slots are written back with
+ * positional writes. It is not mapped: Windows refuses to resize a file
+ * that is mapped, and the table grows as users register.
+ */
+public class UserStore {
+    private static final int MAGIC = 0x54445549; // "TDUI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;  // magic, version, capacity, count, dataLength
+    private static final int SLOT_BYTES = 12;    // long offset + 1 (0 = empty), int hash
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final String HEADER_LINE = "# User data file - Format: username,password,created_timestamp\n";
+
+    public static class User {
+        public final String username;
+        public final String password;
+        public final String created;
+
+        public User(String username, String password, String created) {
+            this.username = username;
+            this.password = password;
+            this.created = created;
+        }
+    }
+
+    private final File indexFile;
+    private FileChannel data;
+    private FileChannel indexChannel;
+    private ByteBuffer index; // The whole index file
+    private final BitSet dirtySlots = new BitSet(); // Changed since the last flushIndex
+    private boolean tableDirty; // Every slot needs writing (after a rebuild or grow)
+    private int capacity;
+    private int count;
+
+    public UserStore(File dataFile) throws IOException {
+        this.indexFile = new File(dataFile.getPath().replaceFirst("\\.txt$", "") + ".idx");
+        data = new RandomAccessFile(dataFile, "rw").getChannel();
+        if (data.size() == 0) {
+            data.write(ByteBuffer.wrap(HEADER_LINE.getBytes(StandardCharsets.UTF_8)), 0);
+        } else if (lastByte() != '\n') {
+            // Older writers may have left the last line unterminated
+            data.write(ByteBuffer.wrap(new byte[]{'\n'}), data.size());
+        }
+        openIndex();
+    }
+
+    public synchronized User get(String username) throws IOException {
+        byte[] key = username.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key, key.length);
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long offset = slotOffset(slot);
+            if (offset == 0) return null;
+            if (slotHash(slot) == hash) {
+                User user = readUser(offset - 1);
+                if (user != null && user.username.equals(username)) return user;
+            }
+        }
+    }
+
+    public synchronized boolean contains(String username) throws IOException {
+        return get(username) != null;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /** Appends the users to the data file and indexes them (one write for the batch). */
+    public synchronized void addAll(List<User> users) throws IOException {
+        if (users.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        for (User user : users) {
+            lines.append(user.username).append(',').append(user.password).append(',').append(user.created).append('\n');
+        }
+        long start = data.size();
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            data.write(bytes, start + bytes.position());
+        }
+        indexRange(start, data.size());
+    }
+
+    public synchronized void close() throws IOException {
+        indexChannel.force(false);
+        indexChannel.close();
+        data.close();
+    }
+
+    // ----- Index maintenance -----
+
+    private void openIndex() throws IOException {
+        indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+        long length = indexChannel.size();
+        if (length >= HEADER_BYTES) {
+            // Check the header before reading the whole table
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(indexChannel, header, 0);
+            int slots = header.getInt(8);
+            long covered = header.getLong(16);
+            boolean valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                && slots > 0 && Integer.bitCount(slots) == 1
+                && length == HEADER_BYTES + (long) slots * SLOT_BYTES
+                && covered <= data.size();
+            if (valid) {
+                index = ByteBuffer.allocate((int) length);
+                readFully(indexChannel, index, 0);
+                capacity = slots;
+                count = header.getInt(12);
+                // Pick up anything appended since the index was last written
+                indexRange(covered, data.size());
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        indexChannel.truncate(0);
+        index = ByteBuffer.allocate(HEADER_BYTES + INITIAL_CAPACITY * SLOT_BYTES);
+        tableDirty = true;
+        capacity = INITIAL_CAPACITY;
+        count = 0;
+        writeHeader(0);
+        indexRange(0, data.size());
+        System.out.printf("Rebuilt user index: %d users in %.1f ms%n", count, (System.nanoTime() - start) / 1e6);
+    }
+
+    private void writeHeader(long covered) {
+        index.putInt(0, MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, capacity);
+        index.putInt(12, count);
+        index.putLong(16, covered);
+    }
+
+    /** Writes the changed slots, then the header, back to the index file. */
+    private void flushIndex() throws IOException {
+        if (tableDirty) {
+            writeIndex(HEADER_BYTES, index.capacity() - HEADER_BYTES);
+            tableDirty = false;
+        } else {
+            // Runs of neighbouring slots go out as one write
+            for (int slot = dirtySlots.nextSetBit(0); slot >= 0; ) {
+                int end = dirtySlots.nextClearBit(slot);
+                writeIndex(HEADER_BYTES + slot * SLOT_BYTES, (end - slot) * SLOT_BYTES);
+                slot = dirtySlots.nextSetBit(end);
+            }
+        }
+        dirtySlots.clear();
+        // Header last, so its coverage never runs ahead of the slots on disk
+        writeIndex(0, HEADER_BYTES);
+    }
+
+    private void writeIndex(int from, int length) throws IOException {
+        ByteBuffer part = index.duplicate();
+        part.limit(from + length).position(from);
+        while (part.hasRemaining()) {
+            indexChannel.write(part, part.position());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Index file ended early");
+        }
+    }
+
+    /** Indexes every user line in [from, to) of the data file and records the new coverage. */
+    private void indexRange(long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        byte[] line = new byte[256];
+        int lineLength = 0;
+        long lineStart = from;
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int read = data.read(buffer, position);
+            if (read <= 0) break;
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                position++;
+                if (b == '\n') {
+                    indexLine(line, lineLength, lineStart);
+                    lineLength = 0;
+                    lineStart = position;
+                } else {
+                    if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        // A trailing partial line stays uncovered until its newline is written
+        index.putLong(16, lineStart);
+        flushIndex();
+    }
+
+    private void indexLine(byte[] line, int length, long offset) throws IOException {
+        int start = 0;
+        while (start < length && (line[start] == ' ' || line[start] == '\t')) start++;
+        if (start == length || line[start] == '#' || line[start] == '\r') return;
+        int comma = start;
+        while (comma < length && line[comma] != ',') comma++;
+        if (comma == length) return; // No password field
+        int end = comma;
+        while (end > start && line[end - 1] == ' ') end--;
+
+        byte[] key = Arrays.copyOfRange(line, start, end);
+        put(hash(key, key.length), key, offset);
+    }
+
+    private void put(int hash, byte[] key, long offset) throws IOException {
+        if ((count + 1) * 10L > capacity * 7L) {
+            grow();
+        }
+        String username = new String(key, StandardCharsets.UTF_8);
+        int mask = capacity - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long existing = slotOffset(slot);
+            if (existing == 0) {
+                setSlot(slot, offset + 1, hash);
+                index.putInt(12, ++count);
+                return;
+            }
+            if (slotHash(slot) == hash) {
+                User user = readUser(existing - 1);
+                if (user != null && user.username.equals(username)) {
+                    // A later line for the same user wins, as in the old HashMap load
+                    setSlot(slot, offset + 1, hash);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubles the table. The magic is cleared on disk until the new table has
+     * been written, so a crash half way leaves an index that is rebuilt on
+     * next open.
+     */
+    private void grow() throws IOException {
+        long covered = index.getLong(16);
+        long[] offsets = new long[count];
+        int[] hashes = new int[count];
+        int n = 0;
+        for (int i = 0; i < capacity; i++) {
+            long offset = slotOffset(i);
+            if (offset != 0) {
+                offsets[n] = offset;
+                hashes[n++] = slotHash(i);
+            }
+        }
+        index.putInt(0, 0);
+        writeIndex(0, 4);
+        indexChannel.force(false);
+
+        // The file grows when the whole table is written at the next flushIndex
+        capacity *= 2;
+        index = ByteBuffer.allocate(HEADER_BYTES + capacity * SLOT_BYTES);
+        tableDirty = true;
+        dirtySlots.clear();
+        int mask = capacity - 1;
+        for (int i = 0; i < n; i++) {
+            int slot = hashes[i] & mask;
+            while (slotOffset(slot) != 0) slot = (slot + 1) & mask;
+            setSlot(slot, offsets[i], hashes[i]);
+        }
+        writeHeader(covered);
+    }
+
+    private long slotOffset(int slot) {
+        return index.getLong(HEADER_BYTES + slot * SLOT_BYTES);
+    }
+
+    private int slotHash(int slot) {
+        return index.getInt(HEADER_BYTES + slot * SLOT_BYTES + 8);
+    }
+
+    private void setSlot(int slot, long offsetPlusOne, int hash) {
+        index.putInt(HEADER_BYTES + slot * SLOT_BYTES + 8, hash);
+        index.putLong(HEADER_BYTES + slot * SLOT_BYTES, offsetPlusOne);
+        if (!tableDirty) dirtySlots.set(slot);
+    }
+
+    // ----- Data file -----
+
+    private User readUser(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int newline = -1;
+        while (true) {
+            int read = data.read(buffer, offset + buffer.position());
+            for (int i = buffer.position() - Math.max(read, 0); i < buffer.position(); i++) {
+                if (buffer.get(i) == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (newline >= 0 || read <= 0) break;
+            if (!buffer.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+        int length = newline >= 0 ? newline : buffer.position();
+        String line = new String(buffer.array(), 0, length, StandardCharsets.UTF_8).trim();
+
+        // CSV format: username,password,created_timestamp
+        String[] parts = line.split(",");
+        if (parts.length < 2) return null;
+        return new User(parts[0].trim(), parts[1].trim(), parts.length >= 3 ? parts[2].trim() : "");
+    }
+
+    private byte lastByte() throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        data.read(one, data.size() - 1);
+        return one.get(0);
+    }
+
+    // FNV-1a
+    private static int hash(byte[] bytes, int length) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < length; i++) {
+            h ^= bytes[i] & 0xff;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+}
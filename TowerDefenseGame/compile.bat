@@ -6,18 +6,45 @@ if not exist "bin" mkdir bin
 javac -d bin -encoding UTF-8 ^
     TowerDefenseGame.java ^
     AuthSystem.java ^
+    UserStore.java ^
+    ScoreStore.java ^
+    BinaryScoreFile.java ^
+    ScoreJsonReader.java ^
+    ScoreIndex.java ^
+    ScoreQuery.java ^
+    ScoreBackend.java ^
+    LocalScoreBackend.java ^
+    RemoteScoreBackend.java ^
+    LeaderboardServer.java ^
+    PersistenceWriter.java ^
     AssetManager.java ^
+    AssetSource.java ^
+    SpriteCache.java ^
     MainMenuPanel.java ^
     LoginPanel.java ^
     LevelSelectPanel.java ^
     GamePanel.java ^
+    GameSimulation.java ^
+    GameSnapshot.java ^
+    Replay.java ^
+    ReplayVerifier.java ^
+    RewindBuffer.java ^
+    SoftwareRenderer.java ^
+    LayeredRenderer.java ^
     HighScoresPanel.java ^
     Tower.java ^
     Enemy.java ^
     Projectile.java ^
     LevelData.java ^
+    LevelCompiler.java ^
+    LevelFile.java ^
+    LevelCatalog.java ^
+    FlowField.java ^
+    Benchmarks.java ^
     org/json/JSONObject.java ^
-    org/json/JSONArray.java
+    org/json/JSONArray.java ^
+    org/json/JSONTokener.java ^
+    org/json/JSONWriter.java
 
 if %errorlevel% equ 0 (
     echo.
@@ -1,5 +1,7 @@
 package org.json;
 
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
 public class JSONArray {
@@ -13,79 +15,16 @@ public class JSONArray {
         this();
         if (source == null || source.trim().isEmpty()) return;
         
-        source = source.trim();
-        if (!source.startsWith("[") || !source.endsWith("]")) {
-            throw new RuntimeException("Invalid JSON Array");
+        JSONTokener tokener = new JSONTokener(source);
+        tokener.nextArray(this);
+        if (!tokener.atEnd()) {
+            throw tokener.syntaxError("Trailing characters");
         }
-        
-        parseArray(source.substring(1, source.length() - 1));
-    }
-    
-    private void parseArray(String content) {
-        if (content.trim().isEmpty()) return;
-        
-        List<String> tokens = tokenize(content);
-        for (String token : tokens) {
-            list.add(parseValue(token.trim()));
-        }
-    }
-    
-    private List<String> tokenize(String content) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder current = new StringBuilder();
-        int depth = 0;
-        boolean inString = false;
-        
-        for (char c : content.toCharArray()) {
-            if (c == '"' && (current.length() == 0 || current.charAt(current.length() - 1) != '\\')) {
-                inString = !inString;
-            }
-            
-            if (!inString) {
-                if (c == '{' || c == '[') depth++;
-                if (c == '}' || c == ']') depth--;
-                
-                if (c == ',' && depth == 0) {
-                    tokens.add(current.toString());
-                    current = new StringBuilder();
-                    continue;
-                }
-            }
-            
-            current.append(c);
-        }
-        
-        if (current.length() > 0) {
-            tokens.add(current.toString());
-        }
-        
-        return tokens;
     }
     
-    private Object parseValue(String value) {
-        value = value.trim();
-        
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            return value.substring(1, value.length() - 1);
-        } else if (value.equals("true") || value.equals("false")) {
-            return Boolean.parseBoolean(value);
-        } else if (value.equals("null")) {
-            return null;
-        } else if (value.startsWith("{")) {
-            return new JSONObject(value);
-        } else if (value.startsWith("[")) {
-            return new JSONArray(value);
-        } else {
-            try {
-                if (value.contains(".")) {
-                    return Double.parseDouble(value);
-                } else {
-                    return Integer.parseInt(value);
-                }
-            } catch (NumberFormatException e) {
-                return value;
-            }
-        }
+    public JSONArray(JSONTokener tokener) {
+        this();
+        tokener.nextArray(this);
     }
     
     public JSONArray put(Object value) {
@@ -105,52 +44,20 @@ public class JSONArray {
         return list.size();
     }
     
+    /** Streams this value to out; indent as in toString(int). */
+    public void write(Writer out, int indent) {
+        new JSONWriter(out, indent).value(this);
+    }
+    
     public String toString(int indent) {
-        if (indent == 0) return toString();
-        
-        StringBuilder sb = new StringBuilder("[\n");
-        
-        for (int i = 0; i < list.size(); i++) {
-            Object value = list.get(i);
-            
-            sb.append("  ".repeat(indent));
-            
-            if (value instanceof JSONObject) {
-                sb.append(((JSONObject) value).toString(indent));
-            } else if (value instanceof JSONArray) {
-                sb.append(((JSONArray) value).toString(indent));
-            } else if (value instanceof String) {
-                sb.append("\"").append(value).append("\"");
-            } else {
-                sb.append(value);
-            }
-            
-            if (i < list.size() - 1) sb.append(",");
-            sb.append("\n");
-        }
-        
-        sb.append("]");
-        return sb.toString();
+        StringWriter out = new StringWriter();
+        write(out, indent);
+        return out.toString();
     }
     
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder("[");
-        
-        for (int i = 0; i < list.size(); i++) {
-            Object value = list.get(i);
-            
-            if (value instanceof String) {
-                sb.append("\"").append(value).append("\"");
-            } else {
-                sb.append(value);
-            }
-            
-            if (i < list.size() - 1) sb.append(",");
-        }
-        
-        sb.append("]");
-        return sb.toString();
+        return toString(0);
     }
 }
 
@@ -1,6 +1,8 @@
 // Minimal JSON library for the project
 package org.json;
 
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
 public class JSONObject {
@@ -14,86 +16,16 @@ public class JSONObject {
         this();
         if (source == null || source.trim().isEmpty()) return;
         
-        source = source.trim();
-        if (!source.startsWith("{") || !source.endsWith("}")) {
-            throw new RuntimeException("Invalid JSON");
+        JSONTokener tokener = new JSONTokener(source);
+        tokener.nextObject(this);
+        if (!tokener.atEnd()) {
+            throw tokener.syntaxError("Trailing characters");
         }
-        
-        parseObject(source.substring(1, source.length() - 1));
-    }
-    
-    private void parseObject(String content) {
-        if (content.trim().isEmpty()) return;
-        
-        List<String> tokens = tokenize(content);
-        for (int i = 0; i < tokens.size(); i++) {
-            String token = tokens.get(i);
-            if (token.contains(":")) {
-                String[] parts = token.split(":", 2);
-                String key = parts[0].trim().replaceAll("^\"|\"$", "");
-                String value = parts[1].trim();
-                
-                map.put(key, parseValue(value));
-            }
-        }
-    }
-    
-    private List<String> tokenize(String content) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder current = new StringBuilder();
-        int depth = 0;
-        boolean inString = false;
-        
-        for (char c : content.toCharArray()) {
-            if (c == '"' && (current.length() == 0 || current.charAt(current.length() - 1) != '\\')) {
-                inString = !inString;
-            }
-            
-            if (!inString) {
-                if (c == '{' || c == '[') depth++;
-                if (c == '}' || c == ']') depth--;
-                
-                if (c == ',' && depth == 0) {
-                    tokens.add(current.toString());
-                    current = new StringBuilder();
-                    continue;
-                }
-            }
-            
-            current.append(c);
-        }
-        
-        if (current.length() > 0) {
-            tokens.add(current.toString());
-        }
-        
-        return tokens;
     }
     
-    private Object parseValue(String value) {
-        value = value.trim();
-        
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            return value.substring(1, value.length() - 1);
-        } else if (value.equals("true") || value.equals("false")) {
-            return Boolean.parseBoolean(value);
-        } else if (value.equals("null")) {
-            return null;
-        } else if (value.startsWith("{")) {
-            return new JSONObject(value);
-        } else if (value.startsWith("[")) {
-            return new JSONArray(value);
-        } else {
-            try {
-                if (value.contains(".")) {
-                    return Double.parseDouble(value);
-                } else {
-                    return Integer.parseInt(value);
-                }
-            } catch (NumberFormatException e) {
-                return value;
-            }
-        }
+    public JSONObject(JSONTokener tokener) {
+        this();
+        tokener.nextObject(this);
     }
     
     public JSONObject put(String key, Object value) {
@@ -132,58 +64,20 @@ public class JSONObject {
         return map.keySet();
     }
     
+    /** Streams this value to out; indent as in toString(int). */
+    public void write(Writer out, int indent) {
+        new JSONWriter(out, indent).value(this);
+    }
+    
     public String toString(int indent) {
-        if (indent == 0) return toString();
-        
-        StringBuilder sb = new StringBuilder("{\n");
-        List<String> keys = new ArrayList<>(map.keySet());
-        
-        for (int i = 0; i < keys.size(); i++) {
-            String key = keys.get(i);
-            Object value = map.get(key);
-            
-            sb.append("  ".repeat(indent)).append("\"").append(key).append("\": ");
-            
-            if (value instanceof JSONObject) {
-                sb.append(((JSONObject) value).toString(indent));
-            } else if (value instanceof JSONArray) {
-                sb.append(((JSONArray) value).toString(indent));
-            } else if (value instanceof String) {
-                sb.append("\"").append(value).append("\"");
-            } else {
-                sb.append(value);
-            }
-            
-            if (i < keys.size() - 1) sb.append(",");
-            sb.append("\n");
-        }
-        
-        sb.append("}");
-        return sb.toString();
+        StringWriter out = new StringWriter();
+        write(out, indent);
+        return out.toString();
     }
     
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder("{");
-        List<String> keys = new ArrayList<>(map.keySet());
-        
-        for (int i = 0; i < keys.size(); i++) {
-            String key = keys.get(i);
-            Object value = map.get(key);
-            
-            sb.append("\"").append(key).append("\":");
-            
-            if (value instanceof String) {
-                sb.append("\"").append(value).append("\"");
-            } else {
-                sb.append(value);
-            }
-            
-            if (i < keys.size() - 1) sb.append(",");
-        }
-        
-        sb.append("}");
-        return sb.toString();
+        return toString(0);
     }
 }
 
@@ -0,0 +1,479 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * Single-pass JSON parser. Reads characters from a Reader through a small
+ * buffer and builds JSONObject / JSONArray values directly, so every input
+ * character is looked at once and nested values are never re-scanned.
+ * Strings honour escape sequences; numbers become Integer, Long or Double.
+ *
+ * The pull methods (beginObject, hasNext, nextName, nextInt, skipValue, ...)
+ * walk the same input without building any tree, for callers that bind
+ * fields straight into their own objects.
+ */
+public class JSONTokener {
+    private final Reader reader;
+    private char[] buffer;
+    private int position;
+    private int limit;
+    private long offset; // Characters consumed before the current buffer, for error messages
+    private final StringBuilder scratch = new StringBuilder();
+    private final String[] keyCache = new String[256];
+
+    // Pull state: one entry per open container
+    private static final int EMPTY = 0, NEEDS_COMMA = 1, READY = 2;
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    public JSONTokener(Reader reader) {
+        this.reader = reader;
+        this.buffer = new char[8192];
+    }
+
+    public JSONTokener(String source) {
+        if (source.length() <= 8192) {
+            // Short input (e.g. one log line): parse the characters in place
+            this.reader = null;
+            this.buffer = source.toCharArray();
+            this.limit = buffer.length;
+        } else {
+            this.reader = new StringReader(source);
+            this.buffer = new char[8192];
+        }
+    }
+
+    /** Reads the next value of any type. */
+    public Object nextValue() {
+        Object value = readValue();
+        afterValue();
+        return value;
+    }
+
+    private Object readValue() {
+        char c = nextClean();
+        switch (c) {
+            case '{':
+                return readObject(new JSONObject());
+            case '[':
+                return readArray(new JSONArray());
+            case '"':
+                return readString();
+            case 't':
+                expect("rue");
+                return Boolean.TRUE;
+            case 'f':
+                expect("alse");
+                return Boolean.FALSE;
+            case 'n':
+                expect("ull");
+                return null;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber(c);
+                }
+                throw syntaxError(c == 0 ? "Unexpected end of input" : "Unexpected character '" + c + "'");
+        }
+    }
+
+    /** Fills the given object from the next '{...}' in the input. */
+    void nextObject(JSONObject into) {
+        if (nextClean() != '{') throw syntaxError("Expected '{'");
+        readObject(into);
+        afterValue();
+    }
+
+    /** Fills the given array from the next '[...]' in the input. */
+    void nextArray(JSONArray into) {
+        if (nextClean() != '[') throw syntaxError("Expected '['");
+        readArray(into);
+        afterValue();
+    }
+
+    /** True when only whitespace is left. */
+    public boolean atEnd() {
+        return peekClean() == 0;
+    }
+
+    // ----- Pull API -----
+
+    public void beginObject() {
+        if (nextClean() != '{') throw syntaxError("Expected '{'");
+        push();
+    }
+
+    public void endObject() {
+        if (nextClean() != '}') throw syntaxError("Expected '}'");
+        pop();
+    }
+
+    public void beginArray() {
+        if (nextClean() != '[') throw syntaxError("Expected '['");
+        push();
+    }
+
+    public void endArray() {
+        if (nextClean() != ']') throw syntaxError("Expected ']'");
+        pop();
+    }
+
+    /** True if the current object or array has another element; consumes the separating comma. */
+    public boolean hasNext() {
+        char c = peekClean();
+        if (c == '}' || c == ']') return false;
+        if (c == 0) throw syntaxError("Unexpected end of input");
+        int state = stack[stackSize - 1];
+        if (state == NEEDS_COMMA) {
+            if (c != ',') throw syntaxError("Expected ','");
+            position++;
+        }
+        stack[stackSize - 1] = READY;
+        return true;
+    }
+
+    /** The next object key (keys that repeat share one String). */
+    public String nextName() {
+        if (nextClean() != '"') throw syntaxError("Expected a key");
+        String key = readKey();
+        if (nextClean() != ':') throw syntaxError("Expected ':'");
+        return key;
+    }
+
+    public String nextString() {
+        if (nextClean() != '"') throw syntaxError("Expected a string");
+        String s = readString();
+        afterValue();
+        return s;
+    }
+
+    /** Appends the next string value to sb instead of creating a String. */
+    public void nextString(StringBuilder sb) {
+        if (nextClean() != '"') throw syntaxError("Expected a string");
+        readStringInto(sb);
+        afterValue();
+    }
+
+    /** The next number as an int, without boxing (fractions are truncated). */
+    public int nextInt() {
+        char c = nextClean();
+        boolean negative = c == '-';
+        if (negative) c = next();
+        if (c < '0' || c > '9') throw syntaxError("Expected a number");
+        long value = c - '0';
+        long max = negative ? Integer.MAX_VALUE + 1L : Integer.MAX_VALUE; // -2147483648 is the only larger magnitude
+        while (true) {
+            char d = peek();
+            if (d >= '0' && d <= '9') {
+                value = value * 10 + (d - '0');
+                if (value > max) throw syntaxError("Number too large for an int");
+                position++;
+            } else if (d == '.' || d == 'e' || d == 'E') {
+                // Rare: finish as a double
+                scratch.setLength(0);
+                scratch.append(negative ? "-" : "").append(value);
+                while ((d = peek()) == '.' || d == 'e' || d == 'E' || d == '+' || d == '-' || (d >= '0' && d <= '9')) {
+                    scratch.append(d);
+                    position++;
+                }
+                afterValue();
+                double parsed;
+                try {
+                    parsed = Double.parseDouble(scratch.toString());
+                } catch (NumberFormatException e) {
+                    throw syntaxError("Bad number '" + scratch + "'");
+                }
+                // The cast would clamp instead of failing like the integer path
+                if (parsed >= Integer.MAX_VALUE + 1.0 || parsed <= Integer.MIN_VALUE - 1.0) {
+                    throw syntaxError("Number too large for an int");
+                }
+                return (int) parsed;
+            } else {
+                break;
+            }
+        }
+        afterValue();
+        return (int) (negative ? -value : value);
+    }
+
+    /** Skips the next value (nested structures included) without building it. */
+    public void skipValue() {
+        char c = nextClean();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = next();
+                if (c == '"') skipString();
+                else if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+                else if (c == 0 && position > limit) throw syntaxError("Unexpected end of input");
+            }
+        } else {
+            // Number or literal: runs up to the next delimiter
+            if (c == 0 || c == ',' || c == '}' || c == ']' || c == ':') throw syntaxError("Expected a value");
+            while (true) {
+                char d = peek();
+                if (d == 0 || d == ',' || d == '}' || d == ']' || d == ' ' || d == '\n' || d == '\r' || d == '\t') break;
+                position++;
+            }
+        }
+        afterValue();
+    }
+
+    private void skipString() {
+        while (true) {
+            char c = next();
+            if (c == '"') return;
+            if (c == '\\') next();
+            else if (c == 0 && position > limit) throw syntaxError("Unterminated string");
+        }
+    }
+
+    private void push() {
+        if (stackSize == stack.length) stack = Arrays.copyOf(stack, stackSize * 2);
+        stack[stackSize++] = EMPTY;
+    }
+
+    private void pop() {
+        if (stackSize == 0) throw syntaxError("Unbalanced close");
+        stackSize--;
+        afterValue();
+    }
+
+    private void afterValue() {
+        if (stackSize > 0) stack[stackSize - 1] = NEEDS_COMMA;
+    }
+
+    // ----- Structures -----
+
+    private JSONObject readObject(JSONObject object) {
+        char c = nextClean();
+        if (c == '}') return object;
+        while (true) {
+            if (c != '"') throw syntaxError("Expected a key");
+            String key = readKey();
+            if (nextClean() != ':') throw syntaxError("Expected ':'");
+            object.put(key, readValue());
+            c = nextClean();
+            if (c == '}') return object;
+            if (c != ',') throw syntaxError("Expected ',' or '}'");
+            c = nextClean();
+        }
+    }
+
+    private JSONArray readArray(JSONArray array) {
+        if (peekClean() == ']') {
+            next();
+            return array;
+        }
+        while (true) {
+            array.put(readValue());
+            char c = nextClean();
+            if (c == ']') return array;
+            if (c != ',') throw syntaxError("Expected ',' or ']'");
+        }
+    }
+
+    // ----- Strings -----
+
+    private String readString() {
+        // Fast path: the whole string is in the buffer and has no escapes
+        for (int i = position; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                String s = new String(buffer, position, i - position);
+                position = i + 1;
+                return s;
+            }
+            if (c == '\\') break;
+        }
+        scratch.setLength(0);
+        readStringInto(scratch);
+        return scratch.toString();
+    }
+
+    /** Object keys repeat constantly in score files, so identical keys share one String. */
+    private String readKey() {
+        for (int i = position; i < limit; i++) {
+            char c = buffer[i];
+            if (c == '"') {
+                String key = cachedKey(buffer, position, i - position);
+                position = i + 1;
+                return key;
+            }
+            if (c == '\\') break;
+        }
+        scratch.setLength(0);
+        readStringInto(scratch);
+        return scratch.toString();
+    }
+
+    private String cachedKey(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (keyCache.length - 1);
+        String cached = keyCache[slot];
+        if (cached != null && cached.length() == length) {
+            boolean same = true;
+            for (int i = 0; i < length && same; i++) {
+                same = cached.charAt(i) == chars[start + i];
+            }
+            if (same) return cached;
+        }
+        String key = new String(chars, start, length);
+        keyCache[slot] = key;
+        return key;
+    }
+
+    private void readStringInto(StringBuilder sb) {
+        while (true) {
+            char c = next();
+            if (c == 0 && position > limit) throw syntaxError("Unterminated string");
+            if (c == '"') return;
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            c = next();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(c);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) throw syntaxError("Bad \\u escape");
+                        code = code * 16 + digit;
+                    }
+                    sb.append((char) code);
+                    break;
+                default:
+                    throw syntaxError("Bad escape '\\" + c + "'");
+            }
+        }
+    }
+
+    // ----- Numbers and literals -----
+
+    private Object readNumber(char first) {
+        scratch.setLength(0);
+        scratch.append(first);
+        boolean decimal = false;
+        while (true) {
+            char c = peek();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                scratch.append(c);
+            } else if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+                scratch.append(c);
+            } else {
+                break;
+            }
+            position++;
+        }
+        try {
+            if (decimal) return Double.parseDouble(scratch.toString());
+            int length = scratch.length();
+            if (length <= 9) {
+                // Fits in an int: convert without creating a String
+                boolean negative = first == '-';
+                int value = 0;
+                for (int i = negative ? 1 : 0; i < length; i++) {
+                    char d = scratch.charAt(i);
+                    if (d < '0' || d > '9') throw new NumberFormatException();
+                    value = value * 10 + (d - '0');
+                }
+                if (negative && length == 1) throw new NumberFormatException();
+                return negative ? -value : value;
+            }
+            long value = Long.parseLong(scratch.toString());
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int) value;
+            return value;
+        } catch (NumberFormatException e) {
+            throw syntaxError("Bad number '" + scratch + "'");
+        }
+    }
+
+    private void expect(String rest) {
+        for (int i = 0; i < rest.length(); i++) {
+            if (next() != rest.charAt(i)) throw syntaxError("Unknown literal");
+        }
+    }
+
+    // ----- Character access -----
+
+    private boolean fill() {
+        if (reader == null) {
+            position = limit;
+            return false;
+        }
+        try {
+            offset += limit;
+            position = 0;
+            limit = 0;
+            int read = reader.read(buffer, 0, buffer.length);
+            if (read <= 0) return false;
+            limit = read;
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /** Next character, or 0 at the end of the input (position then passes limit). */
+    private char next() {
+        if (position >= limit && !fill()) {
+            position = limit + 1;
+            return 0;
+        }
+        return buffer[position++];
+    }
+
+    private char peek() {
+        if (position >= limit && !fill()) return 0;
+        return buffer[position];
+    }
+
+    private char nextClean() {
+        while (true) {
+            char c = next();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+        }
+    }
+
+    private char peekClean() {
+        while (true) {
+            char c = peek();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+            position++;
+        }
+    }
+
+    RuntimeException syntaxError(String message) {
+        return new RuntimeException("Invalid JSON: " + message + " at character " + (offset + position));
+    }
+}
@@ -0,0 +1,182 @@
+package org.json;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Streaming JSON writer. Emits straight to a Writer as values are added,
+ * so nothing larger than one token is ever held in memory.
+ *
+ * indent 0 gives the compact form of toString(); indent > 0 gives the
+ * toString(indent) layout: every entry on its own line prefixed by
+ * indent * 2 spaces (the same at every depth), closing brackets unindented.
+ * Strings and keys are escaped.
+ */
+public class JSONWriter {
+    private static final int MAX_DEPTH = 512;
+
+    private final Writer out;
+    private final String prefix;
+    private final boolean pretty;
+    private final boolean[] isObject = new boolean[MAX_DEPTH];
+    private final boolean[] hasEntries = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterKey;
+
+    public JSONWriter(Writer out, int indent) {
+        this.out = out;
+        this.pretty = indent > 0;
+        this.prefix = pretty ? "  ".repeat(indent) : "";
+    }
+
+    public JSONWriter object() {
+        beforeValue();
+        open(true, '{');
+        return this;
+    }
+
+    public JSONWriter endObject() {
+        close(true, '}');
+        return this;
+    }
+
+    public JSONWriter array() {
+        beforeValue();
+        open(false, '[');
+        return this;
+    }
+
+    public JSONWriter endArray() {
+        close(false, ']');
+        return this;
+    }
+
+    public JSONWriter key(String key) {
+        if (depth == 0 || !isObject[depth - 1] || afterKey) {
+            throw new IllegalStateException("Misplaced key");
+        }
+        nextEntry();
+        string(key);
+        write(pretty ? ": " : ":");
+        afterKey = true;
+        return this;
+    }
+
+    /** Writes a value of any supported type, including whole JSONObject / JSONArray trees. */
+    public JSONWriter value(Object value) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            object();
+            for (String key : object.keySet()) {
+                key(key).value(object.get(key));
+            }
+            return endObject();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            array();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.get(i));
+            }
+            return endArray();
+        }
+        beforeValue();
+        if (value instanceof String) {
+            string((String) value);
+        } else {
+            write(String.valueOf(value));
+        }
+        return this;
+    }
+
+    public JSONWriter value(int value) {
+        beforeValue();
+        write(Integer.toString(value));
+        return this;
+    }
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ----- Layout -----
+
+    private void open(boolean object, char bracket) {
+        if (depth == MAX_DEPTH) throw new IllegalStateException("Nesting too deep");
+        isObject[depth] = object;
+        hasEntries[depth] = false;
+        depth++;
+        write(String.valueOf(bracket));
+        if (pretty) write("\n");
+    }
+
+    private void close(boolean object, char bracket) {
+        if (depth == 0 || isObject[depth - 1] != object || afterKey) {
+            throw new IllegalStateException("Misplaced " + bracket);
+        }
+        depth--;
+        if (pretty && hasEntries[depth]) write("\n");
+        write(String.valueOf(bracket));
+    }
+
+    /** Separator and indent before an array element; nothing after a key. */
+    private void beforeValue() {
+        if (afterKey) {
+            afterKey = false;
+            return;
+        }
+        if (depth > 0) {
+            if (isObject[depth - 1]) throw new IllegalStateException("Value without a key");
+            nextEntry();
+        }
+    }
+
+    private void nextEntry() {
+        if (hasEntries[depth - 1]) {
+            write(pretty ? ",\n" : ",");
+        }
+        hasEntries[depth - 1] = true;
+        write(prefix);
+    }
+
+    /** Quoted, escaped string. */
+    private void string(String s) {
+        try {
+            out.write('"');
+            int start = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\') continue;
+                out.write(s, start, i - start);
+                start = i + 1;
+                switch (c) {
+                    case '"': out.write("\\\""); break;
+                    case '\\': out.write("\\\\"); break;
+                    case '\n': out.write("\\n"); break;
+                    case '\r': out.write("\\r"); break;
+                    case '\t': out.write("\\t"); break;
+                    case '\b': out.write("\\b"); break;
+                    case '\f': out.write("\\f"); break;
+                    default: out.write(String.format("\\u%04x", (int) c));
+                }
+            }
+            out.write(s, start, s.length() - start);
+            out.write('"');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String s) {
+        try {
+            out.write(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}